@@ -0,0 +1,78 @@
+package db61b;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Synthetic tables and queries shared by the benchmarks.
+ *  @author Jiaxin Huang
+ */
+class BenchmarkData {
+
+    /** Return ROWS rows of three columns: a distinct key ("k" followed
+     *  by the row number), a value chosen uniformly from ROWS numerals
+     *  of equal width, so that 'value < threshold(ROWS, F)' holds for
+     *  about a fraction F of them, and a group chosen uniformly from
+     *  GROUPS names.  The values are pseudo-random, starting from
+     *  SEED. */
+    static Row[] rows(int rows, int groups, long seed) {
+        Random random = new Random(seed);
+        Row[] result = new Row[rows];
+        for (int i = 0; i < rows; i += 1) {
+            result[i] = new Row(new String[] {
+                key(i), numeral(random.nextInt(rows)),
+                "g" + random.nextInt(groups)
+            });
+        }
+        return result;
+    }
+
+    /** Return a Table named NAME with column titles TITLES, containing
+     *  ROWS. */
+    static Table table(String name, String[] titles, Row[] rows) {
+        return table(name, titles, rows, RowStore.HEAP);
+    }
+
+    /** Return a Table named NAME with column titles TITLES, containing
+     *  ROWS, kept in a RowStore of kind STORAGE. */
+    static Table table(String name, String[] titles, Row[] rows,
+                       String storage) {
+        Table table = new Table(name, titles, storage);
+        for (Row row : rows) {
+            table.add(row);
+        }
+        return table;
+    }
+
+    /** Return the key of row number I. */
+    static String key(int i) {
+        return String.format("k%08d", i);
+    }
+
+    /** Return the value numeral for N. */
+    static String numeral(long n) {
+        return String.format("%08d", n);
+    }
+
+    /** Return the literal below which about FRACTION of the values in
+     *  a table of ROWS rows lie. */
+    static String threshold(int rows, double fraction) {
+        return numeral(Math.round(rows * fraction));
+    }
+
+    /** Return the number of groups such that about FRACTION of the rows
+     *  lie in any one of them. */
+    static int groups(double fraction) {
+        return (int) Math.max(1, Math.round(1 / fraction));
+    }
+
+    /** Parse and execute the select clause TEXT (without the leading
+     *  'select', but with the trailing semicolon) against the tables of
+     *  DATABASE, returning the result. */
+    static Table select(Map<String, Table> database, String text) {
+        CommandInterpreter interpreter =
+            new CommandInterpreter(database, new Scanner(text), null);
+        return interpreter.selectClause("result");
+    }
+
+}
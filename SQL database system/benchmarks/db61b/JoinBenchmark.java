@@ -0,0 +1,77 @@
+package db61b;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of equality joins of two tables, one of which is
+ *  restricted by a condition on a literal, for several table sizes and
+ *  fractions of that table's rows selected, with and without table
+ *  statistics for the planner.
+ *  @author Jiaxin Huang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JoinBenchmark {
+
+    /** Number of rows in each table. */
+    @Param({ "1000", "4000", "16000" })
+    public int rows;
+
+    /** Fraction of the rows of the restricted table selected. */
+    @Param({ "0.01", "0.1", "0.5" })
+    public double selectivity;
+
+    /** True iff the tables are analyzed. */
+    @Param({ "false", "true" })
+    public boolean analyzed;
+
+    /** Create the tables. */
+    @Setup
+    public void setup() {
+        Table r = BenchmarkData.table("r", R_TITLES,
+                                      BenchmarkData.rows(rows, GROUPS, SEED));
+        Table s = BenchmarkData.table("s", S_TITLES,
+                                      BenchmarkData.rows(rows, GROUPS,
+                                                         SEED + 1));
+        if (analyzed) {
+            r.analyze();
+            s.analyze();
+        }
+        _database.put("r", r);
+        _database.put("s", s);
+        _join = String.format("rkey, rval, sgrp from r, s "
+                              + "where rval < '%s' and rkey = skey;",
+                              BenchmarkData.threshold(rows, selectivity));
+    }
+
+    /** Join the selected rows of r with the rows of s having the same
+     *  keys. */
+    @Benchmark
+    public Table join() {
+        return BenchmarkData.select(_database, _join);
+    }
+
+    /** Column titles of the restricted table. */
+    private static final String[] R_TITLES = { "rkey", "rval", "rgrp" };
+    /** Column titles of the other table. */
+    private static final String[] S_TITLES = { "skey", "sval", "sgrp" };
+    /** Number of distinct groups. */
+    private static final int GROUPS = 100;
+    /** Seed for generating values. */
+    private static final long SEED = 61;
+
+    /** The tables, by name. */
+    private final HashMap<String, Table> _database = new HashMap<>();
+    /** The select clause performing the join. */
+    private String _join;
+}
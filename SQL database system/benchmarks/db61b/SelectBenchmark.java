@@ -0,0 +1,68 @@
+package db61b;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of selects from one table with conditions comparing
+ *  columns to literals, for several table sizes and fractions of rows
+ *  selected.  Each includes parsing the select clause.
+ *  @author Jiaxin Huang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SelectBenchmark {
+
+    /** Number of rows in the table. */
+    @Param({ "1000", "4000", "16000" })
+    public int rows;
+
+    /** Fraction of the rows selected. */
+    @Param({ "0.01", "0.1", "0.5" })
+    public double selectivity;
+
+    /** Create the table. */
+    @Setup
+    public void setup() {
+        Row[] data = BenchmarkData.rows(rows,
+                                        BenchmarkData.groups(selectivity),
+                                        SEED);
+        _database.put("t", BenchmarkData.table("t", TITLES, data));
+        _range = String.format("key, val from t where val < '%s';",
+                               BenchmarkData.threshold(rows, selectivity));
+    }
+
+    /** Select the rows whose values are below a threshold. */
+    @Benchmark
+    public Table range() {
+        return BenchmarkData.select(_database, _range);
+    }
+
+    /** Select the rows in one group. */
+    @Benchmark
+    public Table equality() {
+        return BenchmarkData.select(_database, EQUALITY);
+    }
+
+    /** Column titles of the table. */
+    private static final String[] TITLES = { "key", "val", "grp" };
+    /** Seed for generating values. */
+    private static final long SEED = 61;
+    /** The select clause selecting one group. */
+    private static final String EQUALITY =
+        "key, val from t where grp = 'g0';";
+
+    /** The tables, by name. */
+    private final HashMap<String, Table> _database = new HashMap<>();
+    /** The select clause selecting a range of values. */
+    private String _range;
+}
@@ -0,0 +1,90 @@
+package db61b;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Benchmarks of building Tables and reading and writing .db files, for
+ *  tables of several sizes kept in each kind of RowStore.
+ *  @author Jiaxin Huang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TableBenchmark {
+
+    /** Number of rows in each table. */
+    @Param({ "1000", "4000", "16000" })
+    public int rows;
+
+    /** Kind of RowStore holding the tables' rows. */
+    @Param({ RowStore.HEAP, RowStore.ARENA, RowStore.OFF_HEAP })
+    public String storage;
+
+    /** Create the rows of the tables and a .db file holding them. */
+    @Setup
+    public void setup() throws IOException {
+        _rows = BenchmarkData.rows(rows, GROUPS, SEED);
+        _table = BenchmarkData.table("t", TITLES, _rows, storage);
+        _directory = Files.createTempDirectory("db61b").toFile();
+        _table.writeTable(path("t"));
+    }
+
+    /** Remove the files written. */
+    @TearDown
+    public void tearDown() {
+        for (File file : _directory.listFiles()) {
+            file.delete();
+        }
+        _directory.delete();
+    }
+
+    /** Add all the rows to a new Table, one at a time. */
+    @Benchmark
+    public Table add() {
+        return BenchmarkData.table("t", TITLES, _rows, storage);
+    }
+
+    /** Read the table from its .db file. */
+    @Benchmark
+    public Table readTable() {
+        return Table.readTable(path("t"), storage);
+    }
+
+    /** Write the table to a .db file. */
+    @Benchmark
+    public void writeTable() {
+        _table.writeTable(path("w"));
+    }
+
+    /** Return the name (without .db) of the file for table NAME in my
+     *  temporary directory. */
+    private String path(String name) {
+        return new File(_directory, name).getPath();
+    }
+
+    /** Column titles of the tables. */
+    private static final String[] TITLES = { "key", "val", "grp" };
+    /** Number of distinct groups. */
+    private static final int GROUPS = 100;
+    /** Seed for generating values. */
+    private static final long SEED = 61;
+
+    /** The rows of the table. */
+    private Row[] _rows;
+    /** A Table holding _rows. */
+    private Table _table;
+    /** Directory holding the .db files. */
+    private File _directory;
+}
@@ -0,0 +1,59 @@
+package db61b;
+
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** A benchmark of the Tokenizer's throughput on scripts of several
+ *  lengths.
+ *  @author Jiaxin Huang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TokenizerBenchmark {
+
+    /** Number of statements in the script. */
+    @Param({ "100", "1000", "10000" })
+    public int statements;
+
+    /** Create the script. */
+    @Setup
+    public void setup() {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < statements; i += 1) {
+            script.append(String.format(STATEMENT, i, i % GROUPS));
+        }
+        _script = script.toString();
+    }
+
+    /** Break the script into tokens, returning how many there were. */
+    @Benchmark
+    public int tokenize() {
+        Tokenizer tokenizer = new Tokenizer(new Scanner(_script), null);
+        int count = 0;
+        while (!tokenizer.next().equals("*EOF*")) {
+            count += 1;
+        }
+        return count;
+    }
+
+    /** The form of each statement, given its number and a group. */
+    private static final String STATEMENT =
+        "/* statement %1$d */%n"
+        + "select key, val from t, u%n"
+        + "    where val >= '%1$08d' and grp = 'g%2$d' and key = ukey;%n";
+    /** Number of distinct groups mentioned. */
+    private static final int GROUPS = 100;
+
+    /** The script tokenized. */
+    private String _script;
+}
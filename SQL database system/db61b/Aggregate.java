@@ -0,0 +1,207 @@
+package db61b;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** An Aggregate is a Column in a select clause whose value is computed
+ *  from a whole group of rows, such as count(*) or max(Grade), rather
+ *  than from one row.  Its values are produced by a HashAggregator.
+ *  Empty values are treated as missing, and are ignored by every
+ *  function but count(*).
+ *  @author Jiaxin Huang
+ */
+class Aggregate extends Column {
+
+    /** Names of the supported aggregate functions. */
+    static final String
+        COUNT = "count", SUM = "sum", MIN = "min", MAX = "max", AVG = "avg";
+
+    /** An Aggregate that applies FUNCTION to the values of ARGUMENT,
+     *  and whose column title is TITLE.  ARGUMENT is null for count(*).
+     *  If TITLE is null, it is formed from FUNCTION and ARGUMENT. */
+    Aggregate(String function, Column argument, String title) {
+        super(null, title != null ? title : defaultTitle(function, argument));
+        if (!isFunction(function)) {
+            throw error("unknown aggregate function: %s", function);
+        }
+        if (argument == null && !function.equals(COUNT)) {
+            throw error("%s requires a column", function);
+        }
+        _function = function;
+        _argument = argument == null ? new Literal("*") : argument;
+    }
+
+    /** Return true iff NAME is the name of an aggregate function. */
+    static boolean isFunction(String name) {
+        switch (name) {
+        case COUNT: case SUM: case MIN: case MAX: case AVG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /** Return the title of an unnamed Aggregate applying FUNCTION to
+     *  ARGUMENT (null for count(*)). */
+    private static String defaultTitle(String function, Column argument) {
+        if (argument == null) {
+            return function;
+        }
+        return function + "_" + argument.name();
+    }
+
+    /** Return my function name. */
+    String function() {
+        return _function;
+    }
+
+    /** Return the Column whose values I aggregate.  For count(*), this
+     *  is a Literal that is never empty. */
+    Column argument() {
+        return _argument;
+    }
+
+    @Override
+    void resolve(List<TableIterator> iterators) {
+        _argument.resolve(iterators);
+    }
+
+    @Override
+    String value() {
+        throw error("%s is only defined over a group", name());
+    }
+
+    @Override
+    public String toString() {
+        if (_argument instanceof Literal) {
+            return _function + "(*)";
+        }
+        return _function + "(" + _argument + ")";
+    }
+
+    /** Return a new Accumulator for my function. */
+    Accumulator accumulator() {
+        return new Accumulator(_function);
+    }
+
+    /** Running state of one aggregate function for a set of groups,
+     *  which are numbered consecutively from 0.  The state is kept in
+     *  primitive arrays indexed by group number, so that adding a value
+     *  to a group allocates nothing. */
+    static class Accumulator {
+
+        /** A new Accumulator for FUNCTION, with no groups. */
+        Accumulator(String function) {
+            _function = function;
+            _counts = new long[INITIAL_GROUPS];
+            switch (function) {
+            case SUM: case AVG:
+                _sums = new double[INITIAL_GROUPS];
+                break;
+            case MIN: case MAX:
+                _extremes = new String[INITIAL_GROUPS];
+                break;
+            default:
+                break;
+            }
+        }
+
+        /** Add VALUE to the values in group number GROUP. */
+        void add(int group, String value) {
+            if (value.isEmpty()) {
+                return;
+            }
+            ensureCapacity(group);
+            _counts[group] += 1;
+            switch (_function) {
+            case SUM: case AVG:
+                try {
+                    _sums[group] += Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw error("non-numeric value in %s: '%s'",
+                                _function, value);
+                }
+                break;
+            case MIN:
+                if (_extremes[group] == null
+                    || value.compareTo(_extremes[group]) < 0) {
+                    _extremes[group] = value;
+                }
+                break;
+            case MAX:
+                if (_extremes[group] == null
+                    || value.compareTo(_extremes[group]) > 0) {
+                    _extremes[group] = value;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        /** Return the value of my function over group number GROUP,
+         *  which is empty if the function is undefined for it. */
+        String result(int group) {
+            long count = group < _counts.length ? _counts[group] : 0;
+            if (_function.equals(COUNT)) {
+                return Long.toString(count);
+            } else if (count == 0) {
+                return "";
+            }
+            switch (_function) {
+            case SUM:
+                return formatNumber(_sums[group]);
+            case AVG:
+                return formatNumber(_sums[group] / count);
+            default:
+                return _extremes[group];
+            }
+        }
+
+        /** Make sure that my arrays have room for group number GROUP. */
+        private void ensureCapacity(int group) {
+            if (group < _counts.length) {
+                return;
+            }
+            int size = Math.max(group + 1, 2 * _counts.length);
+            _counts = Arrays.copyOf(_counts, size);
+            if (_sums != null) {
+                _sums = Arrays.copyOf(_sums, size);
+            }
+            if (_extremes != null) {
+                _extremes = Arrays.copyOf(_extremes, size);
+            }
+        }
+
+        /** Initial number of groups allowed for in my arrays. */
+        private static final int INITIAL_GROUPS = 16;
+
+        /** My function's name. */
+        private final String _function;
+        /** Number of non-empty values in each group. */
+        private long[] _counts;
+        /** Sums of the values in each group, for sum and avg. */
+        private double[] _sums;
+        /** Smallest or largest value in each group, for min and max. */
+        private String[] _extremes;
+    }
+
+    /** Return X as a numeral, without a fractional part if X is
+     *  integral. */
+    static String formatNumber(double x) {
+        if (x == Math.rint(x) && Math.abs(x) < MAX_EXACT) {
+            return Long.toString((long) x);
+        }
+        return Double.toString(x);
+    }
+
+    /** Magnitude below which integral doubles are printed exactly. */
+    private static final double MAX_EXACT = 1e15;
+
+    /** My function name. */
+    private final String _function;
+    /** The Column whose values I aggregate. */
+    private final Column _argument;
+}
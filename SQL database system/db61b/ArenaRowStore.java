@@ -0,0 +1,27 @@
+package db61b;
+
+import java.nio.ByteBuffer;
+
+/** An EncodedRowStore that keeps its rows on the Java heap, packed into
+ *  byte arrays.  Compared with a HeapRowStore, this saves the headers of
+ *  a Row, its array, and a String with its own array for every value,
+ *  and keeps the values of neighbouring rows together in memory.
+ *  @author Jiaxin Huang
+ */
+class ArenaRowStore extends EncodedRowStore {
+
+    /** A new, empty store for rows of COLUMNS values. */
+    ArenaRowStore(int columns) {
+        super(columns);
+    }
+
+    @Override
+    public String kind() {
+        return ARENA;
+    }
+
+    @Override
+    ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size);
+    }
+}
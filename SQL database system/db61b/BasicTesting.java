@@ -3,8 +3,15 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
+import java.util.Scanner;
 
 
 
@@ -48,6 +55,21 @@ public class BasicTesting {
 
     }
 
+    @Test
+    public void testAddScratch() {
+        Table t = new Table("t", new String[] {"one", "two", "three"});
+        assertEquals(true, t.add(new Row(new String[]{"Any", "Amy",
+                                                      "Abbie"})));
+        String[] scratch = {"Any", "Amy", "Abbie"};
+        assertEquals(false, t.add(scratch));
+        scratch[2] = "Ann";
+        assertEquals(true, t.add(scratch));
+        scratch[2] = "Bob";
+        assertEquals("Ann", t.rows().value(1, 2));
+        assertEquals(true, t.add(scratch));
+        assertEquals(3, t.size());
+    }
+
     @Test
     public void testColumnSize() {
         Table t = new Table("t", new String[] {"Basic", "Test", "Col"});
@@ -62,6 +84,822 @@ public class BasicTesting {
         assertEquals("Testing", t.title(2));
     }
 
+    @Test
+    public void testWriteTable() throws IOException {
+        Table t = new Table("t", new String[] {"a", "b"});
+        t.add(new Row(new String[] {"1", "x"}));
+        t.add(new Row(new String[] {"2", "y"}));
+        File file = File.createTempFile("db61b", ".db");
+        String name = file.getPath().replaceAll("\\.db$", "");
+        t.writeTable(name);
+        Table copy = Table.readTable(name);
+        file.delete();
+        assertEquals(2, copy.numColumns());
+        assertEquals("b", copy.title(1));
+        assertEquals(2, copy.size());
+        assertEquals(false, copy.add(new Row(new String[] {"2", "y"})));
+    }
+
+    @Test
+    public void testIndexFile() throws IOException {
+        Table t = new Table("t", new String[] {"a", "b", "c"});
+        for (int i = 0; i < 100; i += 1) {
+            t.add(new Row(new String[] {"" + i % 7, "" + i % 3, "" + i}));
+        }
+        t.createHashIndex("ab", Arrays.asList("a", "b"));
+        File file = File.createTempFile("db61b", ".db");
+        String name = file.getPath().replaceAll("\\.db$", "");
+        File index = new File(name + ".idx");
+        try {
+            t.writeTable(name);
+            assertTrue(index.exists());
+            Table copy = Table.readTable(name);
+            HashIndex ab = copy.indexes().get(0);
+            assertEquals(21, ab.keys());
+            Row key = new Row(new String[] {"3", "1"});
+            HashIndex.Positions found = ab.lookup(key);
+            assertEquals(5, found.size());
+            for (int k = 0; k < found.size(); k += 1) {
+                assertEquals("3", copy.rows().value(found.get(k), 0));
+                assertEquals("1", copy.rows().value(found.get(k), 1));
+            }
+            copy.add(new Row(new String[] {"3", "1", "x"}));
+            copy.add(new Row(new String[] {"9", "9", "y"}));
+            assertEquals(6, ab.lookup(key).size());
+            assertEquals(100, ab.lookup(key).get(5));
+            assertEquals(22, ab.keys());
+
+            try (java.io.FileWriter out = new java.io.FileWriter(file, true)) {
+                out.write("3,1,z\n");
+            }
+            Table stale = Table.readTable(name);
+            assertEquals(6, stale.indexes().get(0).lookup(key).size());
+
+            new Table("t", new String[] {"a"}).writeTable(name);
+            assertFalse(index.exists());
+        } finally {
+            file.delete();
+            index.delete();
+        }
+    }
+
+    @Test
+    public void testHashAggregator() {
+        Table t = new Table("t", new String[] {"k", "sum_v", "count"});
+        Column k = new Column(null, "k");
+        List<Column> items =
+            Arrays.asList(k, new Aggregate("sum", new Column(null, "v"), null),
+                          new Aggregate("count", null, null));
+        HashAggregator agg =
+            new HashAggregator(items, Arrays.asList(k), t, 0);
+        for (int i = 0; i < 100; i += 1) {
+            agg.accept(new Row(new String[] {"k" + (i % 7), "" + i, "*"}));
+        }
+        agg.finish();
+        assertEquals(7, t.size());
+        assertEquals(false, t.add(new Row(new String[] {"k3", "679", "14"})));
+        assertEquals(false, t.add(new Row(new String[] {"k0", "735", "15"})));
+    }
+
+    @Test
+    public void testExternalSorter() {
+        Table t = new Table("t", new String[] {"a", "b"});
+        ExternalSorter sorter =
+            new ExternalSorter(new RowOrder(new int[] {1, 0},
+                                            new boolean[] {true, false}),
+                               t, 100);
+        for (int i = 0; i < 200; i += 1) {
+            sorter.accept(new Row(new String[] {"" + (i % 10),
+                                                "" + (i % 4)}));
+        }
+        sorter.finish();
+        assertEquals(20, t.size());
+        String last = null;
+        for (Row row : t) {
+            String key = row.get(1) + (9 - Integer.parseInt(row.get(0)));
+            assertTrue(last == null || last.compareTo(key) > 0);
+            last = key;
+        }
+    }
+
+    @Test
+    public void testTopKSorter() {
+        Table t = new Table("t", new String[] {"a"});
+        TopKSorter sorter =
+            new TopKSorter(new RowOrder(new int[] {0}, new boolean[] {true}),
+                           2, 3, t);
+        for (int i = 0; i < 1000; i += 1) {
+            sorter.accept(new Row(new String[] {"" + (i % 100 + 100)}));
+        }
+        sorter.finish();
+        assertEquals(3, t.size());
+        int expected = 197;
+        for (Row row : t) {
+            assertEquals("" + expected, row.get(0));
+            expected -= 1;
+        }
+    }
+
+    @Test
+    public void testBloomFilter() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i += 1) {
+            filter.add(BloomFilter.hash("key" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i += 1) {
+            assertTrue(filter.mightContain(BloomFilter.hash("key"
+                                                            + i % 1000)));
+            if (filter.mightContain(BloomFilter.hash("other" + i))) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < 300);
+        assertEquals(0.01, filter.falsePositiveRate(), 0.005);
+    }
+
+    @Test
+    public void testZoneMap() {
+        Table t = new Table("t", new String[] {"key", "value"});
+        for (int i = 0; i < 5000; i += 1) {
+            t.add(new Row(new String[] {String.format("k%05d", i), "v"}));
+        }
+        assertEquals(5, t.zoneMap().blocks());
+        assertEquals("k01024", t.zoneMap().min(1, 0));
+        assertEquals("k02047", t.zoneMap().max(1, 0));
+
+        TableIterator it = t.tableIterator();
+        Column key = new Column(t, "key");
+        key.resolve(Arrays.asList(it));
+        it.prune(Arrays.asList(new Condition(key, ">=", "k04000"),
+                               new Condition(key, "<", "k04100")));
+        it.reset();
+        int n;
+        for (n = 0; it.hasRow(); it.next()) {
+            n += 1;
+        }
+        assertEquals(5000 - 3 * 1024, n);
+        assertEquals(3, it.blocksSkipped());
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        for (int n : new int[] {1000, 100000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (int i = 0; i < n; i += 1) {
+                sketch.add("v" + i);
+                sketch.add("v" + i);
+            }
+            assertEquals(n, sketch.estimate(), 0.05 * n);
+        }
+        assertEquals(0.0, new HyperLogLog().estimate(), 0.0);
+    }
+
+    @Test
+    public void testHistogram() {
+        String[] uniform = new String[1000];
+        for (int i = 0; i < uniform.length; i += 1) {
+            uniform[i] = String.format("%03d", i);
+        }
+        Histogram hist = new Histogram(uniform, 64);
+        assertEquals(64, hist.buckets());
+        assertEquals(0.0, hist.fractionBelow("000", false), 0.0);
+        assertEquals(1.0, hist.fractionBelow("999", true), 0.0);
+        assertEquals(0.5, hist.fractionBelow("500", false), 0.02);
+        assertEquals(0.25, hist.fractionBelow("250", true), 0.02);
+
+        String[] skewed = new String[1000];
+        for (int i = 0; i < skewed.length; i += 1) {
+            skewed[i] = i < 900 ? "a" : "b" + i;
+        }
+        hist = new Histogram(skewed, 64);
+        assertEquals(0.0, hist.fractionBelow("a", false), 0.0);
+        assertEquals(0.9, hist.fractionBelow("a", true), 0.02);
+        assertEquals(0.9, hist.fractionBelow("b", false), 0.02);
+
+        String[] halves = new String[1000];
+        for (int i = 0; i < halves.length; i += 1) {
+            halves[i] = i < 500 ? "a" : "b";
+        }
+        hist = new Histogram(halves, 64);
+        assertEquals(0.5, hist.fractionBelow("b", false), 0.02);
+        assertEquals(1.0, hist.fractionBelow("b", true), 0.0);
+
+        hist = new Histogram(new String[0], 64);
+        assertEquals(0, hist.buckets());
+        assertEquals(0.5, hist.fractionBelow("a", true), 0.0);
+    }
+
+    @Test
+    public void testTableStats() {
+        Table empty = new Table("e", new String[] {"a", "b"});
+        TableStats stats = new TableStats(empty);
+        assertEquals(0, stats.rows());
+        assertEquals(1.0, stats.distinct(0), 0.0);
+        assertEquals(1.0, stats.selectivity(0, "=", "x"), 0.0);
+
+        Table t = new Table("t", new String[] {"k", "g"});
+        for (int i = 0; i < 1000; i += 1) {
+            t.add(new Row(new String[] {String.format("%03d", i),
+                                        "g" + i % 10}));
+        }
+        t.delete(new int[] {0});
+        stats = new TableStats(t);
+        assertEquals(999, stats.rows());
+        assertEquals(10, stats.distinct(1), 0.5);
+        assertEquals(0.1, stats.selectivity(1, "=", "g1"), 0.01);
+        assertEquals(0.9, stats.selectivity(1, "!=", "g1"), 0.01);
+        assertEquals(0.5, stats.selectivity(0, "<", "500"), 0.02);
+        assertEquals(0.5, stats.selectivity(0, ">=", "500"), 0.02);
+        assertEquals(0.1, stats.selectivity(0, "like", "1%"), 0.02);
+    }
+
+    @Test
+    public void testProfiler() {
+        Table t = new Table("t", new String[] {"key", "value"});
+        for (int i = 0; i < 10; i += 1) {
+            t.add(new Row(new String[] {"k" + i, "v" + (i % 2)}));
+        }
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column value = new Column(null, "value");
+        value.resolve(its);
+        Plan plan =
+            Planner.plan(its, Arrays.asList(new Condition(value, "=", "v1")));
+        Profiler profiler = new Profiler(true);
+        Table result = new Table("r", new String[] {"value"});
+        profiler.add("distinct", result);
+        profiler.execute(plan, Arrays.asList(value));
+        profiler.output(result.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        profiler.print(new PrintStream(bytes));
+        String[] lines = bytes.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("  distinct [rows in 5, out 1, "));
+        assertTrue(lines[1].startsWith("    project t.value "));
+        assertTrue(lines[2].startsWith("      filter t.value = 'v1' "
+                                       + "[rows in 10, out 5]"));
+        assertEquals("        scan t [out 10]", lines[3]);
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        Metrics.LatencyHistogram h = new Metrics.LatencyHistogram();
+        assertEquals(0, h.percentile(0.5, 0));
+        for (long v = 1; v <= 1000; v += 1) {
+            h.record(v * 1000);
+        }
+        assertEquals(1000, h.count());
+        for (double p : new double[] {0.5, 0.9, 0.99}) {
+            double expected = p * 1000 * 1000;
+            assertEquals(expected, h.percentile(p, 1000 * 1000),
+                         expected / Metrics.LatencyHistogram.SUB_BUCKETS);
+        }
+        for (long v : new long[] {0, 15, 16, 17, 1000, Long.MAX_VALUE}) {
+            int b = Metrics.LatencyHistogram.bucket(v);
+            assertTrue(Metrics.LatencyHistogram.lowest(b) <= v);
+            assertTrue(v - Metrics.LatencyHistogram.lowest(b)
+                       < Math.max(1, v / Metrics.LatencyHistogram.SUB_BUCKETS));
+        }
+        Metrics.LatencyHistogram one = new Metrics.LatencyHistogram();
+        one.record(2267000);
+        assertEquals(2267000, one.percentile(0.5, 2267000));
+    }
+
+    @Test
+    public void testStatementCounters() {
+        Metrics.begin("analyze");
+        Table t = new Table("t", new String[] {"a"});
+        t.add(new Row(new String[] {"x"}));
+        t.add(new Row(new String[] {"x"}));
+        Metrics.scan(5, 3, 1);
+        Metrics.statement("analyze", 1000, false);
+        t.add(new Row(new String[] {"y"}));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Metrics.print(new PrintStream(bytes));
+        String output = bytes.toString();
+        int start = output.indexOf("  analyze: ");
+        assertTrue(start >= 0);
+        assertTrue(output.substring(start).split(System.lineSeparator())[1]
+                   .contains("rows scanned 5, rows emitted 1, join pairs 3,"
+                             + " duplicate probes 2,"));
+    }
+
+    @Test
+    public void testParallelScan() {
+        Table t = new Table("t", new String[] {"key", "value"});
+        for (int i = 0; i < 10000; i += 1) {
+            t.add(new Row(new String[] {String.format("k%05d", i),
+                                        "v" + (i % 10)}));
+        }
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column key = new Column(null, "key"), value = new Column(null, "value");
+        key.resolve(its);
+        value.resolve(its);
+        Plan plan =
+            Planner.plan(its, Arrays.asList(new Condition(key, ">=", "k03000"),
+                                            new Condition(value, "<", "v5")));
+        plan.parallelize(4);
+        Table result = new Table("r", new String[] {"value"});
+        plan.execute(Arrays.asList(value), result);
+        assertEquals(5, result.size());
+        assertEquals(5, plan.rowsProduced());
+        assertEquals(10000 - 2 * 1024, plan.rowsScanned());
+        assertEquals(2, it.blocksSkipped());
+    }
+
+    @Test
+    public void testParallelHashJoin() {
+        Table a = new Table("a", new String[] {"k", "x"}),
+            b = new Table("b", new String[] {"k", "y"});
+        for (int i = 0; i < 5000; i += 1) {
+            a.add(new Row(new String[] {"k" + (i % 1000), "x" + i}));
+            b.add(new Row(new String[] {"k" + i, "y" + (i % 3)}));
+        }
+        List<TableIterator> its =
+            Arrays.asList(a.tableIterator(), b.tableIterator());
+        Column ak = new Column(a, "k"), bk = new Column(b, "k"),
+            x = new Column(a, "x"), y = new Column(b, "y");
+        for (Column c : new Column[] {ak, bk, x, y}) {
+            c.resolve(its);
+        }
+        List<Condition> conditions =
+            Arrays.asList(new Condition(ak, "=", bk),
+                          new Condition(y, "!=", "y0"),
+                          new Condition(x, "<", y));
+        Table serial = new Table("s", new String[] {"x", "y"}),
+            parallel = new Table("p", new String[] {"x", "y"});
+        Planner.plan(its, conditions).execute(Arrays.asList(x, y), serial);
+        Plan plan = Planner.plan(its, conditions);
+        assertEquals(Plan.HASH_JOIN, plan.algorithm());
+        plan.parallelize(4);
+        plan.execute(Arrays.asList(x, y), parallel);
+        assertEquals(serial.size(), parallel.size());
+        for (Row row : serial) {
+            assertFalse(parallel.add(row));
+        }
+        assertEquals(10000, plan.rowsScanned());
+    }
+
+    @Test
+    public void testEncodedRowStores() {
+        for (String kind : new String[] { RowStore.ARENA,
+                                          RowStore.OFF_HEAP }) {
+            checkEncodedRowStore(RowStore.make(kind, 3));
+        }
+    }
+
+    /** Check that STORE, an empty EncodedRowStore for rows of 3 values,
+     *  returns the rows added to it, rejects duplicates, and compares
+     *  its values as Strings do. */
+    private void checkEncodedRowStore(RowStore store) {
+        String[][] values = {
+            {"", "a", "b"}, {"caf\u00e9", "\u4e2d\u6587", "\ud800"},
+            {"a", "", "b"},
+        };
+        for (int i = 0; i < 10000; i += 1) {
+            String[] row = values[i % values.length];
+            assertTrue(store.add(new Row(new String[] {
+                row[0], row[1], row[2] + i / values.length })));
+        }
+        String big = String.join("", java.util.Collections.nCopies(
+            EncodedRowStore.CHUNK_SIZE, "\u00e9"));
+        Row bigRow = new Row(new String[] { big, "x", "\u4e2d" });
+        assertTrue(store.add(bigRow));
+        assertEquals(10001, store.size());
+        for (int i = 0; i < 10000; i += 1) {
+            String[] row = values[i % values.length];
+            Row expected = new Row(new String[] {
+                row[0], row[1], row[2] + i / values.length });
+            assertEquals(expected, store.get(i));
+            assertEquals(row[1], store.value(i, 1));
+            assertFalse(store.add(expected));
+        }
+        assertEquals(bigRow, store.get(10000));
+        assertEquals("\u4e2d", store.value(10000, 2));
+        assertFalse(store.add(bigRow));
+        assertEquals(10001, store.size());
+
+        String[] probes = {
+            "", "a", "b", "caf", "caf\u00e9", "caf\u00ea", "\u4e2d",
+            "\u4e2d\u6587", "\u00e9", "\ud800", "\uffff",
+        };
+        RowStore heap = RowStore.make(RowStore.HEAP, 1);
+        for (String probe : probes) {
+            heap.add(new Row(new String[] { probe }));
+        }
+        for (int k = 0; k < 6; k += 1) {
+            for (int c = 0; c < 3; c += 1) {
+                String value = store.value(k, c);
+                for (int p = 0; p < probes.length; p += 1) {
+                    int expected = Integer.signum(value.compareTo(probes[p]));
+                    assertEquals(expected,
+                                 Integer.signum(store.compare(k, c,
+                                                              probes[p])));
+                    assertEquals(expected,
+                                 Integer.signum(store.compare(k, c, heap, p,
+                                                              0)));
+                }
+                for (int k2 = 0; k2 < 6; k2 += 1) {
+                    assertEquals(Integer.signum(value.compareTo(
+                                     store.value(k2, 0))),
+                                 Integer.signum(store.compare(k, c, store,
+                                                              k2, 0)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNormalizedText() {
+        Tokenizer input =
+            new Tokenizer(new Scanner("select  SID from T\n"
+                                      + "  where Major = 'EECS' limit 10;"
+                                      + " print T;"), null);
+        int start = input.position();
+        while (!input.nextIf(";")) {
+            input.next();
+        }
+        assertEquals("select SID from T where Major = ? limit ? ;",
+                     input.text(start));
+        start = input.position();
+        input.next("print");
+        assertEquals("print", input.text(start));
+    }
+
+    @Test
+    public void testIndexAdvisor() {
+        Table t = new Table("t", new String[] {"key", "value"});
+        for (int i = 0; i < 20000; i += 1) {
+            t.add(new Row(new String[] {"k" + i, "v" + (i % 100)}));
+        }
+        IndexAdvisor advisor = new IndexAdvisor(new Settings());
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column key = new Column(null, "key");
+        Column value = new Column(null, "value");
+        key.resolve(its);
+        value.resolve(its);
+        List<Condition> conditions =
+            Arrays.asList(new Condition(value, "=", "v1"));
+        for (int k = 0; k < IndexAdvisor.MIN_SCANS; k += 1) {
+            assertTrue(t.indexes().isEmpty());
+            Table result = new Table("r", new String[] {"key"});
+            Plan plan = Planner.plan(its, conditions);
+            plan.execute(Arrays.asList(key), result);
+            plan.advise(advisor);
+            advisor.selected();
+        }
+        advisor.awaitBuilds();
+        assertEquals(1, t.indexes().size());
+        assertEquals("auto_t_value", t.indexes().get(0).name());
+        Plan plan = Planner.plan(its, conditions);
+        assertTrue(plan.toString().contains("auto_t_value"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        advisor.print(new PrintStream(bytes));
+        assertTrue(bytes.toString().contains("created auto_t_value"));
+    }
+
+    @Test
+    public void testAutomaticIndexesNotStored() throws IOException {
+        Table t = new Table("t", new String[] {"key", "value"});
+        t.add(new Row(new String[] {"k", "v"}));
+        t.createHashIndex("auto_t_value", Arrays.asList("value"), true);
+        File file = File.createTempFile("db61b", ".db");
+        String name = file.getPath().replaceAll("\\.db$", "");
+        File index = new File(name + ".idx");
+        try {
+            t.writeTable(name);
+            assertFalse(index.exists());
+            t.createHashIndex("byvalue", Arrays.asList("value"));
+            t.writeTable(name);
+            Table copy = Table.readTable(name);
+            assertEquals(1, copy.indexes().size());
+            assertEquals("byvalue", copy.indexes().get(0).name());
+        } finally {
+            file.delete();
+            index.delete();
+        }
+    }
+
+    @Test
+    public void testIndexAdvisorForgetsTables() {
+        IndexAdvisor advisor = new IndexAdvisor(new Settings());
+        WeakReference<Table> table = adviseOnNewTable(advisor);
+        advisor.awaitBuilds();
+        for (int k = 0; k < 100 && table.get() != null; k += 1) {
+            System.gc();
+            advisor.selected();
+        }
+        assertNull(table.get());
+    }
+
+    /** Have ADVISOR observe enough selects on a new table to index it,
+     *  and return a weak reference to the table. */
+    private static WeakReference<Table> adviseOnNewTable(
+        IndexAdvisor advisor) {
+        Table t = new Table("t", new String[] {"key", "value"});
+        for (int i = 0; i < 20000; i += 1) {
+            t.add(new Row(new String[] {"k" + i, "v" + (i % 100)}));
+        }
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column key = new Column(null, "key");
+        Column value = new Column(null, "value");
+        key.resolve(its);
+        value.resolve(its);
+        List<Condition> conditions =
+            Arrays.asList(new Condition(value, "=", "v1"));
+        for (int k = 0; k < IndexAdvisor.MIN_SCANS; k += 1) {
+            Plan plan = Planner.plan(its, conditions);
+            plan.execute(Arrays.asList(key), new Table("r",
+                                                       new String[] {"key"}));
+            plan.advise(advisor);
+            advisor.selected();
+        }
+        return new WeakReference<>(t);
+    }
+
+    @Test
+    public void testClusteredTable() throws IOException {
+        Table t = new Table("t", new String[] {"key", "value"}, "arena");
+        t.clusterBy("key");
+        t.createHashIndex("byvalue", Arrays.asList("value"));
+        for (int i = 0; i < 5000; i += 1) {
+            int k = (i * 7919) % 5000;
+            t.add(new String[] {String.format("k%04d", k), "v" + k % 10});
+        }
+        assertTrue(t.reorganizations() > 0);
+        assertTrue(t.sortedRows() < t.size());
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column key = new Column(null, "key");
+        key.resolve(its);
+        Table result = new Table("r", new String[] {"key"});
+        Planner.plan(its, Arrays.asList(new Condition(key, ">=", "k1000"),
+                                        new Condition(key, "<", "k1100")))
+            .execute(Arrays.asList(key), result);
+        assertEquals(100, result.size());
+        assertTrue(it.rowsSkipped() > 0);
+        assertEquals(500,
+                     t.indexes().get(0).lookup(new Row(new String[] {"v3"}))
+                     .size());
+
+        File file = File.createTempFile("db61b", ".db");
+        String name = file.getPath().replaceAll("\\.db$", "");
+        try {
+            t.writeTable(name);
+            assertEquals(t.size(), t.sortedRows());
+            Table copy = Table.readTable(name, "heap");
+            assertEquals(0, copy.clusterColumn());
+            assertEquals(5000, copy.sortedRows());
+            assertEquals(0, copy.reorganizations());
+            for (int k = 1; k < copy.size(); k += 1) {
+                assertTrue(copy.rows().value(k - 1, 0)
+                           .compareTo(copy.rows().value(k, 0)) < 0);
+            }
+        } finally {
+            file.delete();
+            new File(name + ".idx").delete();
+        }
+
+        Table u = new Table("u", new String[] {"ref"});
+        u.add(new String[] {"k0042"});
+        u.add(new String[] {"k4242"});
+        TableIterator ui = u.tableIterator(), ti = t.tableIterator();
+        its = Arrays.asList(ui, ti);
+        Column ref = new Column(null, "ref"), tkey = new Column(null, "key");
+        ref.resolve(its);
+        tkey.resolve(its);
+        Plan plan = Planner.plan(its,
+                                 Arrays.asList(new Condition(ref, "=", tkey)));
+        assertEquals(Plan.CLUSTER_JOIN, plan.algorithm());
+        result = new Table("r", new String[] {"key"});
+        plan.execute(Arrays.asList(tkey), result);
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testLike() {
+        assertTrue(Condition.like("Computer Science", "Comp%"));
+        assertTrue(Condition.like("Computer Science", "%Sci%"));
+        assertTrue(Condition.like("CS61B", "CS__B"));
+        assertTrue(Condition.like("", "%"));
+        assertTrue(Condition.like("aab", "%ab"));
+        assertFalse(Condition.like("CS61B", "CS_B"));
+        assertFalse(Condition.like("Math", "Comp%"));
+        assertEquals("Comp", Condition.prefix("Comp%ter_"));
+        assertEquals("Compv", Condition.prefixEnd("Compu"));
+        assertNull(Condition.prefixEnd(""));
+    }
+
+    @Test
+    public void testTrieIndex() {
+        Table t = new Table("t", new String[] {"name", "n"});
+        String[] names = {"Ann", "Anna", "Annette", "Andy", "Bob", "", "An"};
+        for (int i = 0; i < 700; i += 1) {
+            t.add(new String[] {names[i % names.length], "" + i});
+        }
+        t.createTrieIndex("byname", "name");
+        t.add(new String[] {"Annabel", "700"});
+        TrieIndex trie = t.tries().get(0);
+        assertEquals(8, trie.values());
+        assertEquals(301, trie.lookup("Ann", false).length);
+        assertEquals(100, trie.lookup("Ann", true).length);
+        assertEquals(501, trie.lookup("An", false).length);
+        assertEquals(0, trie.lookup("Anx", false).length);
+        assertEquals(0, trie.lookup("Annab", true).length);
+        assertEquals(701, trie.lookup("", false).length);
+        int[] found = trie.lookup("Anne", false);
+        for (int k = 0; k < found.length; k += 1) {
+            assertEquals("Annette", t.rows().value(found[k], 0));
+            assertTrue(k == 0 || found[k - 1] < found[k]);
+        }
+
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column name = new Column(null, "name"), n = new Column(null, "n");
+        name.resolve(its);
+        n.resolve(its);
+        Plan plan = Planner.plan(its, Arrays.asList(
+            new Condition(name, Condition.LIKE, "Ann%e%")));
+        assertEquals(Plan.TRIE_SCAN, plan.algorithm());
+        Table result = new Table("r", new String[] {"n"});
+        plan.execute(Arrays.asList(n), result);
+        assertEquals(101, result.size());
+        assertEquals(301, plan.rowsScanned());
+    }
+
+    @Test
+    public void testInAndOr() {
+        Table t = new Table("t", new String[] {"key", "value"});
+        for (int i = 0; i < 2000; i += 1) {
+            t.add(new String[] {"k" + i, "v" + i % 10});
+        }
+        t.createHashIndex("bykey", Arrays.asList("key"));
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column key = new Column(null, "key"), value = new Column(null, "value");
+        key.resolve(its);
+        value.resolve(its);
+
+        Condition or = Condition.or(Arrays.asList(
+            Arrays.asList(new Condition(key, "=", "k5")),
+            Arrays.asList(new Condition(key, Arrays.asList("k7", "k9")))));
+        assertEquals(Condition.IN, or.relation());
+        assertArrayEquals(new String[] {"k5", "k7", "k9"}, or.values());
+        assertTrue(or.anyBetween("k6", "k8"));
+        assertFalse(or.anyBetween("k90", "k99"));
+
+        Plan plan = Planner.plan(its, Arrays.asList(or));
+        assertEquals(Plan.INDEX_UNION, plan.algorithm());
+        Table result = new Table("r", new String[] {"key"});
+        plan.execute(Arrays.asList(key), result);
+        assertEquals(3, result.size());
+        assertEquals(3, plan.rowsScanned());
+
+        Condition mixed = Condition.or(Arrays.asList(
+            Arrays.asList(new Condition(key, "=", "k5")),
+            Arrays.asList(new Condition(value, "=", "v1"),
+                          new Condition(key, "<", "k2"))));
+        assertEquals(Condition.OR, mixed.relation());
+        plan = Planner.plan(its, Arrays.asList(mixed));
+        assertEquals(Plan.SCAN, plan.algorithm());
+        result = new Table("r", new String[] {"key"});
+        plan.execute(Arrays.asList(key), result);
+        assertEquals(1 + 2 + 10 + 100, result.size());
+    }
+
+    @Test
+    public void testSemiAndAntiJoins() {
+        Table t = new Table("t", new String[] {"key"});
+        for (int i = 0; i < 100; i += 1) {
+            t.add(new String[] {"k" + i});
+        }
+        TableIterator it = t.tableIterator();
+        List<TableIterator> its = Arrays.asList(it);
+        Column key = new Column(null, "key");
+        key.resolve(its);
+        List<String> keys = Arrays.asList("k1", "k2", "k3", "none");
+
+        Condition anti = new Condition(key, keys, true, "select key from u");
+        assertEquals(Condition.NOT_IN, anti.relation());
+        assertNull(anti.alternatives());
+        assertEquals("t.key not in (select key from u) [anti-join on 4 keys]",
+                     anti.toString());
+        Table result = new Table("r", new String[] {"key"});
+        Planner.plan(its, Arrays.asList(anti)).execute(Arrays.asList(key),
+                                                        result);
+        assertEquals(97, result.size());
+
+        Condition semi = new Condition(key, keys, false, "select key from u");
+        result = new Table("r", new String[] {"key"});
+        Planner.plan(its, Arrays.asList(semi)).execute(Arrays.asList(key),
+                                                        result);
+        assertEquals(3, result.size());
+
+        Condition none = new Condition(key, new ArrayList<String>(), false,
+                                       "select key from u");
+        result = new Table("r", new String[] {"key"});
+        Planner.plan(its, Arrays.asList(none)).execute(Arrays.asList(key),
+                                                        result);
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    public void testDeleteAndUpdate() {
+        for (String storage : new String[] {RowStore.HEAP, RowStore.ARENA}) {
+            Table t = new Table("t", new String[] {"key", "value"}, storage);
+            for (int i = 0; i < 2000; i += 1) {
+                t.add(new String[] {"k" + i, "v" + i % 10});
+            }
+            t.createHashIndex("bykey", Arrays.asList("key"));
+            int[] positions = new int[1000];
+            for (int i = 0; i < positions.length; i += 1) {
+                positions[i] = 2 * i;
+            }
+            assertEquals(1000, t.delete(positions));
+            assertEquals(0, t.delete(new int[] {0}));
+            assertEquals(1000, t.live());
+            assertTrue(t.deleted(0));
+            assertEquals(3, t.nextLive(2));
+
+            TableIterator it = t.tableIterator();
+            List<TableIterator> its = Arrays.asList(it);
+            Column key = new Column(null, "key");
+            key.resolve(its);
+            Plan plan = Planner.plan(its,
+                                     Arrays.asList(new Condition(key, "=",
+                                                                 "k4")));
+            assertEquals(Plan.INDEX_SCAN, plan.algorithm());
+            Table result = new Table("r", new String[] {"key"});
+            plan.execute(Arrays.asList(key), result);
+            assertEquals(0, result.size());
+
+            assertTrue(t.add(new String[] {"k4", "v4"}));
+            assertEquals(1001, t.live());
+            assertEquals(1, t.update(new int[] {4, 5}, new int[] {1},
+                                     new String[] {"v5"}));
+            int n = 0;
+            for (Row row : t) {
+                n += 1;
+            }
+            assertEquals(1001, n);
+
+            t.compact();
+            assertEquals(1001, t.size());
+            assertEquals(1001, t.live());
+            assertFalse(t.deleted(0));
+            assertEquals(1001, t.indexes().get(0).keys());
+            it = t.tableIterator();
+            its = Arrays.asList(it);
+            key = new Column(null, "key");
+            key.resolve(its);
+            plan = Planner.plan(its, Arrays.asList(new Condition(key, "=",
+                                                                 "k4")));
+            result = new Table("r", new String[] {"key"});
+            plan.execute(Arrays.asList(key), result);
+            assertEquals(1, result.size());
+        }
+    }
+
+    @Test
+    public void testMetricsCountLiveRows() {
+        Table t = new Table("t", new String[] {"a"});
+        for (int i = 0; i < 6; i += 1) {
+            t.add(new Row(new String[] {"" + i}));
+        }
+        t.delete(new int[] {0, 2, 4});
+        Metrics.table("metrics_live_rows", t);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Metrics.print(new PrintStream(bytes));
+        assertTrue(bytes.toString().contains("metrics_live_rows: 3 rows"));
+    }
+
+    @Test
+    public void testRowPrinterFormats() {
+        Row row = new Row(new String[] {"a b", "x\ty", "say \"hi\""});
+        String[][] expected = {
+            { RowPrinter.TEXT, "  a b x\ty say \"hi\" " },
+            { RowPrinter.CSV, "a b,x\ty,\"say \"\"hi\"\"\"" },
+            { RowPrinter.TSV, "a b\tx\\ty\tsay \"hi\"" },
+        };
+        for (String[] format : expected) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            RowPrinter printer = new RowPrinter(new PrintStream(bytes),
+                                                format[0]);
+            for (int i = 0; i < RowPrinter.BUFFER_SIZE; i += 1) {
+                printer.accept(row);
+            }
+            assertTrue(bytes.size() > 0);
+            printer.finish();
+            String[] lines = bytes.toString().split(System.lineSeparator());
+            assertEquals(RowPrinter.BUFFER_SIZE, lines.length);
+            assertEquals(format[1], lines[0]);
+            assertEquals(format[1], lines[lines.length - 1]);
+        }
+    }
 
     public static void main(String... args) {
         System.exit(ucb.junit.textui.runClasses(BasicTesting.class));
@@ -0,0 +1,121 @@
+package db61b;
+
+/** A Bloom filter: a compact, approximate set of 64-bit hash values.
+ *  A value that was added is always reported as possibly present; a
+ *  value that was not is reported as possibly present with a small,
+ *  predictable probability (the false-positive rate).
+ *  @author Jiaxin Huang
+ */
+class BloomFilter {
+
+    /** A Bloom filter sized to hold EXPECTED values with a false-positive
+     *  rate of about FPP. */
+    BloomFilter(long expected, double fpp) {
+        long n = Math.max(1, expected);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / LN2_SQUARED);
+        bits = Math.max(Long.SIZE, Math.min(bits, MAX_BITS));
+        _words = new long[(int) ((bits + Long.SIZE - 1) / Long.SIZE)];
+        _bits = (long) _words.length * Long.SIZE;
+        _hashes = (int) Math.max(1, Math.min(MAX_HASHES,
+                                             Math.round(_bits * LN2 / n)));
+    }
+
+    /** Add HASH to my set. */
+    void add(long hash) {
+        long h1 = hash, h2 = mix(hash);
+        for (int i = 0; i < _hashes; i += 1) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _bits);
+            _words[(int) (bit >>> WORD_SHIFT)] |= 1L << bit;
+        }
+        _count += 1;
+    }
+
+    /** Return false if HASH is definitely not in my set, and true if it
+     *  may be. */
+    boolean mightContain(long hash) {
+        long h1 = hash, h2 = mix(hash);
+        for (int i = 0; i < _hashes; i += 1) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _bits);
+            if ((_words[(int) (bit >>> WORD_SHIFT)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return my size in bits. */
+    long bits() {
+        return _bits;
+    }
+
+    /** Return the number of hash functions I use. */
+    int hashes() {
+        return _hashes;
+    }
+
+    /** Return the number of values added to me. */
+    long count() {
+        return _count;
+    }
+
+    /** Return my expected false-positive rate, given the number of values
+     *  added to me. */
+    double falsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) _hashes * _count / _bits),
+                        _hashes);
+    }
+
+    /** Return a 64-bit hash of the string S. */
+    static long hash(String s) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < s.length(); i += 1) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    /** Return a 64-bit hash of the sequence of strings hashed to H and then
+     *  S. */
+    static long hash(long h, String s) {
+        return mix(h * FNV_PRIME + hash(s));
+    }
+
+    /** Return H with its bits thoroughly mixed, always odd so that it may
+     *  serve as a probe stride. */
+    private static long mix(long h) {
+        h ^= h >>> MIX_SHIFT1;
+        h *= MIX_MULTIPLIER1;
+        h ^= h >>> MIX_SHIFT2;
+        h *= MIX_MULTIPLIER2;
+        h ^= h >>> MIX_SHIFT1;
+        return h | 1;
+    }
+
+    /** Natural logarithm of 2, and its square. */
+    private static final double
+        LN2 = Math.log(2), LN2_SQUARED = LN2 * LN2;
+    /** Largest number of hash functions used. */
+    private static final long MAX_HASHES = 16;
+    /** Largest number of bits in a filter. */
+    private static final long MAX_BITS = 1L << 34;
+    /** Log base 2 of the number of bits in a word. */
+    private static final int WORD_SHIFT = 6;
+    /** Parameters of the FNV-1a string hash. */
+    private static final long
+        FNV_OFFSET = 0xcbf29ce484222325L, FNV_PRIME = 0x100000001b3L;
+    /** Parameters of the bit mixer (the MurmurHash3 finalizer). */
+    private static final long
+        MIX_MULTIPLIER1 = 0xff51afd7ed558ccdL,
+        MIX_MULTIPLIER2 = 0xc4ceb9fe1a85ec53L;
+    /** Shift distances used by the bit mixer. */
+    private static final int MIX_SHIFT1 = 33, MIX_SHIFT2 = 29;
+
+    /** My bits. */
+    private final long[] _words;
+    /** Number of bits in _words. */
+    private final long _bits;
+    /** Number of hash functions. */
+    private final int _hashes;
+    /** Number of values added. */
+    private long _count;
+}
@@ -60,6 +60,20 @@ class Column {
         }
     }
 
+    /** Return the TableIterator from which I take my values, or null if I
+     *  am unresolved or take my value from no table. */
+    TableIterator source() {
+        return _rowSource;
+    }
+
+    @Override
+    public String toString() {
+        if (_rowSource == null) {
+            return _columnName;
+        }
+        return _rowSource.table().name() + "." + _columnName;
+    }
+
     /** Return my column value from the current row of my
      *  TableIterator.  This Column must be resolved. */
     String value() {
@@ -67,6 +81,35 @@ class Column {
         return _rowSource.value(_index);
     }
 
+    /** Return the result of comparing my value in the current row of my
+     *  TableIterator with that of OTHER in the current row of its, as by
+     *  String.compareTo, leaving it to the tables' RowStores to compare
+     *  the values in place.  This Column must be resolved. */
+    int compareTo(Column other) {
+        assert _rowSource != null;
+        if (other.source() == null) {
+            return _rowSource.compare(_index, other.value());
+        }
+        return _rowSource.compare(_index, other._rowSource, other._index);
+    }
+
+    /** Return my column value from ROW, which must be a row of the table
+     *  of my TableIterator.  Unlike value(), this does not depend on the
+     *  TableIterator's current row, and so may be used by several threads
+     *  at once.  This Column must be resolved. */
+    String value(Row row) {
+        assert _rowSource != null;
+        return row.get(_index);
+    }
+
+    /** Return my column value from ROW1, if ITERATOR1 is my
+     *  TableIterator, and otherwise from ROW2, a row of the other table
+     *  of a join.  Like value(ROW), this may be used by several threads
+     *  at once. */
+    String value(TableIterator iterator1, Row row1, Row row2) {
+        return value(_rowSource == iterator1 ? row1 : row2);
+    }
+
 
 
     /** Column name denoted by THIS. */
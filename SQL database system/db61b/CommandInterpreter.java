@@ -1,9 +1,12 @@
 
 package db61b;
 
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -121,20 +124,72 @@ class CommandInterpreter {
      *  to map names of tables to corresponding Tables. */
     CommandInterpreter(Map<String, Table> database,
                        Scanner inp, PrintStream prompter) {
-        _input = new Tokenizer(inp, prompter);
+        _settings = new Settings();
+        _prompter = prompter;
+        _input = new Tokenizer(inp, _settings.isOn(Settings.BATCH) ? null
+                               : prompter);
         _database = database;
+        _advisor = new IndexAdvisor(_settings);
     }
 
     /** Parse and execute one statement from the token stream.  Return true
-     *  iff the command is something other than quit or exit. */
+     *  iff the command is something other than quit or exit.  Record the
+     *  time taken in the metrics and, if timing is on, report it on the
+     *  standard error, whether or not the statement succeeds.  If the
+     *  slow query log is on and the statement took long enough, log
+     *  it. */
     boolean statement() {
+        long start = System.nanoTime();
+        String command = _input.peek();
+        int position = _input.position();
+        boolean failed = true;
+        _plan = null;
+        Metrics.begin(command);
+        try {
+            boolean result = untimedStatement();
+            failed = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            Metrics.statement(command, nanos, failed);
+            if (_settings.isOn(Settings.TIMING)) {
+                System.err.printf("Time: %.3f ms (%s)%n",
+                                  nanos / NANOS_PER_MS, command);
+            }
+            if (_settings.isOn(Settings.SLOW_QUERY_LOG)
+                && !command.equals("*EOF*")
+                && nanos >= _settings.getLong(Settings.SLOW_QUERY_MS)
+                            * NANOS_PER_MS) {
+                SlowQueryLog.forFile(_settings.get(Settings.SLOW_QUERY_FILE))
+                    .log(_input.text(position), nanos, _plan);
+            }
+        }
+    }
+
+    /** Parse and execute one statement from the token stream.  Return true
+     *  iff the command is something other than quit or exit.  First
+     *  install the compactions of tables finished in the background,
+     *  since no iterator is in use between statements. */
+    private boolean untimedStatement() {
+        for (Table table : _database.values()) {
+            table.installCompaction();
+        }
         switch (_input.peek()) {
+        case "analyze":
+            analyzeStatement();
+            break;
         case "create":
             createStatement();
             break;
+        case "delete":
+            deleteStatement();
+            break;
         case "load":
             loadStatement();
             break;
+        case "explain":
+            explainStatement();
+            break;
         case "exit": case "quit":
             exitStatement();
             return false;
@@ -149,34 +204,97 @@ class CommandInterpreter {
         case "select":
             selectStatement();
             break;
+        case "set":
+            setStatement();
+            break;
+        case "show":
+            showStatement();
+            break;
         case "store":
             storeStatement();
             break;
+        case "update":
+            updateStatement();
+            break;
         default:
             throw error("unrecognizable command");
         }
         return true;
     }
 
-    /** Parse and execute a create statement from the token stream. */
+    /** Parse and execute an analyze statement from the token stream. */
+    private void analyzeStatement() {
+        _input.next("analyze");
+        String name = _input.peek();
+        Table table = tableName();
+        _input.next(";");
+        table.analyze();
+        System.out.printf("Analyzed %s%n", name);
+    }
+
+    /** Parse and execute a create statement from the token stream.  A
+     *  table defined by its columns may be followed by 'cluster by'
+     *  '(' COLUMN ')', keeping its rows sorted by that column. */
     private void createStatement() {
         _input.next("create");
+        if (_input.nextIf("hash")) {
+            createIndexStatement(false);
+            return;
+        }
+        if (_input.nextIf("trie")) {
+            createIndexStatement(true);
+            return;
+        }
         _input.next("table");
         String name = name();
         Table table;
         if (_input.nextIs("(")) {
             table = tableDefinition(name);
+            if (_input.nextIf("cluster")) {
+                _input.next("by");
+                _input.next("(");
+                table.clusterBy(name());
+                _input.next(")");
+            }
             _input.next(";");
             _database.put(name, table);
+            Metrics.table(name, table);
         } else {
             _input.next("as");
             _input.next("select");
             table = selectClause(name);
             _database.put(name, table);
+            Metrics.table(name, table);
         }
     }
 
 
+    /** Parse and execute the rest of a create hash index statement,
+     *  following 'create hash': 'index' NAME 'on' TABLE '(' COLUMN, ...
+     *  ')' ';', or if TRIE, of a create trie index statement, following
+     *  'create trie', which is the same but with a single COLUMN. */
+    private void createIndexStatement(boolean trie) {
+        _input.next("index");
+        String name = name();
+        _input.next("on");
+        Table table = tableName();
+        _input.next("(");
+        ArrayList<String> columns = new ArrayList<>();
+        columns.add(name());
+        while (_input.nextIf(",")) {
+            columns.add(name());
+        }
+        _input.next(")");
+        if (!trie) {
+            table.createHashIndex(name, columns);
+        } else if (columns.size() == 1) {
+            table.createTrieIndex(name, columns.get(0));
+        } else {
+            throw error("a trie index has only one column");
+        }
+        _input.next(";");
+    }
+
     /** Parse and execute an exit or quit statement. Actually does nothing
      *  except check syntax, since statement() handles the actual exiting. */
     private void exitStatement() {
@@ -206,12 +324,82 @@ class CommandInterpreter {
         _input.next(";");
     }
 
+    /** Parse and execute a delete statement from the token stream:
+     *  'delete from' a table, optionally followed by 'where' and a
+     *  condition clause, deleting the rows that satisfy it (all rows, if
+     *  there is none). */
+    private void deleteStatement() {
+        _input.next("delete");
+        _input.next("from");
+        Table table = tableName();
+        TableIterator iterator = table.tableIterator();
+        List<Condition> conditions = whereClause(iterator);
+        _input.next(";");
+        table.delete(positions(iterator, conditions));
+    }
+
+    /** Parse and execute an update statement from the token stream:
+     *  'update' a table 'set' one or more of its columns, separated by
+     *  commas, each followed by '=' and a literal, optionally followed by
+     *  'where' and a condition clause, giving the columns of the rows
+     *  that satisfy it (all rows, if there is none) those values. */
+    private void updateStatement() {
+        _input.next("update");
+        Table table = tableName();
+        _input.next("set");
+        ArrayList<Integer> columns = new ArrayList<>();
+        ArrayList<String> values = new ArrayList<>();
+        do {
+            String name = colname();
+            int column = table.columnIndex(name);
+            if (column == -1) {
+                throw error("%s is not a column in %s", name, table.name());
+            }
+            _input.next("=");
+            columns.add(column);
+            values.add(literal());
+        } while (_input.nextIf(","));
+        TableIterator iterator = table.tableIterator();
+        List<Condition> conditions = whereClause(iterator);
+        _input.next(";");
+        int[] indices = new int[columns.size()];
+        for (int k = 0; k < indices.length; k += 1) {
+            indices[k] = columns.get(k);
+        }
+        table.update(positions(iterator, conditions), indices,
+                     values.toArray(new String[values.size()]));
+    }
+
+    /** Parse an optional 'where' followed by a condition clause on the
+     *  table of ITERATOR from the token stream, and return its
+     *  conditions (none if it is absent). */
+    private List<Condition> whereClause(TableIterator iterator) {
+        if (_input.nextIf("where")) {
+            return conditionClause(List.of(iterator));
+        }
+        return new ArrayList<>();
+    }
+
+    /** Return the positions of the rows of the table of ITERATOR that
+     *  satisfy CONDITIONS, found by the plan the Planner chooses for a
+     *  select, so that indexes, zone maps, and clustering narrow the
+     *  search. */
+    private int[] positions(TableIterator iterator,
+                            List<Condition> conditions) {
+        PositionSink positions = new PositionSink(iterator);
+        select(positions, new ArrayList<Column>(), List.of(iterator),
+               conditions, false, null);
+        return positions.positions();
+    }
+
     /** Parse and execute a load statement from the token stream. */
     private void loadStatement() {
         _input.next("load");
         String name = name();
-        Table loadtable = Table.readTable(name);
+        Table loadtable =
+            Table.readTable(name, _settings.get(Settings.STORAGE));
         _database.put(name, loadtable);
+        Metrics.table(name, loadtable);
         System.out.println("Loaded " + name + ".db");
         _input.next(";");
 
@@ -236,16 +424,90 @@ class CommandInterpreter {
         if (table == null) {
             throw error("unknown table: %s", name);
         }
-        table.print();
+        table.print(_settings.get(Settings.OUTPUT_FORMAT));
     }
 
     /** Parse and execute a select statement from the token stream. */
     private void selectStatement() {
         _input.next("select");
-        Table result = selectClause("table");
+        Query query = query();
+        String format = _settings.get(Settings.OUTPUT_FORMAT);
 
-        System.out.println("Search results:");
-        result.print();
+        if (query.ordered()) {
+            System.out.println("Search results:");
+            execute(query, new RowPrinter(System.out, format), null);
+        } else {
+            Table result = new Table("table", query.titles());
+            execute(query, result, null);
+            System.out.println("Search results:");
+            result.print(format);
+        }
+    }
+
+    /** Parse and execute an explain statement from the token stream:
+     *  'explain' or 'explain analyze' followed by a select statement.
+     *  Print the operators that would execute the select statement; with
+     *  'analyze', execute it, discarding its result, and include the rows
+     *  each operator received and produced, its wall time, and the bytes
+     *  it allocated. */
+    private void explainStatement() {
+        _input.next("explain");
+        Profiler profiler = new Profiler(_input.nextIf("analyze"));
+        _input.next("select");
+        Query query = query();
+
+        if (query.ordered()) {
+            PrintStream discard =
+                new PrintStream(OutputStream.nullOutputStream());
+            RowPrinter printer =
+                new RowPrinter(discard,
+                               _settings.get(Settings.OUTPUT_FORMAT));
+            execute(query, profiler.add("print", printer), profiler);
+        } else {
+            Table result = new Table("table", query.titles());
+            execute(query, profiler.add("distinct", result), profiler);
+            if (profiler.analyzing()) {
+                profiler.output(result.size());
+            }
+        }
+        System.out.println("Query plan:");
+        profiler.print(System.out);
+    }
+
+    /** Parse and execute a set statement from the token stream. */
+    private void setStatement() {
+        _input.next("set");
+        String name = name();
+        _input.next("=");
+        String value;
+        if (_input.nextIs(Tokenizer.LITERAL)) {
+            value = literal();
+        } else if (_input.nextIs(Tokenizer.NUMBER)) {
+            value = _input.next();
+        } else {
+            value = name();
+        }
+        _settings.set(name, value);
+        if (name.equals(Settings.BATCH)) {
+            _input.setPrompter(_settings.isOn(Settings.BATCH) ? null
+                               : _prompter);
+        }
+        _input.next(";");
+    }
+
+    /** Parse and execute a show statement from the token stream:
+     *  'show metrics' or 'show index advice'. */
+    private void showStatement() {
+        _input.next("show");
+        if (_input.nextIf("metrics")) {
+            _input.next(";");
+            Metrics.print(System.out);
+        } else {
+            _input.next("index");
+            _input.next("advice");
+            _input.next(";");
+            _advisor.print(System.out);
+        }
     }
 
     /** Parse and execute a table definition for a Table named NAME,
@@ -258,7 +520,8 @@ class CommandInterpreter {
             while (_input.nextIf(",")) {
                 columnTitles.add(name());
             }
-            table = new Table(name, columnTitles);
+            table = new Table(name, columnTitles,
+                              _settings.get(Settings.STORAGE));
             _input.next(")");
         } else {
             _input.next("as");
@@ -268,57 +531,185 @@ class CommandInterpreter {
     }
 
     /** Parse and execute a select clause from the token stream, returning the
-     *  resulting table, with name TABLENAME. */
+     *  resulting table, with name TABLENAME, kept in the storage given by
+     *  the current settings. */
     Table selectClause(String tableName) {
-        ArrayList<String> colTitles = new ArrayList<>();
+        Query query = query();
+        Table result = new Table(tableName, query.titles(),
+                                 _settings.get(Settings.STORAGE));
+        execute(query, result, null);
+        return result;
+    }
+
+    /** Parse a select clause (after the 'select') from the token stream,
+     *  through its terminating semicolon, and return it unexecuted. */
+    Query query() {
+        Query query = queryBody();
+        _input.next(";");
+        return query;
+    }
+
+    /** Parse a select clause (after the 'select') from the token stream,
+     *  up to the token that terminates it, and return it unexecuted. */
+    private Query queryBody() {
         ArrayList<Column> selectedCol = new ArrayList<>();
         List<TableIterator> tables = new ArrayList<>();
-        List<Condition> conditions = new ArrayList<>();
-        Table result;
-        Table t1;
-        Table t2;
 
-        String colname = colname();
-        if (_input.nextIf(".")) {
-            colname = _input.next();
+        selectedCol.add(selectItem());
+        while (_input.nextIf(",")) {
+            selectedCol.add(selectItem());
         }
-        colTitles.add(colname);
-        selectedCol.add(new Column(null, colname));
 
+        _input.next("from");
+        tables.add(tableName().tableIterator());
         while (_input.nextIf(",")) {
-            String col = colname();
-            if (_input.nextIf(".")) {
-                col = _input.next();
+            tables.add(tableName().tableIterator());
+        }
+        Query query = new Query(selectedCol, tables);
+        if (_input.nextIf("where")) {
+            query.where(conditionClause(tables));
+        }
+        if (_input.nextIf("group")) {
+            _input.next("by");
+            query.groupBy(groupByClause(tables));
+        }
+        if (_input.nextIf("order")) {
+            _input.next("by");
+            orderByClause(query);
+        }
+        if (_input.nextIf("limit")) {
+            long count = number();
+            long offset = 0;
+            if (_input.nextIf("offset")) {
+                offset = number();
             }
-            colTitles.add(col);
-            selectedCol.add(new Column(null, col));
+            query.limit(count, offset);
         }
 
-        result = new Table(tableName, colTitles);
+        for (Column n:selectedCol) {
+            n.resolve(tables);
+        }
+        return query;
+    }
 
-        _input.next("from");
+    /** Execute QUERY, sending its result rows to SINK.  If PROFILER is
+     *  non-null, record the operators executing QUERY in it, and execute
+     *  them only if it is analyzing. */
+    private void execute(Query query, RowSink sink, Profiler profiler) {
+        long memory = _settings.getLong(Settings.WORK_MEMORY);
+        if (query.limited() && query.ordered()
+            && query.offset() <= TopKSorter.MAX_ROWS
+            && query.limit() <= TopKSorter.MAX_ROWS - query.offset()) {
+            sink = operator(profiler,
+                            new TopKSorter(query.order(), query.offset(),
+                                           query.limit(), sink),
+                            "top-k sort by %s limit %d offset %d",
+                            query.orderTitles(), query.limit(),
+                            query.offset());
+        } else {
+            if (query.limited()) {
+                sink = operator(profiler,
+                                new Limiter(query.offset(), query.limit(),
+                                            query.ordered(), sink),
+                                "limit %d offset %d%s", query.limit(),
+                                query.offset(),
+                                query.ordered() ? ", distinct" : "");
+            }
+            if (query.ordered()) {
+                sink = operator(profiler,
+                                new ExternalSorter(query.order(), sink,
+                                                   memory),
+                                "sort distinct by %s", query.orderTitles());
+            }
+        }
+        if (query.aggregated()) {
+            HashAggregator aggregator =
+                new HashAggregator(query.columns(), query.groupBy(), sink,
+                                   memory);
+            sink = operator(profiler, aggregator, "hash aggregate %s%s",
+                            join(query.columns()),
+                            query.groupBy().isEmpty() ? ""
+                            : " group by " + join(query.groupBy()));
+            select(sink, aggregator.inputColumns(), query.iterators(),
+                   query.conditions(), false, profiler);
+        } else {
+            select(sink, query.columns(), query.iterators(),
+                   query.conditions(), !query.limited(), profiler);
+        }
+    }
+
+    /** Return SINK, after recording it in PROFILER, if that is non-null,
+     *  as the operator described by FORMAT and ARGS (as for
+     *  String.format).  The result should be used in place of SINK. */
+    private static RowSink operator(Profiler profiler, RowSink sink,
+                                    String format, Object... args) {
+        if (profiler == null) {
+            return sink;
+        }
+        return profiler.add(String.format(format, args), sink);
+    }
 
-        t1 = tableName();
-        tables.add(t1.tableIterator());
+    /** Return the descriptions of COLUMNS, separated by commas. */
+    private static String join(List<Column> columns) {
+        ArrayList<String> result = new ArrayList<>();
+        for (Column col : columns) {
+            result.add(col.toString());
+        }
+        return String.join(", ", result);
+    }
 
-        while (!_input.peek().equals(";")) {
-            if (_input.nextIf(",")) {
-                t2 = tableName();
-                tables.add(t2.tableIterator());
+    /** Parse and return one item of a select clause, which is either a
+     *  column designator or an aggregate function applied to one (or to
+     *  '*', for count), optionally followed by 'as' and a title for the
+     *  aggregate.  The result is unresolved. */
+    Column selectItem() {
+        String name = colname();
+        if (Aggregate.isFunction(name) && _input.nextIf("(")) {
+            Column argument;
+            if (_input.nextIf("*")) {
+                argument = null;
+            } else {
+                argument = columnSelector(colname());
             }
-            if (_input.nextIf("where")) {
-                conditions = conditionClause(tables);
+            _input.next(")");
+            String title = null;
+            if (_input.nextIf("as")) {
+                title = name();
             }
+            return new Aggregate(name, argument, title);
         }
-
-        _input.next(";");
-        for (Column n:selectedCol) {
-            n.resolve(tables);
+        if (_input.nextIf(".")) {
+            name = _input.next();
         }
+        return new Column(null, name);
+    }
 
-        select(result, selectedCol, tables, conditions);
+    /** Parse the list of result columns following 'order by' in a select
+     *  clause, each optionally followed by 'asc' or 'desc', and add them
+     *  to the ordering of QUERY. */
+    void orderByClause(Query query) {
+        do {
+            String title = colname();
+            if (_input.nextIf(".")) {
+                title = colname();
+            }
+            boolean descending = _input.nextIf("desc");
+            if (!descending) {
+                _input.nextIf("asc");
+            }
+            query.orderBy(title, descending);
+        } while (_input.nextIf(","));
+    }
 
-        return result;
+    /** Parse and return the list of grouping columns following 'group by'
+     *  in a select clause, resolved against ITERATORS. */
+    List<Column> groupByClause(List<TableIterator> iterators) {
+        List<Column> columns = new ArrayList<>();
+        columns.add(columnSelector(colname(), iterators));
+        while (_input.nextIf(",")) {
+            columns.add(columnSelector(colname(), iterators));
+        }
+        return columns;
     }
 
     /** @return same as name(), just to identify my purpose. */
@@ -373,25 +764,76 @@ class CommandInterpreter {
         return lit.substring(1, lit.length() - 1).trim();
     }
 
+    /** Parse a numeral and return its value. */
+    long number() {
+        String numeral = _input.next(Tokenizer.NUMBER);
+        try {
+            return Long.parseLong(numeral);
+        } catch (NumberFormatException e) {
+            throw error("number too large: %s", numeral);
+        }
+    }
+
     /** Parse and return a list of Conditions that apply to TABLES from the
      *  token stream.  This denotes the conjunction (`and') of zero
-     *  or more Conditions.  Resolves all Columns within the clause
-     *  against ITERATORS. */
+     *  or more Conditions, or, if the clause is a disjunction ('or') of
+     *  such conjunctions, a single Condition testing it.  Resolves all
+     *  Columns within the clause against ITERATORS. */
     List<Condition> conditionClause(List<TableIterator> iterators) {
-        List<Condition> conlist = new ArrayList<>();
-        conlist.add(condition(iterators));
-        while (_input.nextIf("and")) {
-            conlist.add(condition(iterators));
+        List<Condition> conlist = conjunction(iterators);
+        if (!_input.nextIs("or")) {
+            return conlist;
+        }
+        List<List<Condition>> alternatives = new ArrayList<>();
+        alternatives.add(conlist);
+        while (_input.nextIf("or")) {
+            alternatives.add(conjunction(iterators));
         }
+        conlist = new ArrayList<>();
+        conlist.add(Condition.or(alternatives));
+        return conlist;
+    }
 
+    /** Parse and return the list of Conditions of a conjunction (`and')
+     *  of conditions from the token stream, each either a condition or a
+     *  parenthesized condition clause.  Resolves all Columns against
+     *  ITERATORS. */
+    private List<Condition> conjunction(List<TableIterator> iterators) {
+        List<Condition> conlist = new ArrayList<>();
+        do {
+            if (_input.nextIf("(")) {
+                conlist.addAll(conditionClause(iterators));
+                _input.next(")");
+            } else {
+                conlist.add(condition(iterators));
+            }
+        } while (_input.nextIf("and"));
         return conlist;
     }
 
     /** Parse and return a Condition that applies to ITERATORS from the
-     *  token stream. */
+     *  token stream: a comparison, or an in or not in followed by a
+     *  parenthesized list of literals or subquery. */
     Condition condition(List<TableIterator> iterators) {
         String name = colname();
         Column c1 = columnSelector(name, iterators);
+        boolean negated = _input.nextIf("not");
+        if (negated) {
+            _input.next("in");
+        }
+        if (negated || _input.nextIf("in")) {
+            _input.next("(");
+            if (_input.nextIf("select")) {
+                return subquery(c1, negated);
+            }
+            ArrayList<String> values = new ArrayList<>();
+            values.add(literal());
+            while (_input.nextIf(",")) {
+                values.add(literal());
+            }
+            _input.next(")");
+            return new Condition(c1, values, negated, null);
+        }
         String relation = _input.next(Tokenizer.RELATION);
 
         if (_input.nextIs(Tokenizer.LITERAL)) {
@@ -404,41 +846,80 @@ class CommandInterpreter {
         }
     }
 
-    /** Fill TABLE with the result of selecting COLUMNS from the rows returned
-     *  by ITERATORS that satisfy CONDITIONS.  ITERATORS must have size 1 or 2.
+    /** Parse the rest of a subquery (after its 'select') from the token
+     *  stream, through its closing parenthesis, execute it, and return
+     *  a Condition true iff COL's value is among the values of the one
+     *  column the subquery selects, or if NEGATED, is not among them.
+     *  Only those values are kept, in a hash set, so that the Condition
+     *  performs a hash semi-join (or anti-join) without materializing
+     *  the subquery's rows.  The subquery is executed as it is parsed,
+     *  since its values are needed to plan the statement containing
+     *  it. */
+    private Condition subquery(Column col, boolean negated) {
+        Query query = queryBody();
+        _input.next(")");
+        if (query.columns().size() != 1) {
+            throw error("subquery must select one column");
+        }
+        HashSet<String> values = new HashSet<>();
+        execute(query, new RowSink() {
+            @Override
+            public boolean accept(Row row) {
+                values.add(row.get(0));
+                return true;
+            }
+
+            @Override
+            public void finish() {
+            }
+        }, null);
+        return new Condition(col, values, negated, query.toString());
+    }
+
+    /** Send to SINK the result of selecting COLUMNS from the rows returned
+     *  by ITERATORS that satisfy CONDITIONS, stopping early if SINK wants
+     *  no more rows.  ITERATORS must have size 1 or 2.
      *  All selected Columns and all Columns mentioned in CONDITIONS must be
      *  resolved to iterators listed among ITERATORS.  The number of
-     *  COLUMNS must equal TABLE.columns(). */
-    private void select(Table table, ArrayList<Column> columns,
+     *  COLUMNS must equal the number of values SINK expects per row.  If
+     *  DISTINCT, SINK ignores the order of the rows and removes
+     *  duplicates, so that a scan or hash join of large enough tables
+     *  may be executed in parallel.  If PROFILER is non-null, the plan
+     *  is executed through it, and only if it is analyzing. */
+    private void select(RowSink sink, List<Column> columns,
                         List<TableIterator> iterators,
-                        List<Condition> conditions) {
-        TableIterator t1 = iterators.get(0);
-        TableIterator t2;
-
-        if (iterators.size() > 2) {
-            throw new DBException("You can't have more than two tables!");
-        }
-        if (iterators.size() == 2) {
-            t2 = iterators.get(1);
-            while (t1.hasRow()) {
-                while (t2.hasRow()) {
-                    if (Condition.test(conditions)) {
-                        table.add(Row.make(columns));
-                    }
-                    t2.next();
-                }
-                t2.reset();
-                t1.next();
+                        List<Condition> conditions, boolean distinct,
+                        Profiler profiler) {
+        Plan plan = Planner.plan(iterators, conditions);
+        int workers = (int) _settings.getLong(Settings.PARALLELISM);
+        long rows = 0;
+        for (TableIterator it : iterators) {
+            rows += it.table().size();
+        }
+        if (distinct && workers > 1
+            && rows >= _settings.getLong(Settings.PARALLEL_THRESHOLD)) {
+            plan.parallelize(workers);
+        }
+        _plan = plan;
+        diagnose("plan: " + plan);
+        if (profiler == null) {
+            plan.execute(columns, sink);
+            if (_settings.isOn(Settings.INDEX_ADVISOR)) {
+                plan.advise(_advisor);
+                _advisor.selected();
             }
-            t1.reset();
         } else {
-            while (t1.hasRow()) {
-                if (Condition.test(conditions)) {
-                    table.add(Row.make(columns));
-                }
-                t1.next();
-            }
-            t1.reset();
+            profiler.execute(plan, columns);
+        }
+        for (String note : plan.diagnostics()) {
+            diagnose(note);
+        }
+    }
+
+    /** Report MESSAGE on the standard error if diagnostics are on. */
+    private void diagnose(String message) {
+        if (_settings.isOn(Settings.DIAGNOSTICS)) {
+            System.err.println("Note: " + message);
         }
     }
 
@@ -456,8 +937,66 @@ class CommandInterpreter {
         }
     }
 
+    /** A RowSink that records the position of the current row of a
+     *  TableIterator each time it receives a row. */
+    private static class PositionSink implements RowSink {
+        /** A PositionSink recording the positions of ITERATOR. */
+        PositionSink(TableIterator iterator) {
+            _iterator = iterator;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            record();
+            return true;
+        }
+
+        @Override
+        public boolean accept(List<Column> columns) {
+            record();
+            return true;
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        /** Return the positions recorded, in the order received. */
+        int[] positions() {
+            return Arrays.copyOf(_positions, _count);
+        }
+
+        /** Record the position of my iterator, growing _positions as
+         *  needed. */
+        private void record() {
+            if (_count == _positions.length) {
+                _positions = Arrays.copyOf(_positions, 2 * _count);
+            }
+            _positions[_count] = _iterator.position();
+            _count += 1;
+        }
+
+        /** Iterator whose positions I record. */
+        private final TableIterator _iterator;
+        /** The positions recorded, in _positions[0 .. _count-1]. */
+        private int[] _positions = new int[16];
+        /** Number of positions recorded. */
+        private int _count;
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+
     /** The command input source. */
     private Tokenizer _input;
+    /** Output for prompts, unless in batch mode, or null. */
+    private PrintStream _prompter;
     /** Database containing all tables. */
     private Map<String, Table> _database;
+    /** The adjustable parameters of this session. */
+    private Settings _settings;
+    /** The plan executed by the current statement, or null if none. */
+    private Plan _plan;
+    /** Creates and drops indexes according to the selects executed. */
+    private IndexAdvisor _advisor;
 }
@@ -1,6 +1,10 @@
 
 package db61b;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 
 /** Represents a single 'where' condition in a 'select' command.
@@ -13,19 +17,32 @@ class Condition {
      *  or less than it (LT). */
     private static final int GT = 1, EQ = 2, LT = 4;
 
+    /** The relation testing that the left value matches the pattern on
+     *  the right (see like). */
+    static final String LIKE = "like";
+    /** The relation testing that the left value is one of a list of
+     *  literals. */
+    static final String IN = "in";
+    /** The relation testing that the left value is not one of a list of
+     *  literals. */
+    static final String NOT_IN = "not in";
+    /** The relation of a disjunction of conjunctions of conditions. */
+    static final String OR = "or";
+
     /** A Condition representing COL1 RELATION COL2, where COL1 and COL2
      *  are column designators. and RELATION is one of the
-     *  strings "<", ">", "<=", ">=", "=", or "!=". */
+     *  strings "<", ">", "<=", ">=", "=", "!=", or "like". */
     Condition(Column col1, String relation, Column col2) {
         _col1 = col1;
         _col2 = col2;
         _relation = relation;
+        _like = relation.equals(LIKE);
     }
 
     /** A Condition representing COL1 RELATION 'VAL2', where COL1 is
      *  a column designator, VAL2 is a literal value (without the
      *  quotes), and RELATION is one of the strings "<", ">", "<=",
-     *  ">=", "=", or "!=".
+     *  ">=", "=", "!=", or "like".
      */
     Condition(Column col1, String relation, String val2) {
 
@@ -33,13 +50,113 @@ class Condition {
 
     }
 
+    /** A Condition representing COL1 in (VALUES), true iff the value of
+     *  COL1 is among VALUES, which are kept in a hash set, so that the
+     *  test costs one lookup however many values there are. */
+    Condition(Column col1, List<String> values) {
+        this(col1, values, false, null);
+    }
+
+    /** A Condition representing COL1 in (VALUES), or if NEGATED, COL1
+     *  not in (VALUES), where VALUES are the values selected by the
+     *  subquery described by SOURCE, or are literals if SOURCE is null.
+     *  Testing a row against a subquery's values this way is a hash
+     *  semi-join (or anti-join) of the row's table with the subquery's
+     *  result, which keeps only the values, not the rows. */
+    Condition(Column col1, Collection<String> values, boolean negated,
+              String source) {
+        _col1 = col1;
+        _relation = negated ? NOT_IN : IN;
+        _negated = negated;
+        _source = source;
+        _set = new HashSet<>(values);
+        _values = _set.toArray(new String[_set.size()]);
+        Arrays.sort(_values);
+    }
+
+    /** A Condition true iff all the Conditions of one of ALTERNATIVES
+     *  are, with the column on the left of the first as its own. */
+    private Condition(List<List<Condition>> alternatives) {
+        _col1 = alternatives.get(0).get(0).left();
+        _relation = OR;
+        _alternatives = alternatives;
+    }
+
+    /** Return a Condition true iff all the Conditions of one of
+     *  ALTERNATIVES are.  If each alternative is a single equality of the
+     *  same column with a literal, or an in of that column, the result is
+     *  an in of the column with all their values. */
+    static Condition or(List<List<Condition>> alternatives) {
+        Column col = alternatives.get(0).get(0).left();
+        ArrayList<String> values = new ArrayList<>();
+        for (List<Condition> alternative : alternatives) {
+            Condition cond = alternative.get(0);
+            if (alternative.size() != 1
+                || cond.left().source() != col.source()
+                || !cond.left().name().equals(col.name())) {
+                return new Condition(alternatives);
+            } else if (cond._relation.equals("=")
+                       && cond._col2 instanceof Literal) {
+                values.add(cond._col2.value());
+            } else if (cond._relation.equals(IN)) {
+                values.addAll(cond._set);
+            } else {
+                return new Condition(alternatives);
+            }
+        }
+        return new Condition(col, values);
+    }
+
+    /** Return my alternatives, each a list of Conditions of which I
+     *  require all to hold: for an in, an equality with each value, and
+     *  for an or, its own.  Return null for other relations. */
+    List<List<Condition>> alternatives() {
+        if (_relation.equals(OR)) {
+            return _alternatives;
+        } else if (_relation.equals(IN)) {
+            List<List<Condition>> result = new ArrayList<>();
+            for (String value : _values) {
+                result.add(List.of(new Condition(_col1, "=", value)));
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /** Return the values of an in or not in, in increasing order. */
+    String[] values() {
+        return _values;
+    }
+
+    /** Return true iff some value of an in is at least MIN and at most
+     *  MAX. */
+    boolean anyBetween(String min, String max) {
+        int k = Arrays.binarySearch(_values, min);
+        if (k < 0) {
+            k = -k - 1;
+        }
+        return k < _values.length && _values[k].compareTo(max) <= 0;
+    }
+
     /** Assuming that ROWS are rows from the respective tables from which
      *  my columns are selected, returns the result of performing the test I
      *  denote. */
     boolean test() {
+        if (_set != null) {
+            return _set.contains(_col1.value()) != _negated;
+        } else if (_alternatives != null) {
+            for (List<Condition> alternative : _alternatives) {
+                if (test(alternative)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (_like) {
+            return like(_col1.value(), _col2.value());
+        }
         int value;
         if (_col2 != null) {
-            value = _col1.value().compareTo(_col2.value());
+            value = _col1.compareTo(_col2);
             return testcase(value);
         } else {
             value = _col1.value().compareTo(_val2);
@@ -48,6 +165,117 @@ class Condition {
         }
     }
 
+    /** Assuming that my columns are all from the table of which ROW is a
+     *  row, or are literals, return the result of performing the test I
+     *  denote on ROW. */
+    boolean test(Row row) {
+        if (_set != null) {
+            return _set.contains(_col1.value(row)) != _negated;
+        } else if (_alternatives != null) {
+            for (List<Condition> alternative : _alternatives) {
+                if (test(alternative, row)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (_like) {
+            return like(_col1.value(row), _col2.value(row));
+        }
+        return testcase(_col1.value(row).compareTo(_col2.value(row)));
+    }
+
+    /** Assuming that ROW1 is a row of the table of ITERATOR1 and ROW2 is
+     *  a row of the other table from which my columns are selected,
+     *  return the result of performing the test I denote on the pair. */
+    boolean test(TableIterator iterator1, Row row1, Row row2) {
+        if (_set != null) {
+            return _set.contains(_col1.value(iterator1, row1, row2))
+                != _negated;
+        } else if (_alternatives != null) {
+            for (List<Condition> alternative : _alternatives) {
+                if (test(alternative, iterator1, row1, row2)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (_like) {
+            return like(_col1.value(iterator1, row1, row2),
+                        _col2.value(iterator1, row1, row2));
+        }
+        return testcase(_col1.value(iterator1, row1, row2)
+                        .compareTo(_col2.value(iterator1, row1, row2)));
+    }
+
+    /** Return the column on my left. */
+    Column left() {
+        return _col1;
+    }
+
+    /** Return the column (possibly a Literal) on my right, or null for
+     *  an in, a not in, or an or. */
+    Column right() {
+        return _col2;
+    }
+
+    /** Return my relation. */
+    String relation() {
+        return _relation;
+    }
+
+    /** Return true iff all my columns take their values from ITERATOR
+     *  (or from no table at all). */
+    boolean isLocalTo(TableIterator iterator) {
+        if (_alternatives != null) {
+            for (List<Condition> alternative : _alternatives) {
+                for (Condition cond : alternative) {
+                    if (!cond.isLocalTo(iterator)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else if (_set != null) {
+            return _col1.source() == null || _col1.source() == iterator;
+        }
+        return (_col1.source() == null || _col1.source() == iterator)
+            && (_col2.source() == null || _col2.source() == iterator);
+    }
+
+    /** Return true iff I test that columns of two different tables are
+     *  equal. */
+    boolean isEquiJoin() {
+        return _relation.equals("=") && _col1.source() != null
+            && _col2.source() != null && _col1.source() != _col2.source();
+    }
+
+    @Override
+    public String toString() {
+        if (_set != null && _source != null) {
+            return String.format("%s %s (%s) [%s on %d keys]", _col1,
+                                 _relation, _source,
+                                 _negated ? "anti-join" : "semi-join",
+                                 _values.length);
+        } else if (_set != null) {
+            ArrayList<String> values = new ArrayList<>();
+            for (String value : _values) {
+                values.add("'" + value + "'");
+            }
+            return _col1 + " " + _relation + " ("
+                + String.join(", ", values) + ")";
+        } else if (_alternatives != null) {
+            ArrayList<String> alternatives = new ArrayList<>();
+            for (List<Condition> alternative : _alternatives) {
+                ArrayList<String> conds = new ArrayList<>();
+                for (Condition cond : alternative) {
+                    conds.add(cond.toString());
+                }
+                alternatives.add(String.join(" and ", conds));
+            }
+            return "(" + String.join(" or ", alternatives) + ")";
+        }
+        return _col1 + " " + _relation + " " + _col2;
+    }
+
     /**  @return boolean of different cases for testing.
      *   @param value is the result of comparing. */
     private boolean testcase(int value) {
@@ -70,6 +298,88 @@ class Condition {
     }
 
 
+    /** Return true iff VALUE matches PATTERN, in which '%' matches any
+     *  sequence of characters, '_' any single character, and any other
+     *  character itself.  After a mismatch, the match resumes after the
+     *  last '%', which it extends by one character, so that the time
+     *  taken is linear in the common cases. */
+    static boolean like(String value, String pattern) {
+        int v, p, star, mark;
+        v = p = mark = 0;
+        star = -1;
+        while (v < value.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '%') {
+                star = p;
+                mark = v;
+                p += 1;
+            } else if (p < pattern.length()
+                       && (pattern.charAt(p) == '_'
+                           || pattern.charAt(p) == value.charAt(v))) {
+                v += 1;
+                p += 1;
+            } else if (star >= 0) {
+                p = star + 1;
+                mark += 1;
+                v = mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '%') {
+            p += 1;
+        }
+        return p == pattern.length();
+    }
+
+    /** Return the characters of PATTERN, as for like, before its first
+     *  '%' or '_': a prefix of every value that matches it. */
+    static String prefix(String pattern) {
+        int k;
+        for (k = 0; k < pattern.length(); k += 1) {
+            char ch = pattern.charAt(k);
+            if (ch == '%' || ch == '_') {
+                break;
+            }
+        }
+        return pattern.substring(0, k);
+    }
+
+    /** Return the least string greater than every string that begins
+     *  with PREFIX, or null if there is none, so that those strings are
+     *  the ones at least PREFIX and less than the result. */
+    static String prefixEnd(String prefix) {
+        for (int k = prefix.length() - 1; k >= 0; k -= 1) {
+            if (prefix.charAt(k) != Character.MAX_VALUE) {
+                return prefix.substring(0, k) + (char) (prefix.charAt(k) + 1);
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff ROW satisfies all CONDITIONS, which must each
+     *  refer only to the table of which ROW is a row. */
+    static boolean test(List<Condition> conditions, Row row) {
+        for (Condition cond : conditions) {
+            if (!cond.test(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff the pair of ROW1, a row of the table of
+     *  ITERATOR1, and ROW2 satisfies all CONDITIONS (see test(ITERATOR1,
+     *  ROW1, ROW2)). */
+    static boolean test(List<Condition> conditions, TableIterator iterator1,
+                        Row row1, Row row2) {
+        for (Condition cond : conditions) {
+            if (!cond.test(iterator1, row1, row2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /** Return true iff all CONDITIONS are satisfied. */
     static boolean test(List<Condition> conditions) {
 
@@ -88,6 +398,25 @@ class Condition {
     /** relation. */
     private String _relation;
 
+    /** True iff _relation is LIKE. */
+    private boolean _like;
+
+    /** The values of an in or not in, or null. */
+    private HashSet<String> _set;
+
+    /** The values of an in or not in, in increasing order, or null. */
+    private String[] _values;
+
+    /** True iff _relation is NOT_IN. */
+    private boolean _negated;
+
+    /** The subquery whose values are those of an in or not in, or null
+     *  if they are literals. */
+    private String _source;
+
+    /** The alternatives of an or, or null. */
+    private List<List<Condition>> _alternatives;
+
     /** comparison result. */
     private String _val2;
 
@@ -0,0 +1,384 @@
+package db61b;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A RowStore that packs the values of its rows into a few large
+ *  buffers of CHUNK_SIZE bytes, rather than keeping a String for each.
+ *  Each row is encoded as its length in bytes followed by its values,
+ *  and each value as a header, (N << 1) | WIDE, followed by N bytes: its
+ *  characters as single (Latin-1) bytes if all are below 256 (WIDE = 0),
+ *  and otherwise as pairs of bytes, high byte first (WIDE = 1).  Lengths
+ *  and headers are variable-length integers of 7 bits per byte.  Since
+ *  equal Strings have equal encodings, duplicates are found by comparing
+ *  bytes, with an open-addressing hash table of row numbers, and values
+ *  are compared character by character in place, so that Strings are
+ *  built only when a value is printed or stored elsewhere.  Besides the
+ *  buffers, which subclasses allocate, a store holds only that table and
+ *  the position of each row, about 16 bytes per row.
+ *  @author Jiaxin Huang
+ */
+abstract class EncodedRowStore implements RowStore {
+
+    /** A new, empty store for rows of COLUMNS values. */
+    EncodedRowStore(int columns) {
+        _columns = columns;
+    }
+
+    /** Return a new buffer of SIZE bytes for rows. */
+    abstract ByteBuffer allocate(int size);
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean add(Row row) {
+        return add(row, null);
+    }
+
+    @Override
+    public boolean add(String[] values) {
+        return add(null, values);
+    }
+
+    /** Add ROW, or if it is null, a row of VALUES, as my last row, unless
+     *  I already contain an equal row.  Return true iff it was added. */
+    private boolean add(Row row, String[] values) {
+        int length = encode(row, values);
+        int slot = slot(length);
+        if (_slots[slot] != 0) {
+            return false;
+        }
+        append(length);
+        _slots[slot] = _size;
+        if (2 * _size > _slots.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    @Override
+    public int find(Row row) {
+        return _slots[slot(encode(row, null))] - 1;
+    }
+
+    /** Return the slot of _slots holding the number of my row encoded
+     *  as the first LENGTH bytes of _scratch, or if there is none, the
+     *  empty slot where it belongs. */
+    private int slot(int length) {
+        int mask = _slots.length - 1;
+        int slot = hash(_scratch, length) & mask;
+        while (_slots[slot] != 0
+               && !matches(_slots[slot] - 1, _scratch, length)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    public Row get(int k) {
+        ByteBuffer chunk = chunk(k);
+        int pos = start(k);
+        String[] values = new String[_columns];
+        for (int c = 0; c < _columns; c += 1) {
+            int header = varint(chunk, pos);
+            pos += varintSize(header);
+            values[c] = decode(chunk, pos, header);
+            pos += header >>> 1;
+        }
+        return new Row(values);
+    }
+
+    @Override
+    public String value(int k, int column) {
+        ByteBuffer chunk = chunk(k);
+        int pos = field(chunk, k, column);
+        int header = varint(chunk, pos);
+        return decode(chunk, pos + varintSize(header), header);
+    }
+
+    @Override
+    public int compare(int k, int column, String value) {
+        ByteBuffer chunk = chunk(k);
+        int pos = field(chunk, k, column);
+        int header = varint(chunk, pos);
+        pos += varintSize(header);
+        int length = length(header);
+        int n = Math.min(length, value.length());
+        for (int i = 0; i < n; i += 1) {
+            int diff = charAt(chunk, pos, header, i) - value.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - value.length();
+    }
+
+    @Override
+    public int compare(int k, int column, RowStore other, int k2,
+                       int column2) {
+        if (!(other instanceof EncodedRowStore)) {
+            return compare(k, column, other.value(k2, column2));
+        }
+        EncodedRowStore store2 = (EncodedRowStore) other;
+        ByteBuffer chunk1 = chunk(k), chunk2 = store2.chunk(k2);
+        int pos1 = field(chunk1, k, column),
+            pos2 = store2.field(chunk2, k2, column2);
+        int header1 = varint(chunk1, pos1), header2 = varint(chunk2, pos2);
+        pos1 += varintSize(header1);
+        pos2 += varintSize(header2);
+        int length1 = length(header1), length2 = length(header2);
+        int n = Math.min(length1, length2);
+        for (int i = 0; i < n; i += 1) {
+            int diff = charAt(chunk1, pos1, header1, i)
+                - charAt(chunk2, pos2, header2, i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length1 - length2;
+    }
+
+    /** Encode ROW, or if it is null, VALUES, without its length, into
+     *  _scratch, and return the number of bytes used. */
+    private int encode(Row row, String[] values) {
+        int length = 0;
+        for (int c = 0; c < _columns; c += 1) {
+            String value = row != null ? row.get(c) : values[c];
+            boolean wide = false;
+            for (int i = 0; i < value.length() && !wide; i += 1) {
+                wide = value.charAt(i) > MAX_NARROW;
+            }
+            int bytes = wide ? 2 * value.length() : value.length();
+            ensureScratch(length + MAX_VARINT_SIZE + bytes);
+            length = putVarint(_scratch, length,
+                               bytes << 1 | (wide ? 1 : 0));
+            for (int i = 0; i < value.length(); i += 1) {
+                char ch = value.charAt(i);
+                if (wide) {
+                    _scratch[length] = (byte) (ch >>> Byte.SIZE);
+                    length += 1;
+                }
+                _scratch[length] = (byte) ch;
+                length += 1;
+            }
+        }
+        return length;
+    }
+
+    /** Append the LENGTH bytes in _scratch, preceded by LENGTH, as a new
+     *  row. */
+    private void append(int length) {
+        int total = varintSize(length) + length;
+        if (_current == null || _current.remaining() < total) {
+            _current = allocate(Math.max(CHUNK_SIZE, total));
+            _chunks.add(_current);
+        }
+        if (_size == _offsets.length) {
+            _offsets = Arrays.copyOf(_offsets, 2 * _offsets.length);
+        }
+        _offsets[_size] =
+            (long) (_chunks.size() - 1) << Integer.SIZE | _current.position();
+        for (int n = length; ; n >>>= VARINT_BITS) {
+            if (n < VARINT_CONTINUE) {
+                _current.put((byte) n);
+                break;
+            }
+            _current.put((byte) (n | VARINT_CONTINUE));
+        }
+        _current.put(_scratch, 0, length);
+        _size += 1;
+    }
+
+    /** Return true iff the encoding of row number K is the LENGTH bytes
+     *  of BYTES. */
+    private boolean matches(int k, byte[] bytes, int length) {
+        ByteBuffer chunk = chunk(k);
+        int pos = (int) _offsets[k];
+        if (varint(chunk, pos) != length) {
+            return false;
+        }
+        pos += varintSize(length);
+        for (int i = 0; i < length; i += 1) {
+            if (chunk.get(pos + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Double the size of _slots and re-enter my rows. */
+    private void rehash() {
+        _slots = new int[2 * _slots.length];
+        int mask = _slots.length - 1;
+        byte[] bytes = new byte[0];
+        for (int k = 0; k < _size; k += 1) {
+            ByteBuffer chunk = chunk(k);
+            int pos = (int) _offsets[k];
+            int length = varint(chunk, pos);
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            chunk.get(pos + varintSize(length), bytes, 0, length);
+            int slot = hash(bytes, length) & mask;
+            while (_slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            _slots[slot] = k + 1;
+        }
+    }
+
+    /** Return the chunk holding row number K. */
+    private ByteBuffer chunk(int k) {
+        return _chunks.get((int) (_offsets[k] >>> Integer.SIZE));
+    }
+
+    /** Return the position, in its chunk, of the first value of row
+     *  number K. */
+    private int start(int k) {
+        ByteBuffer chunk = chunk(k);
+        int pos = (int) _offsets[k];
+        return pos + varintSize(varint(chunk, pos));
+    }
+
+    /** Return the position of the header of column COLUMN of row number
+     *  K, which is in CHUNK. */
+    private int field(ByteBuffer chunk, int k, int column) {
+        int pos = start(k);
+        for (int c = 0; c < column; c += 1) {
+            int header = varint(chunk, pos);
+            pos += varintSize(header) + (header >>> 1);
+        }
+        return pos;
+    }
+
+    /** Make _scratch at least SIZE bytes long, keeping its contents. */
+    private void ensureScratch(int size) {
+        if (_scratch.length < size) {
+            _scratch = Arrays.copyOf(_scratch,
+                                     Math.max(size, 2 * _scratch.length));
+        }
+    }
+
+    /** Return the number of characters of the value with HEADER. */
+    private static int length(int header) {
+        return (header & 1) == 0 ? header >>> 1 : header >>> 2;
+    }
+
+    /** Return character #I of the value with HEADER whose bytes start at
+     *  POS in CHUNK. */
+    private static char charAt(ByteBuffer chunk, int pos, int header,
+                               int i) {
+        if ((header & 1) == 0) {
+            return (char) (chunk.get(pos + i) & BYTE_MASK);
+        }
+        return chunk.getChar(pos + 2 * i);
+    }
+
+    /** Return the value with HEADER whose bytes start at POS in
+     *  CHUNK. */
+    private static String decode(ByteBuffer chunk, int pos, int header) {
+        int bytes = header >>> 1;
+        if ((header & 1) == 0) {
+            if (chunk.hasArray()) {
+                return new String(chunk.array(), chunk.arrayOffset() + pos,
+                                  bytes, StandardCharsets.ISO_8859_1);
+            }
+            byte[] chars = new byte[bytes];
+            chunk.get(pos, chars);
+            return new String(chars, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[bytes / 2];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = chunk.getChar(pos + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    /** Return a hash of the first LENGTH bytes of BYTES. */
+    private static int hash(byte[] bytes, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i += 1) {
+            hash = 31 * hash + bytes[i];
+        }
+        hash *= HASH_MULTIPLIER;
+        return hash ^ (hash >>> HASH_SHIFT);
+    }
+
+    /** Store VALUE (non-negative) as a variable-length integer in BYTES
+     *  at POS, and return the position after it. */
+    private static int putVarint(byte[] bytes, int pos, int value) {
+        while (value >= VARINT_CONTINUE) {
+            bytes[pos] = (byte) (value | VARINT_CONTINUE);
+            value >>>= VARINT_BITS;
+            pos += 1;
+        }
+        bytes[pos] = (byte) value;
+        return pos + 1;
+    }
+
+    /** Return the variable-length integer at POS in CHUNK. */
+    private static int varint(ByteBuffer chunk, int pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += VARINT_BITS, pos += 1) {
+            int b = chunk.get(pos);
+            value |= (b & (VARINT_CONTINUE - 1)) << shift;
+            if ((b & VARINT_CONTINUE) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /** Return the number of bytes in the variable-length encoding of
+     *  VALUE (non-negative). */
+    private static int varintSize(int value) {
+        int size = 1;
+        while (value >= VARINT_CONTINUE) {
+            value >>>= VARINT_BITS;
+            size += 1;
+        }
+        return size;
+    }
+
+    /** Size of the buffers allocated for rows. */
+    static final int CHUNK_SIZE = 1 << 20;
+    /** Largest character stored as a single byte. */
+    private static final char MAX_NARROW = 0xff;
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+    /** Number of value bits in each byte of a variable-length integer. */
+    private static final int VARINT_BITS = 7;
+    /** Bit marking a byte of a variable-length integer that is followed
+     *  by another. */
+    private static final int VARINT_CONTINUE = 1 << VARINT_BITS;
+    /** Largest number of bytes in a variable-length integer. */
+    private static final int MAX_VARINT_SIZE = 5;
+    /** Multiplier scrambling hashes (the golden ratio times 2**32). */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    /** Shift folding the better high bits of scrambled hashes into the
+     *  low bits used to choose slots. */
+    private static final int HASH_SHIFT = 16;
+    /** Initial sizes of my arrays. */
+    private static final int INITIAL_SIZE = 16;
+
+    /** Number of values in each row. */
+    private final int _columns;
+    /** Buffers holding the encoded rows. */
+    private final ArrayList<ByteBuffer> _chunks = new ArrayList<>();
+    /** The last of _chunks, to which rows are appended, or null. */
+    private ByteBuffer _current;
+    /** For each row, the number of its chunk times 2**32 plus its
+     *  position in that chunk. */
+    private long[] _offsets = new long[INITIAL_SIZE];
+    /** Number of rows. */
+    private int _size;
+    /** Open-addressing hash table of row numbers plus 1 (0 when empty),
+     *  of which at most half are full. */
+    private int[] _slots = new int[INITIAL_SIZE];
+    /** Buffer for encoding rows being added. */
+    private byte[] _scratch = new byte[INITIAL_SIZE];
+}
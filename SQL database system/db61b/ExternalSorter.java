@@ -0,0 +1,179 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** A RowSink that sorts the rows sent to it, and sends them on, without
+ *  duplicates, to another RowSink when it is finished.
+ *
+ *  Rows are collected in memory and sorted there with a parallel sort.
+ *  Whenever their estimated size exceeds the memory budget, they are
+ *  sorted and written to a SpillFile as a sorted run.  When finished,
+ *  the runs (at most MAX_FAN_IN at a time) are combined by a k-way
+ *  merge.  Since only equal rows are equal in a RowOrder, duplicates
+ *  are adjacent and can be dropped during the final pass.
+ *  @author Jiaxin Huang
+ */
+class ExternalSorter implements RowSink {
+
+    /** An ExternalSorter that sorts rows into ORDER and sends them to
+     *  OUTPUT.  Uses about MEMORY bytes before spilling rows. */
+    ExternalSorter(RowOrder order, RowSink output, long memory) {
+        _order = order;
+        _output = output;
+        _memory = memory;
+    }
+
+    @Override
+    public boolean accept(Row row) {
+        _buffer.add(row);
+        _memoryUsed += row.estimatedSize() + ENTRY_OVERHEAD;
+        if (_memoryUsed > _memory) {
+            _runs.add(writeRun(sortedBuffer()));
+        }
+        return true;
+    }
+
+    @Override
+    public void finish() {
+        if (_runs.isEmpty()) {
+            Row[] rows = sortedBuffer();
+            Row last = null;
+            for (Row row : rows) {
+                if (last == null || !row.equals(last)) {
+                    last = row;
+                    if (!_output.accept(row)) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            if (!_buffer.isEmpty()) {
+                _runs.add(writeRun(sortedBuffer()));
+            }
+            while (_runs.size() > MAX_FAN_IN) {
+                List<SpillFile> group = _runs.subList(0, MAX_FAN_IN);
+                SpillFile merged = new SpillFile();
+                merge(group, new RunWriter(merged));
+                group.clear();
+                _runs.add(merged);
+            }
+            merge(_runs, _output);
+            _runs.clear();
+        }
+        _output.finish();
+    }
+
+    /** Return the rows in my buffer, sorted, and empty the buffer. */
+    private Row[] sortedBuffer() {
+        Row[] rows = _buffer.toArray(new Row[_buffer.size()]);
+        _buffer.clear();
+        _memoryUsed = 0;
+        Arrays.parallelSort(rows, _order);
+        return rows;
+    }
+
+    /** Return a new SpillFile containing ROWS. */
+    private SpillFile writeRun(Row[] rows) {
+        SpillFile run = new SpillFile();
+        for (Row row : rows) {
+            run.write(row);
+        }
+        return run;
+    }
+
+    /** Merge the sorted RUNS, sending their rows in order, without
+     *  duplicates, to SINK until it wants no more, and delete RUNS. */
+    private void merge(List<SpillFile> runs, RowSink sink) {
+        Comparator<RunCursor> order = new Comparator<RunCursor>() {
+            @Override
+            public int compare(RunCursor c1, RunCursor c2) {
+                return _order.compare(c1._row, c2._row);
+            }
+        };
+        PriorityQueue<RunCursor> queue =
+            new PriorityQueue<>(Math.max(1, runs.size()), order);
+        for (SpillFile run : runs) {
+            run.rewind();
+            RunCursor cursor = new RunCursor(run);
+            if (cursor._row != null) {
+                queue.add(cursor);
+            }
+        }
+        Row last = null;
+        while (!queue.isEmpty()) {
+            RunCursor cursor = queue.poll();
+            Row row = cursor._row;
+            if (last == null || !row.equals(last)) {
+                last = row;
+                if (!sink.accept(row)) {
+                    break;
+                }
+            }
+            cursor._row = cursor._run.read();
+            if (cursor._row != null) {
+                queue.add(cursor);
+            }
+        }
+        for (SpillFile run : runs) {
+            run.delete();
+        }
+    }
+
+    /** The current position in a sorted run being merged. */
+    private static class RunCursor {
+        /** A cursor at the first row of RUN. */
+        RunCursor(SpillFile run) {
+            _run = run;
+            _row = run.read();
+        }
+
+        /** The run. */
+        private final SpillFile _run;
+        /** The current row of _run, or null if it is exhausted. */
+        private Row _row;
+    }
+
+    /** A RowSink that writes the rows it receives to a SpillFile. */
+    private static class RunWriter implements RowSink {
+        /** A RunWriter writing to RUN. */
+        RunWriter(SpillFile run) {
+            _run = run;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            _run.write(row);
+            return true;
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        /** Destination of my rows. */
+        private final SpillFile _run;
+    }
+
+    /** Largest number of runs merged at once. */
+    private static final int MAX_FAN_IN = 64;
+    /** Estimated bytes of memory used to buffer each row, apart from
+     *  the row itself. */
+    private static final long ENTRY_OVERHEAD = 8;
+
+    /** The order of my rows. */
+    private final RowOrder _order;
+    /** Destination of my sorted rows. */
+    private final RowSink _output;
+    /** Memory budget in bytes. */
+    private final long _memory;
+    /** Estimated bytes used by _buffer. */
+    private long _memoryUsed;
+    /** Rows received and not yet written to a run. */
+    private final ArrayList<Row> _buffer = new ArrayList<>();
+    /** Sorted runs written so far. */
+    private final ArrayList<SpillFile> _runs = new ArrayList<>();
+}
@@ -0,0 +1,217 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** A RowSink that groups the rows sent to it and computes aggregate
+ *  functions over each group, sending one row per group on to another
+ *  RowSink when it is finished.
+ *
+ *  Each input row consists of the values of the group-by columns
+ *  followed by the argument of each Aggregate (see inputColumns).
+ *  Groups are found with a hash table and their aggregates kept in
+ *  Aggregate.Accumulators.  Once the estimated size of the groups
+ *  exceeds the memory budget, rows that would start new groups are
+ *  instead hash-partitioned into SpillFiles, each of which is
+ *  aggregated separately after the groups in memory are sent on.
+ *  @author Jiaxin Huang
+ */
+class HashAggregator implements RowSink {
+
+    /** A HashAggregator computing the select-clause ITEMS (Columns and
+     *  Aggregates) over groups of rows that agree on the values of
+     *  GROUPBY, and sending the results to OUTPUT.  Every Column in ITEMS
+     *  that is not an Aggregate must be named in GROUPBY.  Uses at most
+     *  about MEMORY bytes for groups before spilling to disk. */
+    HashAggregator(List<Column> items, List<Column> groupBy,
+                   RowSink output, long memory) {
+        _groupBy = groupBy;
+        _output = output;
+        _memory = memory;
+        _level = 0;
+
+        ArrayList<Aggregate> aggregates = new ArrayList<>();
+        _items = new int[items.size()];
+        for (int i = 0; i < items.size(); i += 1) {
+            Column item = items.get(i);
+            if (item instanceof Aggregate) {
+                _items[i] = -1 - aggregates.size();
+                aggregates.add((Aggregate) item);
+            } else {
+                _items[i] = groupIndex(item.name());
+            }
+        }
+        _aggregates = aggregates.toArray(new Aggregate[aggregates.size()]);
+        init();
+    }
+
+    /** A HashAggregator that aggregates rows spilled to a partition by
+     *  PARENT, using the same layout, output, and memory budget. */
+    private HashAggregator(HashAggregator parent) {
+        _groupBy = parent._groupBy;
+        _output = parent._output;
+        _memory = parent._memory;
+        _items = parent._items;
+        _aggregates = parent._aggregates;
+        _level = parent._level + 1;
+        init();
+    }
+
+    /** Initialize my (empty) table of groups. */
+    private void init() {
+        _accumulators = new Aggregate.Accumulator[_aggregates.length];
+        for (int a = 0; a < _aggregates.length; a += 1) {
+            _accumulators[a] = _aggregates[a].accumulator();
+        }
+    }
+
+    /** Return the index of the group-by column named NAME. */
+    private int groupIndex(String name) {
+        for (int k = 0; k < _groupBy.size(); k += 1) {
+            if (_groupBy.get(k).name().equals(name)) {
+                return k;
+            }
+        }
+        throw error("%s must appear in the group by clause", name);
+    }
+
+    /** Return the Columns whose current values form each row that I
+     *  expect to be sent: the group-by columns followed by the argument
+     *  of each aggregate. */
+    List<Column> inputColumns() {
+        ArrayList<Column> columns = new ArrayList<>(_groupBy);
+        for (Aggregate agg : _aggregates) {
+            columns.add(agg.argument());
+        }
+        return columns;
+    }
+
+    @Override
+    public boolean accept(Row row) {
+        int keys = _groupBy.size();
+        String[] keyData = new String[keys];
+        for (int k = 0; k < keys; k += 1) {
+            keyData[k] = row.get(k);
+        }
+        Row key = new Row(keyData);
+        Integer group = _groups.get(key);
+        if (group == null) {
+            if (_memoryUsed > _memory && _level < MAX_LEVEL) {
+                spill(key, row);
+                return true;
+            }
+            group = _keys.size();
+            _groups.put(key, group);
+            _keys.add(key);
+            _memoryUsed += key.estimatedSize() + GROUP_OVERHEAD
+                + ACCUMULATOR_SIZE * _aggregates.length;
+        }
+        for (int a = 0; a < _aggregates.length; a += 1) {
+            _accumulators[a].add(group, row.get(keys + a));
+        }
+        return true;
+    }
+
+    @Override
+    public void finish() {
+        flush();
+        _output.finish();
+    }
+
+    /** Send the results for all groups, including spilled ones, to my
+     *  output until it wants no more.  Return false iff it stopped
+     *  early. */
+    private boolean flush() {
+        boolean more = true;
+        if (_keys.isEmpty() && _groupBy.isEmpty() && _level == 0) {
+            _keys.add(new Row(new String[0]));
+        }
+        for (int g = 0; more && g < _keys.size(); g += 1) {
+            Row key = _keys.get(g);
+            String[] result = new String[_items.length];
+            for (int i = 0; i < _items.length; i += 1) {
+                if (_items[i] >= 0) {
+                    result[i] = key.get(_items[i]);
+                } else {
+                    result[i] = _accumulators[-1 - _items[i]].result(g);
+                }
+            }
+            more = _output.accept(new Row(result));
+        }
+        _groups.clear();
+        _keys.clear();
+
+        if (_partitions != null) {
+            for (SpillFile partition : _partitions) {
+                if (more) {
+                    HashAggregator child = new HashAggregator(this);
+                    partition.rewind();
+                    for (Row row = partition.read(); row != null;
+                         row = partition.read()) {
+                        child.accept(row);
+                    }
+                    more = child.flush();
+                }
+                partition.delete();
+            }
+            _partitions = null;
+        }
+        return more;
+    }
+
+    /** Write ROW, whose group-by values are KEY, to the partition chosen
+     *  by KEY's hash code. */
+    private void spill(Row key, Row row) {
+        if (_partitions == null) {
+            _partitions = new SpillFile[PARTITIONS];
+            for (int p = 0; p < PARTITIONS; p += 1) {
+                _partitions[p] = new SpillFile();
+            }
+        }
+        int hash = key.hashCode() * HASH_MULTIPLIER;
+        int p = (hash >>> (PARTITION_BITS * _level)) & (PARTITIONS - 1);
+        _partitions[p].write(row);
+    }
+
+    /** Number of bits of the hash code used to choose a partition. */
+    private static final int PARTITION_BITS = 4;
+    /** Number of partitions into which rows are spilled. */
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+    /** Deepest level of repartitioning, past which groups are kept in
+     *  memory regardless of the budget. */
+    private static final int MAX_LEVEL = 32 / PARTITION_BITS - 1;
+    /** Odd multiplier used to spread the bits of hash codes. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    /** Estimated bytes used by the hash table for each group. */
+    private static final long GROUP_OVERHEAD = 64;
+    /** Estimated bytes used by each Accumulator for each group. */
+    private static final long ACCUMULATOR_SIZE = 24;
+
+    /** The group-by columns. */
+    private final List<Column> _groupBy;
+    /** For each output column, the index of its group-by column, or
+     *  -1-k for the kth Aggregate. */
+    private final int[] _items;
+    /** The aggregates being computed. */
+    private final Aggregate[] _aggregates;
+    /** The state of each of _aggregates, by group number. */
+    private Aggregate.Accumulator[] _accumulators;
+    /** Destination of my results. */
+    private final RowSink _output;
+    /** Memory budget in bytes. */
+    private final long _memory;
+    /** Estimated bytes used by my groups. */
+    private long _memoryUsed;
+    /** Number of times the rows I receive have been partitioned. */
+    private final int _level;
+    /** Maps group-by values to group numbers. */
+    private final HashMap<Row, Integer> _groups = new HashMap<>();
+    /** The group-by values of each group, by group number. */
+    private final ArrayList<Row> _keys = new ArrayList<>();
+    /** Files holding rows of groups that did not fit in memory, or null
+     *  if nothing has been spilled. */
+    private SpillFile[] _partitions;
+}
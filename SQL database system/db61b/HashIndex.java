@@ -0,0 +1,258 @@
+package db61b;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** An index mapping the values of one or more columns of a table (its
+ *  key) to the positions of the rows having them, kept up to date as
+ *  rows are added.  The Planner uses it to replace a scan by a single
+ *  probe when a table is restricted by equalities covering the key, and
+ *  to look up the matching rows of the inner table of a join.  An
+ *  index loaded with its table from an index file keeps the keys it was
+ *  stored with in the file, and only the rows added since in memory.
+ *  @author Jiaxin Huang
+ */
+class HashIndex {
+
+    /** The positions of the rows having one key. */
+    static class Positions {
+
+        /** An empty list of positions. */
+        Positions() {
+            _positions = new int[1];
+        }
+
+        /** The SIZE positions stored as ints at OFFSET in MAPPED, a
+         *  buffer mapped from an index file. */
+        Positions(ByteBuffer mapped, int offset, int size) {
+            _mapped = mapped;
+            _offset = offset;
+            _size = size;
+        }
+
+        /** Return the number of positions. */
+        int size() {
+            return _size;
+        }
+
+        /** Return position number K.  Requires 0 <= K < size(). */
+        int get(int k) {
+            if (_mapped != null) {
+                return _mapped.getInt(_offset + k * Integer.BYTES);
+            }
+            return _positions[k];
+        }
+
+        /** Return my positions followed by those of MORE. */
+        Positions concat(Positions more) {
+            Positions result = new Positions();
+            for (Positions part : new Positions[] { this, more }) {
+                for (int k = 0; k < part.size(); k += 1) {
+                    result.add(part.get(k));
+                }
+            }
+            return result;
+        }
+
+        /** Add POSITION as my last position. */
+        private void add(int position) {
+            if (_size == _positions.length) {
+                _positions = Arrays.copyOf(_positions, 2 * _size);
+            }
+            _positions[_size] = position;
+            _size += 1;
+        }
+
+        /** The positions, in increasing order, followed by unused
+         *  space, unless they are in _mapped. */
+        private int[] _positions;
+        /** The buffer holding the positions, or null. */
+        private ByteBuffer _mapped;
+        /** The offset of the positions in _mapped. */
+        private int _offset;
+        /** Number of positions. */
+        private int _size;
+    }
+
+    /** An index named NAME on the columns of TABLE titled COLUMNS, which
+     *  must be distinct, initially holding none of TABLE's rows (see
+     *  addRows). */
+    HashIndex(String name, Table table, List<String> columns) {
+        this(name, table, columns, false);
+    }
+
+    /** An index named NAME on the columns of TABLE titled COLUMNS, which
+     *  must be distinct, initially holding none of TABLE's rows (see
+     *  addRows).  It is AUTOMATIC if the IndexAdvisor is creating it. */
+    HashIndex(String name, Table table, List<String> columns,
+              boolean automatic) {
+        _name = name;
+        _table = table;
+        _automatic = automatic;
+        _base = null;
+        _columns = new int[columns.size()];
+        for (int k = 0; k < _columns.length; k += 1) {
+            _columns[k] = table.columnIndex(columns.get(k));
+            if (_columns[k] == -1) {
+                throw error("%s is not a column in %s", columns.get(k),
+                            table.name());
+            }
+            for (int j = 0; j < k; j += 1) {
+                if (_columns[j] == _columns[k]) {
+                    throw error("duplicate column in index: %s",
+                                columns.get(k));
+                }
+            }
+        }
+    }
+
+    /** An index named NAME on the columns of TABLE whose indices are
+     *  COLUMNS, whose keys for TABLE's current rows are those of BASE,
+     *  mapped from an index file. */
+    HashIndex(String name, Table table, int[] columns,
+              IndexFile.Section base) {
+        _name = name;
+        _table = table;
+        _columns = columns;
+        _automatic = false;
+        _base = base;
+        _indexed = table.size();
+    }
+
+    /** An index with the name, table, and key of LIKE, initially holding
+     *  no rows, to be filled with the rows of a compacted copy of the
+     *  table (see replace). */
+    HashIndex(HashIndex like) {
+        _name = like._name;
+        _table = like._table;
+        _columns = like._columns;
+        _automatic = like._automatic;
+        _base = null;
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return true iff the IndexAdvisor created me, so that I am not
+     *  stored with my table. */
+    boolean automatic() {
+        return _automatic;
+    }
+
+    /** Return the indices in my table of the columns of my key, in
+     *  order. */
+    int[] columns() {
+        return _columns;
+    }
+
+    /** Return the number of distinct keys I hold. */
+    int keys() {
+        return _base == null ? _map.size() : _base.keys() + _newKeys;
+    }
+
+    /** Return the number of leading rows of my table that I hold. */
+    int indexed() {
+        return _indexed;
+    }
+
+    /** Add the rows of my table at positions indexed() through END - 1.
+     *  The caller must prevent rows from being added to the table
+     *  meanwhile. */
+    void addRows(int end) {
+        RowStore rows = _table.rows();
+        for (int position = _indexed; position < end; position += 1) {
+            add(position, rows.get(position));
+        }
+    }
+
+    /** Forget my keys, including any mapped from an index file, and add
+     *  all the rows of my table again, after it has been reordered.  The
+     *  caller must prevent rows from being added to the table
+     *  meanwhile. */
+    void rebuild() {
+        _map.clear();
+        _base = null;
+        _newKeys = 0;
+        _indexed = 0;
+        addRows(_table.size());
+    }
+
+    /** Forget my keys, including any mapped from an index file, and take
+     *  over those of REPLACEMENT, an index on the same key holding all
+     *  the rows of my table after it has been compacted. */
+    void replace(HashIndex replacement) {
+        _map = replacement._map;
+        _base = null;
+        _newKeys = 0;
+        _indexed = replacement._indexed;
+    }
+
+    /** Record that ROW, a row of my table, is at POSITION, which must be
+     *  indexed(). */
+    void add(int position, Row row) {
+        _indexed = position + 1;
+        String[] key = new String[_columns.length];
+        for (int k = 0; k < key.length; k += 1) {
+            key[k] = row.get(_columns[k]);
+        }
+        Row keyRow = new Row(key);
+        Positions positions = _map.get(keyRow);
+        if (positions == null) {
+            positions = new Positions();
+            _map.put(keyRow, positions);
+            if (_base != null && _base.lookup(keyRow) == null) {
+                _newKeys += 1;
+            }
+        }
+        positions.add(position);
+    }
+
+    /** Return the positions of the rows whose key is KEY, whose values
+     *  are in the order of my columns. */
+    Positions lookup(Row key) {
+        Positions added = _map.get(key);
+        Positions mapped = _base == null ? null : _base.lookup(key);
+        if (mapped == null) {
+            return added == null ? NONE : added;
+        }
+        return added == null ? mapped : mapped.concat(added);
+    }
+
+    @Override
+    public String toString() {
+        String[] titles = new String[_columns.length];
+        for (int k = 0; k < titles.length; k += 1) {
+            titles[k] = _table.title(_columns[k]);
+        }
+        return format("%s on %s (%s)", _name, _table.name(),
+                      String.join(", ", titles));
+    }
+
+    /** The result of looking up a missing key. */
+    private static final Positions NONE = new Positions();
+
+    /** My name. */
+    private final String _name;
+    /** The table indexed. */
+    private final Table _table;
+    /** True iff the IndexAdvisor created me. */
+    private final boolean _automatic;
+    /** Indices of the columns of my key. */
+    private final int[] _columns;
+    /** The positions of the rows with each key, apart from those in
+     *  _base. */
+    private HashMap<Row, Positions> _map = new HashMap<>();
+    /** The keys of the rows my table had when it was loaded, mapped from
+     *  its index file, or null. */
+    private IndexFile.Section _base;
+    /** Number of leading rows of my table that I hold. */
+    private int _indexed;
+    /** The number of keys in _map but not in _base. */
+    private int _newKeys;
+}
@@ -0,0 +1,114 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** A RowStore that keeps its Rows in a list on the Java heap.
+ *  Duplicates are found with an open-addressing hash table of row
+ *  numbers, so that a Row is built only for values that are added.
+ *  @author Jiaxin Huang
+ */
+class HeapRowStore implements RowStore {
+
+    @Override
+    public String kind() {
+        return HEAP;
+    }
+
+    @Override
+    public int size() {
+        return _rows.size();
+    }
+
+    @Override
+    public boolean add(Row row) {
+        return add(row, null);
+    }
+
+    @Override
+    public boolean add(String[] values) {
+        return add(null, values);
+    }
+
+    @Override
+    public int find(Row row) {
+        return _slots[slot(row, null)] - 1;
+    }
+
+    @Override
+    public Row get(int k) {
+        return _rows.get(k);
+    }
+
+    @Override
+    public String value(int k, int column) {
+        return _rows.get(k).get(column);
+    }
+
+    /** Add ROW, or if it is null, a Row of a copy of VALUES, as my last
+     *  row, unless I already contain an equal row.  Return true iff it
+     *  was added. */
+    private boolean add(Row row, String[] values) {
+        int slot = slot(row, values);
+        if (_slots[slot] != 0) {
+            return false;
+        }
+        _rows.add(row != null ? row : new Row(values.clone()));
+        _slots[slot] = _rows.size();
+        if (2 * _rows.size() > _slots.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    /** Return the slot of _slots holding the number of my row equal to
+     *  ROW, or if ROW is null, to VALUES, or if there is none, the empty
+     *  slot where it belongs. */
+    private int slot(Row row, String[] values) {
+        int hash = row != null ? row.hashCode() : Arrays.hashCode(values);
+        int mask = _slots.length - 1;
+        int slot = scramble(hash) & mask;
+        while (_slots[slot] != 0) {
+            Row other = _rows.get(_slots[slot] - 1);
+            if (row != null ? other.equals(row) : other.matches(values)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Double the size of _slots and re-enter my rows. */
+    private void rehash() {
+        _slots = new int[2 * _slots.length];
+        int mask = _slots.length - 1;
+        for (int k = 0; k < _rows.size(); k += 1) {
+            int slot = scramble(_rows.get(k).hashCode()) & mask;
+            while (_slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            _slots[slot] = k + 1;
+        }
+    }
+
+    /** Return HASH with its bits mixed, so that its low bits may choose
+     *  a slot. */
+    private static int scramble(int hash) {
+        hash *= HASH_MULTIPLIER;
+        return hash ^ (hash >>> HASH_SHIFT);
+    }
+
+    /** Multiplier scrambling hashes (the golden ratio times 2**32). */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    /** Shift folding the better high bits of scrambled hashes into the
+     *  low bits used to choose slots. */
+    private static final int HASH_SHIFT = 16;
+    /** Initial size of _slots. */
+    private static final int INITIAL_SIZE = 16;
+
+    /** My rows, in order. */
+    private final ArrayList<Row> _rows = new ArrayList<>();
+    /** Open-addressing hash table of row numbers plus 1 (0 when empty),
+     *  of which at most half are full. */
+    private int[] _slots = new int[INITIAL_SIZE];
+}
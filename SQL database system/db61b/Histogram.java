@@ -0,0 +1,66 @@
+package db61b;
+
+import java.util.Arrays;
+
+/** An equi-depth histogram of the values in one column of a table.
+ *  The sorted values are divided into buckets each holding about the
+ *  same number of values, and only the boundaries between buckets are
+ *  kept.  Histograms estimate the fraction of values that lie below a
+ *  given value.
+ *  @author Jiaxin Huang
+ */
+class Histogram {
+
+    /** A histogram with at most BUCKETS buckets over VALUES, which it may
+     *  reorder. */
+    Histogram(String[] values, int buckets) {
+        Arrays.sort(values);
+        int n = Math.max(1, Math.min(buckets, values.length));
+        _bounds = new String[values.length == 0 ? 0 : n + 1];
+        for (int i = 0; i < _bounds.length; i += 1) {
+            _bounds[i] = values[(int) ((long) i * (values.length - 1) / n)];
+        }
+    }
+
+    /** Return the number of buckets. */
+    int buckets() {
+        return Math.max(0, _bounds.length - 1);
+    }
+
+    /** Return the estimated fraction of values that are less than VALUE,
+     *  or less than or equal to it if INCLUSIVE. */
+    double fractionBelow(String value, boolean inclusive) {
+        int n = buckets();
+        if (n == 0) {
+            return DEFAULT_FRACTION;
+        }
+        int c = value.compareTo(_bounds[0]);
+        if (c < 0 || c == 0 && !inclusive) {
+            return 0.0;
+        }
+        c = value.compareTo(_bounds[n]);
+        if (c > 0 || c == 0 && inclusive) {
+            return 1.0;
+        }
+        int lo = 0, hi = n;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) / 2;
+            c = _bounds[mid].compareTo(value);
+            if (c < 0 || c == 0 && inclusive) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return (lo + HALF) / n;
+    }
+
+    /** Fraction assumed when a histogram is empty. */
+    private static final double DEFAULT_FRACTION = 0.5;
+    /** Fraction of a bucket assumed to lie below a value within it. */
+    private static final double HALF = 0.5;
+
+    /** Boundaries of the buckets: bucket k holds values between _bounds[k]
+     *  and _bounds[k + 1]. */
+    private final String[] _bounds;
+}
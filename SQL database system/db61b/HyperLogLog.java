@@ -0,0 +1,60 @@
+package db61b;
+
+/** A HyperLogLog sketch, which estimates the number of distinct values
+ *  added to it in a small, fixed amount of memory.  Its estimates have
+ *  a relative standard error of about 1.04 / sqrt(REGISTERS).
+ *  @author Jiaxin Huang
+ */
+class HyperLogLog {
+
+    /** An empty sketch. */
+    HyperLogLog() {
+        _registers = new byte[REGISTERS];
+    }
+
+    /** Add the value whose 64-bit hash is HASH. */
+    void add(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        long rest = hash << PRECISION;
+        int rank = Math.min(Long.numberOfLeadingZeros(rest) + 1,
+                            Long.SIZE - PRECISION + 1);
+        if (rank > _registers[index]) {
+            _registers[index] = (byte) rank;
+        }
+    }
+
+    /** Add the string VALUE. */
+    void add(String value) {
+        add(BloomFilter.hash(value));
+    }
+
+    /** Return the estimated number of distinct values added. */
+    double estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : _registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros += 1;
+            }
+        }
+        double m = REGISTERS;
+        double estimate = ALPHA * m * m / sum;
+        if (estimate <= SMALL_RANGE * m && zeros > 0) {
+            estimate = m * Math.log(m / zeros);
+        }
+        return estimate;
+    }
+
+    /** Number of bits of each hash used to choose a register. */
+    private static final int PRECISION = 12;
+    /** Number of registers. */
+    private static final int REGISTERS = 1 << PRECISION;
+    /** Bias-correction constant for REGISTERS registers. */
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    /** Multiple of REGISTERS below which linear counting is used. */
+    private static final double SMALL_RANGE = 2.5;
+
+    /** For each register, the largest rank of the hashes assigned to it. */
+    private final byte[] _registers;
+}
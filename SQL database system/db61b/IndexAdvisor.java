@@ -0,0 +1,302 @@
+package db61b;
+
+import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static db61b.Utils.*;
+
+/** Creates and drops hash indexes according to the workload.  After each
+ *  select, its Plan reports the tables it scanned, with the columns that
+ *  equalities fixed (the key an index would need), the rows read, and
+ *  the rows needed.  A key that has been scanned at least MIN_SCANS
+ *  times, over at least MIN_ROWS rows on average, needing at most
+ *  MAX_SELECTIVITY of them, is indexed by a background thread, provided
+ *  that the estimated memory of the indexes I have created stays within
+ *  a budget.  An index I created that no select has used for
+ *  MAX_IDLE selects is dropped.  Indexes created by users are never
+ *  dropped, and only they are stored with their tables.  'show index
+ *  advice' prints what I have seen and done.
+ *  @author Jiaxin Huang
+ */
+class IndexAdvisor {
+
+    /** What has been seen of the scans of one table with one key. */
+    private static class Candidate {
+        /** The candidate for the key COLUMNS of its table. */
+        Candidate(List<String> columns) {
+            _columns = columns;
+        }
+
+        /** The titles of the columns of the key. */
+        private final List<String> _columns;
+        /** Number of scans. */
+        private long _scans;
+        /** Total numbers of rows read and needed. */
+        private long _read, _needed;
+        /** What has become of the candidate, or null if nothing yet. */
+        private String _status;
+    }
+
+    /** An index I created, which I refer to only weakly, so that its
+     *  table may be collected once it is replaced or dropped. */
+    private static class Created {
+        /** A record of INDEX, on TABLE, estimated to occupy BYTES, created
+         *  for CANDIDATE after select number SELECT. */
+        Created(Table table, HashIndex index, long bytes,
+                Candidate candidate, long select) {
+            _table = new WeakReference<>(table);
+            _index = new WeakReference<>(index);
+            _bytes = bytes;
+            _candidate = candidate;
+            _lastUsed = select;
+        }
+
+        /** The table. */
+        private final WeakReference<Table> _table;
+        /** The index. */
+        private final WeakReference<HashIndex> _index;
+        /** Its estimated size in bytes. */
+        private final long _bytes;
+        /** The candidate for which it was created. */
+        private final Candidate _candidate;
+        /** Number of the last select that used it. */
+        private long _lastUsed;
+        /** Number of selects that used it. */
+        private long _uses;
+    }
+
+    /** An advisor keeping the indexes it creates within the number of
+     *  bytes given by the index_memory setting of SETTINGS. */
+    IndexAdvisor(Settings settings) {
+        _settings = settings;
+    }
+
+    /** Record that the select being observed used INDEX. */
+    synchronized void used(HashIndex index) {
+        for (Created created : _created) {
+            if (created._index.get() == index) {
+                created._lastUsed = _selects;
+                created._uses += 1;
+            }
+        }
+    }
+
+    /** Record that the select being observed scanned TABLE, reading READ
+     *  of its rows and needing NEEDED, where an index on the columns
+     *  titled COLUMNS could have replaced the scan.  Start building such
+     *  an index if this makes it worthwhile. */
+    synchronized void scanned(Table table, List<String> columns, long read,
+                              long needed) {
+        if (columns.isEmpty() || read == 0) {
+            return;
+        }
+        Map<List<String>, Candidate> candidates = _candidates.get(table);
+        if (candidates == null) {
+            candidates = new LinkedHashMap<>();
+            _candidates.put(table, candidates);
+        }
+        Candidate candidate = candidates.get(columns);
+        if (candidate == null) {
+            candidate = new Candidate(columns);
+            candidates.put(columns, candidate);
+        }
+        candidate._scans += 1;
+        candidate._read += read;
+        candidate._needed += needed;
+        if (candidate._status == null && candidate._scans >= MIN_SCANS
+            && candidate._read >= MIN_ROWS * candidate._scans
+            && candidate._needed
+               <= MAX_SELECTIVITY * candidate._read) {
+            build(table, candidate);
+        }
+    }
+
+    /** Finish observing a select: count it, forget the indexes I
+     *  created whose tables have been collected, and drop those that
+     *  have been idle too long. */
+    synchronized void selected() {
+        _selects += 1;
+        for (Created created : new ArrayList<>(_created)) {
+            Table table = created._table.get();
+            HashIndex index = created._index.get();
+            if (table == null || index == null) {
+                _created.remove(created);
+                _bytes -= created._bytes;
+            } else if (_selects - created._lastUsed > MAX_IDLE) {
+                table.dropIndex(index);
+                _created.remove(created);
+                _bytes -= created._bytes;
+                created._candidate._status = null;
+                created._candidate._scans = created._candidate._read =
+                    created._candidate._needed = 0;
+                decide("dropped %s after %d selects without use (used %d "
+                       + "times)", index, MAX_IDLE,
+                       created._uses);
+            }
+        }
+    }
+
+    /** Start building an index for CANDIDATE, a candidate of TABLE, in
+     *  the background, if it fits in my budget. */
+    private void build(Table table, Candidate candidate) {
+        long bytes = (long) table.size() * BYTES_PER_ROW;
+        long budget = _settings.getLong(Settings.INDEX_MEMORY);
+        String name = "auto_" + table.name() + "_"
+            + String.join("_", candidate._columns);
+        if (_bytes + bytes > budget) {
+            candidate._status = "over budget";
+            decide("did not create %s on %s (%s): needs about %d bytes, "
+                   + "%d of %d in use", name, table.name(),
+                   String.join(", ", candidate._columns), bytes, _bytes,
+                   budget);
+            return;
+        }
+        candidate._status = "building " + name;
+        _bytes += bytes;
+        decide("building %s on %s (%s): %s", name, table.name(),
+               String.join(", ", candidate._columns), describe(candidate));
+        _builder.submit(() -> finish(table, candidate, name, bytes));
+    }
+
+    /** Create the index NAME on TABLE for CANDIDATE, estimated to occupy
+     *  BYTES, on the background thread, and record the outcome. */
+    private void finish(Table table, Candidate candidate, String name,
+                        long bytes) {
+        try {
+            table.createHashIndex(name, candidate._columns, true);
+        } catch (DBException e) {
+            synchronized (this) {
+                _bytes -= bytes;
+                candidate._status = "failed";
+                decide("could not create %s: %s", name, e.getMessage());
+            }
+            return;
+        }
+        synchronized (this) {
+            HashIndex index = null;
+            for (HashIndex other : table.indexes()) {
+                if (other.name().equals(name)) {
+                    index = other;
+                }
+            }
+            _created.add(new Created(table, index, bytes, candidate,
+                                     _selects));
+            candidate._status = "indexed by " + name;
+            decide("created %s", index);
+        }
+    }
+
+    /** Wait for the indexes being built to be finished. */
+    void awaitBuilds() {
+        try {
+            _builder.submit(() -> { }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw error("interrupted while building indexes");
+        }
+    }
+
+    /** Print what I have seen and done on OUTPUT. */
+    synchronized void print(PrintStream output) {
+        output.printf("Index advice (budget %d bytes, %d in use):%n",
+                      _settings.getLong(Settings.INDEX_MEMORY), _bytes);
+        for (Map.Entry<Table, Map<List<String>, Candidate>> entry
+                 : _candidates.entrySet()) {
+            for (Candidate candidate : entry.getValue().values()) {
+                output.printf("  %s (%s): %s; %s%n",
+                              entry.getKey().name(),
+                              String.join(", ", candidate._columns),
+                              describe(candidate),
+                              candidate._status != null ? candidate._status
+                              : reason(candidate));
+            }
+        }
+        for (Created created : _created) {
+            HashIndex index = created._index.get();
+            if (index != null) {
+                output.printf("  %s: used by %d selects, about %d bytes%n",
+                              index, created._uses, created._bytes);
+            }
+        }
+        output.println("Decisions:");
+        for (String decision : _decisions) {
+            output.printf("  %s%n", decision);
+        }
+    }
+
+    /** Return a description of the scans seen for CANDIDATE. */
+    private static String describe(Candidate candidate) {
+        return format("%d scans of %d rows, %.1f%% needed",
+                      candidate._scans, candidate._read / candidate._scans,
+                      PERCENT * candidate._needed / candidate._read);
+    }
+
+    /** Return the reason that CANDIDATE, on which nothing has been
+     *  decided, has not been indexed. */
+    private static String reason(Candidate candidate) {
+        if (candidate._read < MIN_ROWS * candidate._scans) {
+            return "table too small";
+        }
+        if (candidate._needed > MAX_SELECTIVITY * candidate._read) {
+            return "not selective enough";
+        }
+        return "too few scans";
+    }
+
+    /** Record the decision described by FORMAT and ARGS (as for
+     *  String.format), keeping only the last MAX_DECISIONS. */
+    private void decide(String format, Object... args) {
+        if (_decisions.size() == MAX_DECISIONS) {
+            _decisions.removeFirst();
+        }
+        _decisions.addLast(format(format, args));
+    }
+
+    /** Least number of scans of a key before it is indexed. */
+    static final int MIN_SCANS = 3;
+    /** Least average number of rows read by the scans of a key before it
+     *  is indexed. */
+    static final long MIN_ROWS = 10000;
+    /** Largest fraction of the rows read that the scans of a key may
+     *  need for it to be indexed. */
+    static final double MAX_SELECTIVITY = 0.05;
+    /** Number of selects without use after which an index I created is
+     *  dropped. */
+    static final long MAX_IDLE = 1000;
+    /** Estimated bytes of memory used by an index per row indexed. */
+    private static final long BYTES_PER_ROW = 64;
+    /** Number of recent decisions kept. */
+    private static final int MAX_DECISIONS = 20;
+    /** Factor converting fractions to percentages. */
+    private static final double PERCENT = 100.0;
+
+    /** The settings giving my budget. */
+    private final Settings _settings;
+    /** The keys seen for each table, forgotten when it is collected. */
+    private final WeakHashMap<Table, Map<List<String>, Candidate>>
+        _candidates = new WeakHashMap<>();
+    /** The indexes I created and have not dropped. */
+    private final ArrayList<Created> _created = new ArrayList<>();
+    /** Estimated bytes of memory used by the indexes I created or am
+     *  building. */
+    private long _bytes;
+    /** Number of selects observed. */
+    private long _selects;
+    /** The last MAX_DECISIONS decisions, oldest first. */
+    private final ArrayDeque<String> _decisions = new ArrayDeque<>();
+    /** The thread building indexes. */
+    private final ExecutorService _builder =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "db61b-index-advisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+}
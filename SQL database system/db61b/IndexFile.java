@@ -0,0 +1,316 @@
+package db61b;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static db61b.Utils.*;
+
+/** The file NAME.idx, holding the hash indexes of the table stored in
+ *  NAME.db, so that loading the table need not rebuild them, and naming
+ *  its trie indexes, which are rebuilt.  The file
+ *  records the CRC-32 checksum and number of rows of the .db file it
+ *  was written with, and is used only if they still match; otherwise
+ *  the indexes it describes are rebuilt (as they are if reading a
+ *  clustered table reordered its rows).  Each index is stored as an
+ *  open-addressing hash table of its keys, which is probed where it
+ *  lies in a read-only memory mapping of the file, rather than being
+ *  read into the heap.
+ *
+ *  All numbers are big-endian ints, except the checksum, a long:
+ *    MAGIC VERSION checksum rows indexes, followed, for each index, by
+ *    its name (a string), its number of columns, their
+ *    indices, its number of keys, its number of slots (a power of 2),
+ *    the slots, the length of its entries in bytes, and the entries;
+ *    then (from version 2) the number of trie indexes, followed by the
+ *    name and column index of each.
+ *  A slot is 0 if empty and otherwise 1 plus the offset of an entry
+ *  among the entries.  An entry is the hash of its key (Row.hashCode),
+ *  its values, each a string, and the number of its positions followed
+ *  by the positions.  A string is its length followed by its UTF-16
+ *  characters.
+ *  @author Jiaxin Huang
+ */
+class IndexFile {
+
+    /** The keys of one index, as mapped from an index file. */
+    static class Section {
+
+        /** The keys of an index with KEYS keys whose slots and entries
+         *  are SLOTS and ENTRIES. */
+        Section(int keys, ByteBuffer slots, ByteBuffer entries) {
+            _keys = keys;
+            _slots = slots;
+            _entries = entries;
+        }
+
+        /** Return the number of keys. */
+        int keys() {
+            return _keys;
+        }
+
+        /** Return the positions of the rows whose key is KEY, or null if
+         *  there are none. */
+        HashIndex.Positions lookup(Row key) {
+            int hash = key.hashCode();
+            int mask = _slots.capacity() / Integer.BYTES - 1;
+            for (int slot = scramble(hash) & mask; ;
+                 slot = (slot + 1) & mask) {
+                int entry = _slots.getInt(slot * Integer.BYTES) - 1;
+                if (entry < 0) {
+                    return null;
+                }
+                int pos = matches(entry, hash, key);
+                if (pos >= 0) {
+                    return new HashIndex.Positions(_entries,
+                                                   pos + Integer.BYTES,
+                                                   _entries.getInt(pos));
+                }
+            }
+        }
+
+        /** Return the position of the number of positions of the entry
+         *  at ENTRY if its key, whose hash is HASH, is KEY, and
+         *  otherwise -1. */
+        private int matches(int entry, int hash, Row key) {
+            int pos = entry;
+            if (_entries.getInt(pos) != hash) {
+                return -1;
+            }
+            pos += Integer.BYTES;
+            for (int k = 0; k < key.size(); k += 1) {
+                String value = key.get(k);
+                int length = _entries.getInt(pos);
+                pos += Integer.BYTES;
+                if (length != value.length()) {
+                    return -1;
+                }
+                for (int i = 0; i < length; i += 1) {
+                    if (_entries.getChar(pos) != value.charAt(i)) {
+                        return -1;
+                    }
+                    pos += Character.BYTES;
+                }
+            }
+            return pos;
+        }
+
+        /** Number of keys. */
+        private final int _keys;
+        /** The slots of the hash table. */
+        private final ByteBuffer _slots;
+        /** The entries for each key. */
+        private final ByteBuffer _entries;
+    }
+
+    /** Write the indexes of TABLE, just written to NAME.db with CHECKSUM,
+     *  to NAME.idx, or remove NAME.idx if TABLE has no indexes.  Indexes
+     *  created by the IndexAdvisor are left out, since it alone may drop
+     *  them. */
+    static void write(Table table, String name, long checksum) {
+        File file = new File(name + ".idx");
+        ArrayList<HashIndex> indexes = new ArrayList<>();
+        for (HashIndex index : table.indexes()) {
+            if (!index.automatic()) {
+                indexes.add(index);
+            }
+        }
+        if (indexes.isEmpty() && table.tries().isEmpty()) {
+            file.delete();
+            return;
+        }
+        try (DataOutputStream output =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(checksum);
+            output.writeInt(table.size());
+            output.writeInt(indexes.size());
+            for (HashIndex index : indexes) {
+                writeIndex(output, table, index);
+            }
+            output.writeInt(table.tries().size());
+            for (TrieIndex trie : table.tries()) {
+                writeString(output, trie.name());
+                output.writeInt(trie.column());
+            }
+        } catch (IOException e) {
+            throw error("trouble writing to %s.idx", name);
+        }
+        Metrics.bytesWritten(file.length());
+    }
+
+    /** Write INDEX, an index of TABLE, to OUTPUT. */
+    private static void writeIndex(DataOutputStream output, Table table,
+                                   HashIndex index) throws IOException {
+        int[] columns = index.columns();
+        LinkedHashMap<Row, ArrayList<Integer>> keys = new LinkedHashMap<>();
+        int position = 0;
+        for (Row row : table) {
+            String[] key = new String[columns.length];
+            for (int k = 0; k < key.length; k += 1) {
+                key[k] = row.get(columns[k]);
+            }
+            keys.computeIfAbsent(new Row(key), x -> new ArrayList<>())
+                .add(position);
+            position += 1;
+        }
+        int slotCount = Integer.highestOneBit(Math.max(1, keys.size())) * 4;
+        int[] slots = new int[slotCount];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(bytes);
+        for (Map.Entry<Row, ArrayList<Integer>> entry : keys.entrySet()) {
+            Row key = entry.getKey();
+            int slot = scramble(key.hashCode()) & (slotCount - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            slots[slot] = entries.size() + 1;
+            entries.writeInt(key.hashCode());
+            for (int k = 0; k < key.size(); k += 1) {
+                writeString(entries, key.get(k));
+            }
+            entries.writeInt(entry.getValue().size());
+            for (int p : entry.getValue()) {
+                entries.writeInt(p);
+            }
+        }
+        writeString(output, index.name());
+        output.writeInt(columns.length);
+        for (int column : columns) {
+            output.writeInt(column);
+        }
+        output.writeInt(keys.size());
+        output.writeInt(slotCount);
+        for (int slot : slots) {
+            output.writeInt(slot);
+        }
+        output.writeInt(entries.size());
+        bytes.writeTo(output);
+    }
+
+    /** Give TABLE, just read from NAME.db with CHECKSUM, the indexes in
+     *  NAME.idx, if that exists: mapped from the file if it matches
+     *  TABLE, and otherwise rebuilt. */
+    static void read(Table table, String name, long checksum) {
+        File file = new File(name + ".idx");
+        if (!file.exists()) {
+            return;
+        }
+        MappedByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            buffer = input.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        } catch (IOException e) {
+            throw error("problem reading from %s.idx", name);
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw error("%s.idx is not an index file", name);
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw error("%s.idx is not an index file", name);
+            }
+            long written = buffer.getLong();
+            int rows = buffer.getInt();
+            boolean fresh = written == checksum && rows == table.size()
+                && table.reorganizations() == 0;
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i += 1) {
+                readIndex(buffer, table, fresh);
+            }
+            count = version < TRIES_VERSION ? 0 : buffer.getInt();
+            for (int i = 0; i < count; i += 1) {
+                String trie = readString(buffer);
+                int column = buffer.getInt();
+                if (column < 0 || column >= table.numColumns()) {
+                    throw error("bad column in index %s", trie);
+                }
+                table.createTrieIndex(trie, table.title(column));
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw error("%s.idx is truncated", name);
+        }
+        Metrics.bytesRead(file.length());
+    }
+
+    /** Read the index at the position of BUFFER and give it to TABLE,
+     *  mapped if FRESH, and otherwise rebuilt from TABLE's rows. */
+    private static void readIndex(ByteBuffer buffer, Table table,
+                                  boolean fresh) {
+        String name = readString(buffer);
+        int[] columns = new int[buffer.getInt()];
+        List<String> titles = new ArrayList<>();
+        for (int k = 0; k < columns.length; k += 1) {
+            columns[k] = buffer.getInt();
+            if (columns[k] < 0 || columns[k] >= table.numColumns()) {
+                throw error("bad column in index %s", name);
+            }
+            titles.add(table.title(columns[k]));
+        }
+        int keys = buffer.getInt();
+        int slotBytes = buffer.getInt() * Integer.BYTES;
+        ByteBuffer slots = buffer.slice(buffer.position(), slotBytes);
+        buffer.position(buffer.position() + slotBytes);
+        int entryBytes = buffer.getInt();
+        ByteBuffer entries = buffer.slice(buffer.position(), entryBytes);
+        buffer.position(buffer.position() + entryBytes);
+        if (fresh) {
+            table.addIndex(new HashIndex(name, table, columns,
+                                         new Section(keys, slots, entries)));
+        } else {
+            table.createHashIndex(name, titles);
+        }
+    }
+
+    /** Write VALUE to OUTPUT as its length followed by its
+     *  characters. */
+    private static void writeString(DataOutputStream output, String value)
+        throws IOException {
+        output.writeInt(value.length());
+        output.writeChars(value);
+    }
+
+    /** Return the string written by writeString at the position of
+     *  BUFFER, advancing past it. */
+    private static String readString(ByteBuffer buffer) {
+        char[] chars = new char[buffer.getInt()];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** Return HASH with its bits mixed, so that its low bits may choose
+     *  a slot. */
+    private static int scramble(int hash) {
+        hash *= HASH_MULTIPLIER;
+        return hash ^ (hash >>> HASH_SHIFT);
+    }
+
+    /** First int of an index file. */
+    private static final int MAGIC = 0xDB61B1D8;
+    /** Version of the format of index files written. */
+    private static final int VERSION = 2;
+    /** First version of the format recording trie indexes. */
+    private static final int TRIES_VERSION = 2;
+    /** Multiplier scrambling hashes (the golden ratio times 2**32). */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    /** Shift folding the better high bits of scrambled hashes into the
+     *  low bits used to choose slots. */
+    private static final int HASH_SHIFT = 16;
+}
@@ -0,0 +1,73 @@
+package db61b;
+
+import java.util.HashSet;
+import java.util.List;
+
+/** A RowSink that skips a given number of the distinct rows sent to it,
+ *  sends the next few on to another RowSink, and then asks for no more.
+ *  @author Jiaxin Huang
+ */
+class Limiter implements RowSink {
+
+    /** A Limiter that sends to OUTPUT distinct rows OFFSET through
+     *  OFFSET + COUNT - 1 (numbering from 0) of those it receives.  If
+     *  DISTINCT, the rows it receives are known to contain no duplicates;
+     *  otherwise, it remembers the rows it has seen in order to skip
+     *  duplicates. */
+    Limiter(long offset, long count, boolean distinct, RowSink output) {
+        _offset = offset;
+        _count = count;
+        _seen = distinct ? null : new HashSet<Row>();
+        _output = output;
+    }
+
+    @Override
+    public boolean accept(Row row) {
+        if (_sent >= _count) {
+            return false;
+        }
+        if (_seen != null && !_seen.add(row)) {
+            return true;
+        }
+        if (_skipped < _offset) {
+            _skipped += 1;
+            return true;
+        }
+        _sent += 1;
+        return _output.accept(row) && _sent < _count;
+    }
+
+    @Override
+    public boolean accept(List<Column> columns) {
+        if (_seen != null) {
+            return accept(Row.make(columns));
+        }
+        if (_sent >= _count) {
+            return false;
+        }
+        if (_skipped < _offset) {
+            _skipped += 1;
+            return true;
+        }
+        _sent += 1;
+        return _output.accept(columns) && _sent < _count;
+    }
+
+    @Override
+    public void finish() {
+        _output.finish();
+    }
+
+    /** Number of leading rows to skip. */
+    private final long _offset;
+    /** Number of rows to send. */
+    private final long _count;
+    /** Number of rows skipped so far. */
+    private long _skipped;
+    /** Number of rows sent so far. */
+    private long _sent;
+    /** Rows seen so far, or null if the input is distinct. */
+    private final HashSet<Row> _seen;
+    /** Destination of my rows. */
+    private final RowSink _output;
+}
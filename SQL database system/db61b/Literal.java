@@ -19,6 +19,24 @@ class Literal extends Column {
         return _value;
     }
 
+    @Override
+    String value(Row row) {
+        return _value;
+    }
+
+    @Override
+    int compareTo(Column other) {
+        if (other.source() == null) {
+            return _value.compareTo(other.value());
+        }
+        return -other.compareTo(this);
+    }
+
+    @Override
+    public String toString() {
+        return "'" + _value + "'";
+    }
+
     @Override
     void resolve(List<TableIterator> iterators) {
     }
@@ -17,6 +17,7 @@ public class Main {
     public static void main(String[] unused) {
         System.out.printf("DB61B System.  Version %s.%n", VERSION);
 
+        Metrics.register();
         HashMap<String, Table> db = new HashMap<>();
 
         Scanner input = new Scanner(System.in);
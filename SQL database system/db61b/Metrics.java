@@ -0,0 +1,361 @@
+package db61b;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** The registry of db61b's runtime metrics: for statements of each kind,
+ *  their number and latencies and the rows scanned and produced, join
+ *  pairs, duplicate checks, and bytes read and written while executing
+ *  them; and the sizes of the tables loaded or created.  They are
+ *  published as MBeans (see MetricsMXBean and StatementMXBean) and
+ *  printed by the 'show metrics' statement.  Counts are charged to the
+ *  statement the interpreter has begun (see begin).  Counters are
+ *  LongAdders, since parallel scans and joins update them from several
+ *  threads, and latencies go into fixed-size histograms, so recording
+ *  is cheap enough to leave on.
+ *  @author Jiaxin Huang
+ */
+class Metrics implements MetricsMXBean {
+
+    /** The kinds of statement whose metrics are recorded. */
+    static final String[] STATEMENTS = {
+        "analyze", "create", "delete", "explain", "insert", "load", "print",
+        "select", "set", "show", "store", "update",
+    };
+
+    /** The single registry. */
+    private static final Metrics METRICS = new Metrics();
+
+    /** A new registry, with no statements or tables recorded. */
+    private Metrics() {
+        for (String kind : STATEMENTS) {
+            _statements.put(kind, new Statement());
+        }
+    }
+
+    /** Publish the metrics on the platform MBean server, if they are not
+     *  already published.  Failure to do so (as when running where JMX
+     *  is unavailable) is ignored.  Starting the server takes a while,
+     *  so this is done once at startup rather than by the first
+     *  statement recorded. */
+    static synchronized void register() {
+        if (_registered) {
+            return;
+        }
+        _registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(METRICS,
+                                 new ObjectName(DOMAIN + ":type=Metrics"));
+            for (Map.Entry<String, Statement> e
+                     : METRICS._statements.entrySet()) {
+                ObjectName name =
+                    new ObjectName(DOMAIN + ":type=Statement,name="
+                                   + e.getKey());
+                server.registerMBean(e.getValue(), name);
+            }
+        } catch (JMException | SecurityException e) {
+            /* Ignore: metrics remain available through 'show metrics'. */
+        }
+    }
+
+    /** Record that a statement of kind KIND is being executed, so that
+     *  the counts recorded until it ends (see statement) are charged to
+     *  it.  Counts recorded during statements of unrecorded kinds are
+     *  ignored. */
+    static void begin(String kind) {
+        METRICS._current = METRICS._statements.get(kind);
+    }
+
+    /** Record that a statement of kind KIND took NANOS nanoseconds and
+     *  FAILED or not.  Statements of unrecorded kinds are ignored. */
+    static void statement(String kind, long nanos, boolean failed) {
+        METRICS._current = null;
+        Statement statement = METRICS._statements.get(kind);
+        if (statement != null) {
+            statement.record(nanos, failed);
+        }
+    }
+
+    /** Record that a scan or join read SCANNED rows, tested PAIRS pairs
+     *  of rows against join conditions, and produced EMITTED rows. */
+    static void scan(long scanned, long pairs, long emitted) {
+        Statement current = METRICS._current;
+        if (current != null) {
+            current._rowsScanned.add(scanned);
+            current._joinPairs.add(pairs);
+            current._rowsEmitted.add(emitted);
+        }
+    }
+
+    /** Record that a row was checked for duplicates in a table. */
+    static void duplicateProbe() {
+        Statement current = METRICS._current;
+        if (current != null) {
+            current._duplicateProbes.increment();
+        }
+    }
+
+    /** Record that BYTES bytes were read from a .db file. */
+    static void bytesRead(long bytes) {
+        Statement current = METRICS._current;
+        if (current != null) {
+            current._bytesRead.add(bytes);
+        }
+    }
+
+    /** Record that BYTES bytes were written to a .db file. */
+    static void bytesWritten(long bytes) {
+        Statement current = METRICS._current;
+        if (current != null) {
+            current._bytesWritten.add(bytes);
+        }
+    }
+
+    /** Record that TABLE is now the table named NAME. */
+    static void table(String name, Table table) {
+        METRICS._tables.put(name, table);
+    }
+
+    /** Print all metrics on OUTPUT: two lines for each kind of statement
+     *  that has been executed, giving its latencies and then its
+     *  counters, then the sizes of the tables. */
+    static void print(PrintStream output) {
+        output.println("Statements:");
+        for (Map.Entry<String, Statement> e
+                 : METRICS._statements.entrySet()) {
+            Statement s = e.getValue();
+            if (s.getCount() > 0) {
+                output.printf("  %s: %d run, %d failed; mean %.3f ms, "
+                              + "median %.3f ms, p90 %.3f ms, p99 %.3f ms, "
+                              + "max %.3f ms%n", e.getKey(), s.getCount(),
+                              s.getErrors(), s.getMeanMillis(),
+                              s.getMedianMillis(), s.getP90Millis(),
+                              s.getP99Millis(), s.getMaxMillis());
+                output.printf("    rows scanned %d, rows emitted %d, "
+                              + "join pairs %d, duplicate probes %d, "
+                              + "bytes read %d, bytes written %d%n",
+                              s.getRowsScanned(), s.getRowsEmitted(),
+                              s.getJoinPairs(), s.getDuplicateProbes(),
+                              s.getBytesRead(), s.getBytesWritten());
+            }
+        }
+        output.println("Tables:");
+        for (Map.Entry<String, Integer> e
+                 : METRICS.getTableSizes().entrySet()) {
+            output.printf("  %s: %d rows%n", e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getTableSizes() {
+        TreeMap<String, Integer> result = new TreeMap<>();
+        for (Map.Entry<String, Table> e : _tables.entrySet()) {
+            result.put(e.getKey(), e.getValue().live());
+        }
+        return result;
+    }
+
+    /** The metrics of one kind of statement. */
+    static class Statement implements StatementMXBean {
+
+        /** Record one execution that took NANOS nanoseconds and FAILED or
+         *  not. */
+        void record(long nanos, boolean failed) {
+            _latencies.record(nanos);
+            _total.add(nanos);
+            _max.accumulate(nanos);
+            if (failed) {
+                _errors.increment();
+            }
+        }
+
+        @Override
+        public long getCount() {
+            return _latencies.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return _errors.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long count = getCount();
+            return count == 0 ? 0 : _total.sum() / NANOS_PER_MS / count;
+        }
+
+        @Override
+        public double getMedianMillis() {
+            return _latencies.percentile(MEDIAN, _max.get()) / NANOS_PER_MS;
+        }
+
+        @Override
+        public double getP90Millis() {
+            return _latencies.percentile(P90, _max.get()) / NANOS_PER_MS;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return _latencies.percentile(P99, _max.get()) / NANOS_PER_MS;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return _max.get() / NANOS_PER_MS;
+        }
+
+        @Override
+        public long getRowsScanned() {
+            return _rowsScanned.sum();
+        }
+
+        @Override
+        public long getRowsEmitted() {
+            return _rowsEmitted.sum();
+        }
+
+        @Override
+        public long getJoinPairs() {
+            return _joinPairs.sum();
+        }
+
+        @Override
+        public long getDuplicateProbes() {
+            return _duplicateProbes.sum();
+        }
+
+        @Override
+        public long getBytesRead() {
+            return _bytesRead.sum();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return _bytesWritten.sum();
+        }
+
+        /** Latencies, in nanoseconds. */
+        private final LatencyHistogram _latencies = new LatencyHistogram();
+        /** Sum of the latencies. */
+        private final LongAdder _total = new LongAdder();
+        /** Largest latency. */
+        private final LongAccumulator _max =
+            new LongAccumulator(Math::max, 0);
+        /** Number of failures. */
+        private final LongAdder _errors = new LongAdder();
+        /** Counts of the work done by statements of my kind. */
+        private final LongAdder
+            _rowsScanned = new LongAdder(), _rowsEmitted = new LongAdder(),
+            _joinPairs = new LongAdder(), _duplicateProbes = new LongAdder(),
+            _bytesRead = new LongAdder(), _bytesWritten = new LongAdder();
+    }
+
+    /** A histogram of non-negative values, in the style of HdrHistogram:
+     *  values below 2**SUB_BITS have buckets of their own, and each
+     *  larger power-of-two range is divided into 2**SUB_BITS equal
+     *  buckets, so that a value's bucket determines it to within a
+     *  relative error of 2**-SUB_BITS.  Recording is one atomic
+     *  increment into a fixed array. */
+    static class LatencyHistogram {
+
+        /** Record VALUE, which must be non-negative. */
+        void record(long value) {
+            _counts.incrementAndGet(bucket(value));
+        }
+
+        /** Return the number of values recorded. */
+        long count() {
+            long result = 0;
+            for (int i = 0; i < _counts.length(); i += 1) {
+                result += _counts.get(i);
+            }
+            return result;
+        }
+
+        /** Return an approximation to the smallest recorded value that is
+         *  at least FRACTION of the recorded values, or 0 if there are
+         *  none: the middle of its bucket, but no more than MAX, the
+         *  largest value recorded. */
+        long percentile(double fraction, long max) {
+            long[] counts = new long[_counts.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                counts[i] = _counts.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max,
+                                    (lowest(i) + lowest(i + 1) - 1) / 2);
+                }
+            }
+            return Math.min(max, lowest(counts.length - 1));
+        }
+
+        /** Return the index of the bucket holding VALUE. */
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value)
+                - SUB_BITS;
+            return (shift + 1) * SUB_BUCKETS
+                + (int) ((value >>> shift) - SUB_BUCKETS);
+        }
+
+        /** Return the smallest value in bucket number BUCKET. */
+        static long lowest(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        }
+
+        /** Number of bits of each value that determine its bucket within
+         *  its power-of-two range. */
+        static final int SUB_BITS = 4;
+        /** Number of buckets in each power-of-two range. */
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+        /** Total number of buckets, enough for any non-negative long. */
+        private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+        /** Number of values recorded in each bucket. */
+        private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /** Domain of the names of my MBeans. */
+    private static final String DOMAIN = "db61b";
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+    /** Fractions for the median, 90th, and 99th percentiles. */
+    private static final double MEDIAN = 0.5, P90 = 0.9, P99 = 0.99;
+    /** True iff register() has been called. */
+    private static boolean _registered;
+
+    /** Metrics of each kind of statement, by kind. */
+    private final TreeMap<String, Statement> _statements = new TreeMap<>();
+    /** The metrics of the statement being executed, or null if none or
+     *  its kind is unrecorded. */
+    private volatile Statement _current;
+    /** Tables loaded or created, by name. */
+    private final ConcurrentHashMap<String, Table> _tables =
+        new ConcurrentHashMap<>();
+}
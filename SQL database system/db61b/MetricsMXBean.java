@@ -0,0 +1,17 @@
+package db61b;
+
+import java.util.Map;
+
+/** The management interface through which db61b's table sizes are
+ *  published over JMX, as the MBean named db61b:type=Metrics.  The
+ *  counts of work done are published for each kind of statement (see
+ *  StatementMXBean).
+ *  @author Jiaxin Huang
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of rows, not counting deleted ones, in each
+     *  table loaded or created, by name. */
+    Map<String, Integer> getTableSizes();
+
+}
@@ -0,0 +1,26 @@
+package db61b;
+
+import java.nio.ByteBuffer;
+
+/** An EncodedRowStore that keeps its rows outside the Java heap, in
+ *  direct ByteBuffers, so that the garbage collector sees a few large
+ *  buffers rather than several objects per row.
+ *  @author Jiaxin Huang
+ */
+class OffHeapRowStore extends EncodedRowStore {
+
+    /** A new, empty store for rows of COLUMNS values. */
+    OffHeapRowStore(int columns) {
+        super(columns);
+    }
+
+    @Override
+    public String kind() {
+        return OFF_HEAP;
+    }
+
+    @Override
+    ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+}
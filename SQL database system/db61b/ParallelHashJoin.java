@@ -0,0 +1,285 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A hash join of two tables executed by the threads of a ForkJoinPool
+ *  in two phases.  In the partitioning phase, the blocks of rows of each
+ *  table are divided among tasks, each of which tests that table's
+ *  conditions on its rows and distributes those that satisfy them among
+ *  partitions by the high bits of the hash of their join keys, in lists
+ *  of its own.  In the join phase, each partition is a separate task,
+ *  which builds a hash table over its inner rows and probes it with its
+ *  outer rows.  There are enough partitions for each hash table to fit
+ *  in a processor's cache, and since matching rows always fall in the
+ *  same partition, the tasks share nothing but the concurrent set of
+ *  result rows, which removes duplicates.  Conditions and columns are
+ *  evaluated directly on Rows, as by ParallelScan, and the result is
+ *  likewise unordered.
+ *  @author Jiaxin Huang
+ */
+class ParallelHashJoin {
+
+    /** One input of the join: the rows of a table that satisfy some
+     *  conditions, and the columns forming their join keys. */
+    static class Side {
+        /** The rows of the table of ITERATOR that satisfy CONDITIONS,
+         *  joined on the values of KEYS. */
+        Side(TableIterator iterator, List<Condition> conditions,
+             List<Column> keys) {
+            _iterator = iterator;
+            _conditions = conditions;
+            _keys = keys;
+        }
+
+        /** Return the number of rows read in the last join. */
+        long rowsRead() {
+            return _read.sum();
+        }
+
+        /** Return the number of rows read in the last join that satisfied
+         *  my conditions. */
+        long rowsPassed() {
+            return _passed.sum();
+        }
+
+        /** Return the partition, out of 2**BITS, of ROW, a row of my
+         *  table. */
+        int partition(Row row, int bits) {
+            int hash = 1;
+            for (Column key : _keys) {
+                hash = 31 * hash + key.value(row).hashCode();
+            }
+            return bits == 0 ? 0 : (hash * HASH_MULTIPLIER) >>> (32 - bits);
+        }
+
+        /** The table. */
+        private final TableIterator _iterator;
+        /** Conditions selecting its rows. */
+        private final List<Condition> _conditions;
+        /** The columns of its join keys. */
+        private final List<Column> _keys;
+        /** The lists of rows of each partition, one array of lists per
+         *  partitioning task. */
+        private final ConcurrentLinkedQueue<ArrayList<Row>[]> _partitions =
+            new ConcurrentLinkedQueue<>();
+        /** Numbers of rows read and satisfying _conditions. */
+        private final LongAdder _read = new LongAdder(),
+            _passed = new LongAdder();
+    }
+
+    /** A join of the rows of OUTER and INNER with equal keys that satisfy
+     *  RESIDUAL, selecting COLUMNS of each such pair, using WORKERS
+     *  threads.  The keys of OUTER and INNER must be corresponding
+     *  columns of the two tables.  There are enough partitions for the
+     *  hash table of each to fit in CACHE_BYTES, and for each worker
+     *  to have several. */
+    ParallelHashJoin(Side outer, Side inner, List<Condition> residual,
+                     List<Column> columns, int workers) {
+        _outer = outer;
+        _inner = inner;
+        _residual = residual;
+        _columns = columns;
+        _workers = workers;
+        long buildBytes =
+            (long) inner._iterator.table().size() * ENTRY_BYTES;
+        while (_bits < MAX_BITS
+               && (buildBytes >> _bits > CACHE_BYTES
+                   || 1 << _bits < workers * TASKS_PER_WORKER)) {
+            _bits += 1;
+        }
+    }
+
+    /** Perform the join, and return the distinct rows selected. */
+    Set<Row> run() {
+        ForkJoinPool pool = ParallelScan.pool(_workers);
+        for (Side side : new Side[] { _inner, _outer }) {
+            int[] blocks = side._iterator.blocksToScan();
+            int size =
+                Math.max(1, blocks.length / (_workers * TASKS_PER_WORKER));
+            pool.invoke(new Partitioner(side, blocks, 0, blocks.length,
+                                        size));
+        }
+        pool.invoke(new Joiner(0, partitions()));
+        return _result;
+    }
+
+    /** Return the number of partitions. */
+    int partitions() {
+        return 1 << _bits;
+    }
+
+    /** Return the number of pairs of rows with equal keys tested against
+     *  the residual conditions in the last run. */
+    long pairs() {
+        return _pairs.sum();
+    }
+
+    /** A task distributing the rows of a range of blocks of one side
+     *  among partitions. */
+    @SuppressWarnings("serial")
+    private class Partitioner extends RecursiveAction {
+
+        /** The task for blocks number FROM through TO - 1 of BLOCKS, in
+         *  the table of SIDE, split into tasks of at most SIZE blocks. */
+        Partitioner(Side side, int[] blocks, int from, int to, int size) {
+            _side = side;
+            _blocks = blocks;
+            _from = from;
+            _to = to;
+            _size = size;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > _size) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new Partitioner(_side, _blocks, _from, middle,
+                                          _size),
+                          new Partitioner(_side, _blocks, middle, _to,
+                                          _size));
+                return;
+            }
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ArrayList<Row>[] partitions = new ArrayList[1 << _bits];
+            for (int p = 0; p < partitions.length; p += 1) {
+                partitions[p] = new ArrayList<>();
+            }
+            Table table = _side._iterator.table();
+            RowStore rows = table.rows();
+            long read, passed;
+            read = passed = 0;
+            for (int k = _from; k < _to; k += 1) {
+                int start = _blocks[k] * ZoneMap.BLOCK_SIZE,
+                    end = Math.min(start + ZoneMap.BLOCK_SIZE, rows.size());
+                for (int i = start; i < end; i += 1) {
+                    if (table.deleted(i)) {
+                        continue;
+                    }
+                    Row row = rows.get(i);
+                    read += 1;
+                    if (Condition.test(_side._conditions, row)) {
+                        passed += 1;
+                        partitions[_side.partition(row, _bits)].add(row);
+                    }
+                }
+            }
+            _side._partitions.add(partitions);
+            _side._read.add(read);
+            _side._passed.add(passed);
+        }
+
+        /** The side being partitioned. */
+        private final Side _side;
+        /** Numbers of the blocks of its table to scan. */
+        private final int[] _blocks;
+        /** Range of indices in _blocks of my blocks. */
+        private final int _from, _to;
+        /** Largest number of blocks partitioned without splitting. */
+        private final int _size;
+    }
+
+    /** A task joining the rows of the two sides in a range of
+     *  partitions, split into a task for each. */
+    @SuppressWarnings("serial")
+    private class Joiner extends RecursiveAction {
+
+        /** The task for partitions number FROM through TO - 1. */
+        Joiner(int from, int to) {
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > 1) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new Joiner(_from, middle), new Joiner(middle, _to));
+            } else {
+                join(_from);
+            }
+        }
+
+        /** Join the rows of the two sides in partition number
+         *  PARTITION. */
+        private void join(int partition) {
+            HashMap<Row, ArrayList<Row>> table = new HashMap<>();
+            for (ArrayList<Row>[] partitions : _inner._partitions) {
+                for (Row row : partitions[partition]) {
+                    Row key = Row.make(_inner._keys, row);
+                    ArrayList<Row> matches = table.get(key);
+                    if (matches == null) {
+                        matches = new ArrayList<>(1);
+                        table.put(key, matches);
+                    }
+                    matches.add(row);
+                }
+            }
+            if (table.isEmpty()) {
+                return;
+            }
+            TableIterator outer = _outer._iterator;
+            long pairs = 0;
+            for (ArrayList<Row>[] partitions : _outer._partitions) {
+                for (Row row : partitions[partition]) {
+                    ArrayList<Row> matches =
+                        table.get(Row.make(_outer._keys, row));
+                    if (matches == null) {
+                        continue;
+                    }
+                    for (Row match : matches) {
+                        pairs += 1;
+                        if (Condition.test(_residual, outer, row, match)) {
+                            _result.add(Row.make(_columns, outer, row,
+                                                 match));
+                        }
+                    }
+                }
+            }
+            _pairs.add(pairs);
+        }
+
+        /** Range of the numbers of my partitions. */
+        private final int _from, _to;
+    }
+
+    /** Number of tasks into which each table's blocks are divided per
+     *  worker when partitioning. */
+    private static final int TASKS_PER_WORKER = 4;
+    /** Rough number of bytes of a hash table occupied by each inner
+     *  row: the entry, the key Row, and its share of the list of
+     *  matches. */
+    private static final long ENTRY_BYTES = 128;
+    /** Number of bytes of a partition's hash table that should fit in a
+     *  processor's (second-level) cache. */
+    private static final long CACHE_BYTES = 256 * 1024;
+    /** Largest number of bits of the hash used to choose a partition. */
+    private static final int MAX_BITS = 12;
+    /** Multiplier scrambling hashes before their high bits are taken
+     *  (the golden ratio times 2**32). */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** The probe side. */
+    private final Side _outer;
+    /** The build side. */
+    private final Side _inner;
+    /** Conditions on pairs of rows other than equality of keys. */
+    private final List<Condition> _residual;
+    /** Columns projected from the selected pairs. */
+    private final List<Column> _columns;
+    /** Number of threads. */
+    private final int _workers;
+    /** Number of bits of the hash choosing a partition. */
+    private int _bits;
+    /** Number of pairs tested against _residual. */
+    private final LongAdder _pairs = new LongAdder();
+    /** Distinct projected pairs. */
+    private final Set<Row> _result = ConcurrentHashMap.newKeySet();
+}
@@ -0,0 +1,133 @@
+package db61b;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A scan of one table that divides its blocks of rows among the
+ *  threads of a ForkJoinPool.  Each task tests the scan's conditions on
+ *  its rows and projects those that satisfy them, and the tasks add
+ *  their results to one concurrent set, so that duplicates are removed
+ *  as they are found.  Since the tasks do not use the table's
+ *  TableIterator, whose current row is shared, conditions and columns
+ *  are evaluated directly on Rows.  The result is unordered, so a
+ *  parallel scan may only feed operators that do not depend on the
+ *  order or multiplicity of their input.
+ *  @author Jiaxin Huang
+ */
+class ParallelScan {
+
+    /** A scan of the rows in BLOCKS (increasing block numbers) of TABLE
+     *  that selects COLUMNS of the rows satisfying CONDITIONS, using
+     *  WORKERS threads.  CONDITIONS and COLUMNS must refer only to
+     *  TABLE. */
+    ParallelScan(Table table, int[] blocks, List<Condition> conditions,
+                 List<Column> columns, int workers) {
+        _table = table;
+        _blocks = blocks;
+        _conditions = conditions;
+        _columns = columns;
+        _workers = workers;
+    }
+
+    /** Perform the scan, and return the distinct rows selected. */
+    Set<Row> run() {
+        int size = Math.max(1, _blocks.length / (_workers * TASKS_PER_WORKER));
+        pool(_workers).invoke(new Partition(0, _blocks.length, size));
+        return _result;
+    }
+
+    /** Return the number of rows read by the last run. */
+    long rowsRead() {
+        return _read.sum();
+    }
+
+    /** Return the number of rows read by the last run that satisfied my
+     *  conditions. */
+    long rowsPassed() {
+        return _passed.sum();
+    }
+
+    /** A range of my blocks, split into halves until small enough. */
+    @SuppressWarnings("serial")
+    private class Partition extends RecursiveAction {
+
+        /** The partition of blocks number FROM through TO - 1 of _blocks,
+         *  split into partitions of at most SIZE blocks. */
+        Partition(int from, int to, int size) {
+            _from = from;
+            _to = to;
+            _size = size;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > _size) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new Partition(_from, middle, _size),
+                          new Partition(middle, _to, _size));
+                return;
+            }
+            RowStore rows = _table.rows();
+            long read, passed;
+            read = passed = 0;
+            for (int k = _from; k < _to; k += 1) {
+                int start = _blocks[k] * ZoneMap.BLOCK_SIZE,
+                    end = Math.min(start + ZoneMap.BLOCK_SIZE, rows.size());
+                for (int i = start; i < end; i += 1) {
+                    if (_table.deleted(i)) {
+                        continue;
+                    }
+                    Row row = rows.get(i);
+                    read += 1;
+                    if (Condition.test(_conditions, row)) {
+                        passed += 1;
+                        _result.add(Row.make(_columns, row));
+                    }
+                }
+            }
+            _read.add(read);
+            _passed.add(passed);
+        }
+
+        /** Range of indices in _blocks of my blocks. */
+        private final int _from, _to;
+        /** Largest number of blocks scanned without splitting. */
+        private final int _size;
+    }
+
+    /** Return the pool of WORKERS threads (at most MAX_WORKERS) shared
+     *  by all parallel scans with that many workers. */
+    static ForkJoinPool pool(int workers) {
+        return POOLS.computeIfAbsent(Math.min(workers, MAX_WORKERS),
+                                     ForkJoinPool::new);
+    }
+
+    /** Number of tasks into which the blocks are divided per worker, so
+     *  that workers finishing early can steal from the others. */
+    private static final int TASKS_PER_WORKER = 4;
+    /** Largest number of threads in a pool. */
+    private static final int MAX_WORKERS = 256;
+    /** Thread pools, by number of threads. */
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS =
+        new ConcurrentHashMap<>();
+
+    /** The table scanned. */
+    private final Table _table;
+    /** Numbers of the blocks of _table scanned. */
+    private final int[] _blocks;
+    /** Conditions selecting rows. */
+    private final List<Condition> _conditions;
+    /** Columns projected from the selected rows. */
+    private final List<Column> _columns;
+    /** Number of threads. */
+    private final int _workers;
+    /** Distinct projected rows. */
+    private final Set<Row> _result = ConcurrentHashMap.newKeySet();
+    /** Numbers of rows read and satisfying _conditions. */
+    private final LongAdder _read = new LongAdder(),
+        _passed = new LongAdder();
+}
@@ -0,0 +1,843 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static db61b.Utils.*;
+
+/** A plan, chosen by a Planner, for producing the rows of one or two
+ *  tables that satisfy a select clause's conditions.  A plan either
+ *  scans a single table, or joins an outer table with an inner one,
+ *  either by rescanning the inner table for each outer row (a nested
+ *  loop join) or by building a hash table over the inner table's join
+ *  keys and probing it with those of each outer row (a hash join).
+ *  Given a HashIndex whose key is fixed by equalities, a plan instead
+ *  looks up just the matching rows of its only table (an index scan) or
+ *  of its inner table for each outer row (an index join).  Given a
+ *  TrieIndex, a plan looks up the rows of its only table whose value
+ *  has a prefix (a trie scan).  Given a disjunction (an or or an in)
+ *  each of whose alternatives an index can look up, a plan reads the
+ *  union of the rows found (an index union).  When the
+ *  inner table is clustered by a column that the join equates with a
+ *  column of the outer table, a plan may instead find the inner rows
+ *  for each outer row by binary search (a cluster join), which, when
+ *  the outer rows come in order of that column, amounts to a merge of
+ *  the two tables.  Conditions
+ *  are evaluated as early as possible: those on one table before
+ *  pairing its rows with any other, and the rest on each pair.
+ *  @author Jiaxin Huang
+ */
+class Plan {
+
+    /** Names of the available algorithms. */
+    static final String
+        SCAN = "scan", NESTED_LOOP = "nested loop join",
+        HASH_JOIN = "hash join", INDEX_SCAN = "index scan",
+        INDEX_JOIN = "index join", CLUSTER_JOIN = "cluster join",
+        TRIE_SCAN = "trie scan", INDEX_UNION = "index union";
+
+    /** One lookup of a trie scan or index union: of a key in a
+     *  HashIndex, or of a prefix in a TrieIndex. */
+    static class Lookup {
+
+        /** A lookup in INDEX of the key whose values are those of KEY, a
+         *  list of Literals, in the order of INDEX's columns. */
+        Lookup(HashIndex index, List<Column> key) {
+            _index = index;
+            _key = key;
+        }
+
+        /** A lookup in TRIE of the values beginning with PREFIX, or if
+         *  EXACT, equal to it. */
+        Lookup(TrieIndex trie, String prefix, boolean exact) {
+            _trie = trie;
+            _prefix = prefix;
+            _exact = exact;
+        }
+
+        /** Return the name of my index. */
+        String indexName() {
+            return _index != null ? _index.name() : _trie.name();
+        }
+
+        /** Return the positions of the rows found, in increasing
+         *  order. */
+        int[] positions() {
+            if (_trie != null) {
+                return _trie.lookup(_prefix, _exact);
+            }
+            HashIndex.Positions found = _index.lookup(Row.make(_key));
+            int[] result = new int[found.size()];
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = found.get(k);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            if (_trie != null) {
+                return format("%s %s '%s'", _trie, _exact ? "=" : "prefix",
+                              _prefix);
+            }
+            return format("%s = (%s)", _index, joinColumns(_key));
+        }
+
+        /** The hash index, or null. */
+        private HashIndex _index;
+        /** The key looked up in _index. */
+        private List<Column> _key;
+        /** The trie index, or null. */
+        private TrieIndex _trie;
+        /** The prefix looked up in _trie. */
+        private String _prefix;
+        /** True iff the values looked up in _trie must equal _prefix. */
+        private boolean _exact;
+    }
+
+    /** A plan that scans OUTER, selecting rows that satisfy CONDITIONS, in
+     *  the order given, of which about ROWS are expected. */
+    Plan(TableIterator outer, List<Condition> conditions, double rows) {
+        this(SCAN, outer, null, conditions, new ArrayList<Condition>(),
+             new ArrayList<Condition>(), rows);
+    }
+
+    /** A plan that joins OUTER and INNER with ALGORITHM, selecting pairs
+     *  of rows in which OUTER's row satisfies OUTERCONDITIONS, INNER's row
+     *  satisfies INNERCONDITIONS, and the two satisfy JOINCONDITIONS
+     *  (each evaluated in the order given), of which about ROWS are
+     *  expected.  For a hash join, JOINCONDITIONS must start with at
+     *  least one equality between a column of OUTER and one of INNER. */
+    Plan(String algorithm, TableIterator outer, TableIterator inner,
+         List<Condition> outerConditions, List<Condition> innerConditions,
+         List<Condition> joinConditions, double rows) {
+        _algorithm = algorithm;
+        _outer = outer;
+        _inner = inner;
+        _outerConditions = outerConditions;
+        _innerConditions = innerConditions;
+        _joinConditions = joinConditions;
+        _rows = rows;
+        for (Condition cond : joinConditions) {
+            if (!cond.isEquiJoin()) {
+                break;
+            }
+            _keys += 1;
+        }
+        if (algorithm.equals(HASH_JOIN) && _keys == 0) {
+            throw error("hash join requires an equality condition");
+        }
+    }
+
+    /** Scan my only table, or perform my hash join, with WORKERS
+     *  threads, on the understanding that the rows I produce may be
+     *  delivered in any order and with duplicates removed.  Nested loop
+     *  joins and index lookups remain serial.  A parallel hash join
+     *  needs no semi-join filter, since partitioning already confines
+     *  each outer row to the inner rows that might match it. */
+    void parallelize(int workers) {
+        if (_algorithm.equals(SCAN) || _algorithm.equals(HASH_JOIN)) {
+            _workers = workers;
+            _semiJoin = false;
+        }
+    }
+
+    /** Look up the rows of my only table (for an index scan) or of my
+     *  inner table (for an index join) in INDEX, which is on that
+     *  table's columns, by the key whose values are the current values
+     *  of KEY, in the order of INDEX's columns.  KEY contains Literals
+     *  and, for a join, columns of my outer table, and the rows found
+     *  must still satisfy my conditions. */
+    void useIndex(HashIndex index, List<Column> key) {
+        if (!_algorithm.equals(INDEX_SCAN) && !_algorithm.equals(INDEX_JOIN)) {
+            throw error("%s does not use an index", _algorithm);
+        }
+        _index = index;
+        _indexKey = key;
+    }
+
+    /** Read the rows of my only table found by LOOKUPS, in indexes on
+     *  that table: one trie lookup for a trie scan, or any number for an
+     *  index union, which reads each row found by several only once.
+     *  The rows found must still satisfy my conditions. */
+    void useLookups(List<Lookup> lookups) {
+        if (!_algorithm.equals(TRIE_SCAN)
+            && !_algorithm.equals(INDEX_UNION)) {
+            throw error("%s does not use lookups", _algorithm);
+        }
+        _lookups = lookups;
+    }
+
+    /** Find the rows of my inner table, which must be clustered, whose
+     *  cluster key is the current value of KEY, a column of my outer
+     *  table, by binary search (for a cluster join). */
+    void useClusterKey(Column key) {
+        if (!_algorithm.equals(CLUSTER_JOIN)) {
+            throw error("%s does not use a cluster key", _algorithm);
+        }
+        _clusterKey = key;
+    }
+
+    /** Screen the rows of my outer table with a Bloom filter over the join
+     *  keys of the rows of my inner table that satisfy its conditions. */
+    void useSemiJoinFilter() {
+        _semiJoin = true;
+    }
+
+    /** Return my algorithm. */
+    String algorithm() {
+        return _algorithm;
+    }
+
+    /** Return my outer (or only) table. */
+    TableIterator outer() {
+        return _outer;
+    }
+
+    /** Return my inner table, or null if I scan one table. */
+    TableIterator inner() {
+        return _inner;
+    }
+
+    /** Return the estimated number of rows I produce. */
+    double rows() {
+        return _rows;
+    }
+
+    /** Return the number of rows my last execution read from my tables,
+     *  counting each rescan of an inner table. */
+    long rowsScanned() {
+        return _outerRows + _innerRows;
+    }
+
+    /** Return the number of rows my last execution produced. */
+    long rowsProduced() {
+        return _output;
+    }
+
+    /** Send COLUMNS of each combination of rows I select to SINK, until
+     *  it wants no more. */
+    void execute(List<Column> columns, RowSink sink) {
+        prune(_outer, _outerConditions);
+        _filter = null;
+        _outerRows = _outerPassed = _innerRows = _innerPassed = 0;
+        _pairs = _output = 0;
+        _partitions = 0;
+        if (_inner == null && _workers > 1) {
+            parallelScan(columns, sink);
+        } else if (_algorithm.equals(INDEX_SCAN)) {
+            indexScan(columns, sink);
+        } else if (_lookups != null) {
+            lookupScan(columns, sink);
+        } else if (_inner == null) {
+            _outer.reset();
+            scan(columns, sink);
+        } else {
+            _outer.reset();
+            prune(_inner, _innerConditions);
+            _inner.reset();
+            if (_semiJoin) {
+                _filter = new SemiJoinFilter(_inner, _outer, innerKeys(),
+                                             outerKeys(), _innerConditions);
+            }
+            if (_algorithm.equals(HASH_JOIN) && _workers > 1) {
+                parallelHashJoin(columns, sink);
+            } else if (_algorithm.equals(HASH_JOIN)) {
+                hashJoin(columns, sink);
+            } else if (_algorithm.equals(INDEX_JOIN)) {
+                indexJoin(columns, sink);
+            } else if (_algorithm.equals(CLUSTER_JOIN)) {
+                clusterJoin(columns, sink);
+            } else {
+                nestedLoopJoin(columns, sink);
+            }
+        }
+        Metrics.scan(rowsScanned(), _pairs, rowsProduced());
+        sink.finish();
+    }
+
+    /** Report to ADVISOR the index my last execution used, if any, and
+     *  each table it scanned, with the columns fixed by equalities that
+     *  an index would need to replace the scan, the rows read, and the
+     *  rows that were needed: those passing a single table's conditions,
+     *  and for the inner table of a join, at most the rows produced. */
+    void advise(IndexAdvisor advisor) {
+        if (_index != null) {
+            advisor.used(_index);
+        }
+        if (_lookups != null) {
+            for (Lookup lookup : _lookups) {
+                if (lookup._index != null) {
+                    advisor.used(lookup._index);
+                }
+            }
+        }
+        if (!_algorithm.equals(INDEX_SCAN) && _lookups == null) {
+            advisor.scanned(_outer.table(),
+                            Planner.fixedColumns(_outer, _outerConditions,
+                                                 null),
+                            _outerRows, _outerPassed);
+        }
+        if (_inner != null && !_algorithm.equals(INDEX_JOIN)
+            && !_algorithm.equals(CLUSTER_JOIN)) {
+            List<Condition> conditions = new ArrayList<>(_innerConditions);
+            conditions.addAll(_joinConditions);
+            advisor.scanned(_inner.table(),
+                            Planner.fixedColumns(_inner, conditions, _outer),
+                            _innerRows, Math.min(_innerRows, _output));
+        }
+    }
+
+    /** Return a description of my operators, which send COLUMNS of the
+     *  rows they select onward, for explain.  Iff EXECUTED, include the
+     *  numbers of rows each handled in my last execution. */
+    Profiler.Node explain(List<Column> columns, boolean executed) {
+        Profiler.Node source =
+            access(_outer, _inner == null ? _index : null, _workers,
+                   _outerConditions, _outerRows, _outerPassed, executed);
+        if (_inner != null) {
+            if (_semiJoin) {
+                source = new Profiler.Node(
+                    format("semi-join filter on keys of %s",
+                           _inner.table().name()), source);
+                if (executed) {
+                    source.rows(_outerPassed, _filter.passed());
+                }
+            }
+            Profiler.Node inner =
+                access(_inner, _index, _workers, _innerConditions,
+                       _innerRows, _innerPassed, executed);
+            String algorithm = _algorithm;
+            if (_workers > 1) {
+                algorithm = format("parallel %s with %d workers", algorithm,
+                                   _workers);
+                if (executed) {
+                    algorithm += format(" in %d partitions", _partitions);
+                }
+            }
+            String on = _joinConditions.isEmpty() ? ""
+                : " on " + join(_joinConditions);
+            Profiler.Node joined =
+                new Profiler.Node(algorithm + on, source, inner);
+            if (executed) {
+                joined.rows(source.rowsOut() + inner.rowsOut(), _output);
+            }
+            source = joined;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        for (Column col : columns) {
+            names.add(col.toString());
+        }
+        Profiler.Node result =
+            new Profiler.Node(format("project %s (est. %.0f rows)",
+                                     String.join(", ", names), _rows),
+                              source);
+        if (executed) {
+            result.rows(_output, _output);
+        }
+        return result;
+    }
+
+    /** Return a description of the scan of ITERATOR by WORKERS threads,
+     *  or of its lookup in INDEX if that is non-null, and of the
+     *  filtering of its rows by CONDITIONS.  Iff EXECUTED, include the
+     *  numbers of rows READ and PASSED by the filter. */
+    private Profiler.Node access(TableIterator iterator, HashIndex index,
+                                 int workers, List<Condition> conditions,
+                                 long read, long passed,
+                                 boolean executed) {
+        String scan = "scan " + iterator.table().name();
+        if (index != null) {
+            scan = format("index lookup %s using %s = (%s)",
+                          iterator.table().name(), index,
+                          joinColumns(_indexKey));
+        } else if (iterator == _outer && _algorithm.equals(TRIE_SCAN)) {
+            scan = format("trie lookup %s using %s", iterator.table().name(),
+                          _lookups.get(0));
+        } else if (iterator == _outer && _lookups != null) {
+            ArrayList<String> shown = new ArrayList<>();
+            for (Lookup lookup : _lookups) {
+                if (shown.size() == MAX_LOOKUPS_SHOWN) {
+                    shown.add("...");
+                    break;
+                }
+                shown.add(lookup.toString());
+            }
+            scan = format("index union %s of %d lookups: %s",
+                          iterator.table().name(), _lookups.size(),
+                          String.join(" | ", shown));
+        } else if (iterator == _inner && _clusterKey != null) {
+            Table table = iterator.table();
+            scan = format("binary search %s on %s = %s", table.name(),
+                          table.title(table.clusterColumn()), _clusterKey);
+        } else if (workers > 1) {
+            scan = format("parallel %s with %d workers", scan, workers);
+        }
+        if (executed && iterator.rowsSkipped() > 0) {
+            scan += format(", binary search skipping %d rows",
+                           iterator.rowsSkipped());
+        }
+        if (executed && iterator.blocksSkipped() > 0) {
+            scan += format(", skipping %d blocks", iterator.blocksSkipped());
+        }
+        Profiler.Node result = new Profiler.Node(scan);
+        if (executed) {
+            result.rows(-1, read);
+        }
+        if (!conditions.isEmpty()) {
+            result = new Profiler.Node("filter " + join(conditions), result);
+            if (executed) {
+                result.rows(read, passed);
+            }
+        }
+        return result;
+    }
+
+    /** Return descriptions of the steps of the last execution, such as
+     *  the blocks of rows skipped and rows filtered out, for diagnostic
+     *  output. */
+    List<String> diagnostics() {
+        ArrayList<String> result = new ArrayList<>();
+        if (_filter != null) {
+            result.add(_filter.describe());
+        }
+        for (TableIterator it : new TableIterator[] { _outer, _inner }) {
+            if (it != null && it.rowsSkipped() > 0) {
+                result.add(format("binary search on the cluster key of %s "
+                                  + "skipped %d rows in %d scans",
+                                  it.table().name(), it.rowsSkipped(),
+                                  it.scans()));
+            }
+            if (it != null && it.blocksSkipped() > 0) {
+                result.add(format("zone maps skipped %d blocks in %d scans "
+                                  + "of %s (%d blocks)",
+                                  it.blocksSkipped(), it.scans(),
+                                  it.table().name(),
+                                  it.table().zoneMap().blocks()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        String with = _workers > 1 ? " with " + _workers + " workers"
+            : _index != null ? " using " + _index.name()
+            : _lookups != null ? " using " + lookupIndexes() : "";
+        if (_inner == null) {
+            return format("%s %s%s%s (est. %.0f rows)", _algorithm,
+                          _outer.table().name(),
+                          where(_outerConditions), with, _rows);
+        }
+        return format("%s of %s%s with %s%s%s%s%s (est. %.0f rows)",
+                      _algorithm, _outer.table().name(),
+                      where(_outerConditions), _inner.table().name(),
+                      where(_innerConditions),
+                      _joinConditions.isEmpty() ? "" : " on ",
+                      join(_joinConditions), with, _rows);
+    }
+
+    /** Return the names of the indexes of my lookups, each once,
+     *  separated by commas. */
+    private String lookupIndexes() {
+        ArrayList<String> names = new ArrayList<>();
+        for (Lookup lookup : _lookups) {
+            if (!names.contains(lookup.indexName())) {
+                names.add(lookup.indexName());
+            }
+        }
+        return String.join(", ", names);
+    }
+
+    /** Return COLUMNS, separated by commas. */
+    private static String joinColumns(List<Column> columns) {
+        ArrayList<String> result = new ArrayList<>();
+        for (Column col : columns) {
+            result.add(col.toString());
+        }
+        return String.join(", ", result);
+    }
+
+    /** Return " where " followed by CONDITIONS, or the empty string if
+     *  there are none. */
+    private static String where(List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            return "";
+        }
+        return " where " + join(conditions);
+    }
+
+    /** Return CONDITIONS, separated by 'and'. */
+    private static String join(List<Condition> conditions) {
+        StringBuilder result = new StringBuilder();
+        for (Condition cond : conditions) {
+            if (result.length() > 0) {
+                result.append(" and ");
+            }
+            result.append(cond);
+        }
+        return result.toString();
+    }
+
+    /** Restrict ITERATOR to the blocks of rows that might satisfy those
+     *  of CONDITIONS that compare one of its columns to a literal or test
+     *  it with an in.  Takes effect at its next reset. */
+    private static void prune(TableIterator iterator,
+                              List<Condition> conditions) {
+        List<Condition> literal = new ArrayList<>();
+        for (Condition cond : conditions) {
+            if (cond.left().source() == iterator
+                && (cond.right() instanceof Literal
+                    || cond.relation().equals(Condition.IN))) {
+                literal.add(cond);
+            }
+        }
+        iterator.prune(literal);
+    }
+
+    /** Return the columns of my outer table in my join keys. */
+    private List<Column> outerKeys() {
+        ArrayList<Column> result = new ArrayList<>();
+        for (Condition cond : _joinConditions.subList(0, _keys)) {
+            result.add(cond.left().source() == _outer
+                       ? cond.left() : cond.right());
+        }
+        return result;
+    }
+
+    /** Return the columns of my inner table in my join keys. */
+    private List<Column> innerKeys() {
+        ArrayList<Column> result = new ArrayList<>();
+        for (Condition cond : _joinConditions.subList(0, _keys)) {
+            result.add(cond.left().source() == _inner
+                       ? cond.left() : cond.right());
+        }
+        return result;
+    }
+
+    /** Return true iff the current row of my outer table satisfies its
+     *  conditions and may pass my semi-join filter. */
+    private boolean outerQualifies() {
+        _outerRows += 1;
+        if (!Condition.test(_outerConditions)) {
+            return false;
+        }
+        _outerPassed += 1;
+        return _filter == null || _filter.mightMatch();
+    }
+
+    /** Return true iff the current row of my inner table satisfies its
+     *  conditions. */
+    private boolean innerQualifies() {
+        _innerRows += 1;
+        if (!Condition.test(_innerConditions)) {
+            return false;
+        }
+        _innerPassed += 1;
+        return true;
+    }
+
+    /** Return true iff the current pair of rows satisfies CONDITIONS, which
+     *  are among my join conditions. */
+    private boolean pairQualifies(List<Condition> conditions) {
+        _pairs += 1;
+        return Condition.test(conditions);
+    }
+
+    /** Send COLUMNS of the current row or pair of rows to SINK.  Return
+     *  false iff it wants no more. */
+    private boolean output(List<Column> columns, RowSink sink) {
+        _output += 1;
+        return sink.accept(columns);
+    }
+
+    /** Send COLUMNS of the rows of my only table that satisfy its
+     *  conditions to SINK, until it wants no more. */
+    private void scan(List<Column> columns, RowSink sink) {
+        while (_outer.hasRow()) {
+            _outerRows += 1;
+            if (Condition.test(_outerConditions)) {
+                _outerPassed += 1;
+                if (!output(columns, sink)) {
+                    return;
+                }
+            }
+            _outer.next();
+        }
+    }
+
+    /** Send COLUMNS of the rows of my only table that satisfy its
+     *  conditions to SINK, until it wants no more, scanning the table's
+     *  blocks in parallel with _workers threads and removing duplicates
+     *  before sending any. */
+    private void parallelScan(List<Column> columns, RowSink sink) {
+        ParallelScan scan =
+            new ParallelScan(_outer.table(), _outer.blocksToScan(),
+                             _outerConditions, columns, _workers);
+        Set<Row> rows = scan.run();
+        _outerRows = scan.rowsRead();
+        _outerPassed = scan.rowsPassed();
+        for (Row row : rows) {
+            _output += 1;
+            if (!sink.accept(row)) {
+                return;
+            }
+        }
+    }
+
+    /** Send COLUMNS of the qualifying pairs of rows of my tables to SINK,
+     *  until it wants no more, by a radix-partitioned hash join with
+     *  _workers threads, removing duplicates before sending any. */
+    private void parallelHashJoin(List<Column> columns, RowSink sink) {
+        ParallelHashJoin.Side
+            outer = new ParallelHashJoin.Side(_outer, _outerConditions,
+                                              outerKeys()),
+            inner = new ParallelHashJoin.Side(_inner, _innerConditions,
+                                              innerKeys());
+        ParallelHashJoin join =
+            new ParallelHashJoin(outer, inner,
+                                 _joinConditions.subList(_keys,
+                                                         _joinConditions
+                                                         .size()),
+                                 columns, _workers);
+        Set<Row> rows = join.run();
+        _outerRows = outer.rowsRead();
+        _outerPassed = outer.rowsPassed();
+        _innerRows = inner.rowsRead();
+        _innerPassed = inner.rowsPassed();
+        _pairs = join.pairs();
+        _partitions = join.partitions();
+        for (Row row : rows) {
+            _output += 1;
+            if (!sink.accept(row)) {
+                return;
+            }
+        }
+    }
+
+    /** Send COLUMNS of the rows of my only table that satisfy its
+     *  conditions to SINK, until it wants no more, reading only the rows
+     *  that _index finds for _indexKey. */
+    private void indexScan(List<Column> columns, RowSink sink) {
+        HashIndex.Positions positions = _index.lookup(Row.make(_indexKey));
+        for (int k = 0; k < positions.size(); k += 1) {
+            if (!_outer.seek(positions.get(k))) {
+                continue;
+            }
+            _outerRows += 1;
+            if (Condition.test(_outerConditions)) {
+                _outerPassed += 1;
+                if (!output(columns, sink)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Send COLUMNS of the rows of my only table that satisfy its
+     *  conditions to SINK, until it wants no more, reading only the rows
+     *  that _lookups find, each once, in order of position. */
+    private void lookupScan(List<Column> columns, RowSink sink) {
+        int[] positions = _lookups.get(0).positions();
+        if (_lookups.size() > 1) {
+            int size = positions.length;
+            for (Lookup lookup : _lookups.subList(1, _lookups.size())) {
+                int[] more = lookup.positions();
+                if (size + more.length > positions.length) {
+                    positions =
+                        Arrays.copyOf(positions,
+                                      Math.max(2 * positions.length,
+                                               size + more.length));
+                }
+                System.arraycopy(more, 0, positions, size, more.length);
+                size += more.length;
+            }
+            Arrays.sort(positions, 0, size);
+            int distinct = 0;
+            for (int k = 0; k < size; k += 1) {
+                if (k == 0 || positions[k] != positions[k - 1]) {
+                    positions[distinct] = positions[k];
+                    distinct += 1;
+                }
+            }
+            positions = Arrays.copyOf(positions, distinct);
+        }
+        for (int position : positions) {
+            if (!_outer.seek(position)) {
+                continue;
+            }
+            _outerRows += 1;
+            if (Condition.test(_outerConditions)) {
+                _outerPassed += 1;
+                if (!output(columns, sink)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Send COLUMNS of the qualifying pairs of rows of my tables to SINK,
+     *  until it wants no more, by looking up in _index the rows of my
+     *  inner table whose key is given by _indexKey for each qualifying
+     *  row of my outer table.  The key is gathered into one reused Row,
+     *  as in hashJoin. */
+    private void indexJoin(List<Column> columns, RowSink sink) {
+        String[] probe = new String[_indexKey.size()];
+        Row probeKey = new Row(probe);
+        while (_outer.hasRow()) {
+            if (outerQualifies()) {
+                for (int k = 0; k < probe.length; k += 1) {
+                    probe[k] = _indexKey.get(k).value();
+                }
+                HashIndex.Positions positions = _index.lookup(probeKey);
+                for (int k = 0; k < positions.size(); k += 1) {
+                    if (_inner.seek(positions.get(k)) && innerQualifies()
+                        && pairQualifies(_joinConditions)
+                        && !output(columns, sink)) {
+                        return;
+                    }
+                }
+            }
+            _outer.next();
+        }
+    }
+
+    /** Send COLUMNS of the qualifying pairs of rows of my tables to SINK,
+     *  until it wants no more, by searching my inner table for the rows
+     *  whose cluster key is the value of _clusterKey in each qualifying
+     *  row of my outer table. */
+    private void clusterJoin(List<Column> columns, RowSink sink) {
+        while (_outer.hasRow()) {
+            if (outerQualifies()) {
+                _inner.reset(_clusterKey.value());
+                while (_inner.hasRow()) {
+                    if (innerQualifies()
+                        && pairQualifies(_joinConditions)
+                        && !output(columns, sink)) {
+                        return;
+                    }
+                    _inner.next();
+                }
+            }
+            _outer.next();
+        }
+    }
+
+    /** Send COLUMNS of the qualifying pairs of rows of my tables to SINK,
+     *  until it wants no more, by rescanning my inner table for each row
+     *  of my outer table. */
+    private void nestedLoopJoin(List<Column> columns, RowSink sink) {
+        while (_outer.hasRow()) {
+            if (outerQualifies()) {
+                _inner.reset();
+                while (_inner.hasRow()) {
+                    if (innerQualifies()
+                        && pairQualifies(_joinConditions)
+                        && !output(columns, sink)) {
+                        return;
+                    }
+                    _inner.next();
+                }
+            }
+            _outer.next();
+        }
+    }
+
+    /** Send COLUMNS of the qualifying pairs of rows of my tables to SINK,
+     *  until it wants no more, by probing a hash table of the positions
+     *  of my inner table's qualifying rows, indexed by their join keys,
+     *  with the keys of my outer table's rows, which are gathered into
+     *  one reused key, since a lookup does not keep its key. */
+    private void hashJoin(List<Column> columns, RowSink sink) {
+        List<Column> innerKeys = innerKeys(), outerKeys = outerKeys();
+        List<Condition> residual =
+            _joinConditions.subList(_keys, _joinConditions.size());
+        HashMap<Row, ArrayList<Integer>> table = new HashMap<>();
+        while (_inner.hasRow()) {
+            if (innerQualifies()) {
+                Row key = Row.make(innerKeys);
+                ArrayList<Integer> matches = table.get(key);
+                if (matches == null) {
+                    matches = new ArrayList<>(1);
+                    table.put(key, matches);
+                }
+                matches.add(_inner.position());
+            }
+            _inner.next();
+        }
+        String[] probe = new String[outerKeys.size()];
+        Row probeKey = new Row(probe);
+        while (_outer.hasRow()) {
+            if (outerQualifies()) {
+                for (int k = 0; k < probe.length; k += 1) {
+                    probe[k] = outerKeys.get(k).value();
+                }
+                ArrayList<Integer> matches = table.get(probeKey);
+                if (matches != null) {
+                    for (int position : matches) {
+                        _inner.seek(position);
+                        if (pairQualifies(residual)
+                            && !output(columns, sink)) {
+                            return;
+                        }
+                    }
+                }
+            }
+            _outer.next();
+        }
+    }
+
+    /** Largest number of the lookups of an index union that explain
+     *  lists. */
+    private static final int MAX_LOOKUPS_SHOWN = 3;
+
+    /** My algorithm. */
+    private final String _algorithm;
+    /** My outer (or only) table. */
+    private final TableIterator _outer;
+    /** My inner table, or null. */
+    private final TableIterator _inner;
+    /** Conditions on the rows of _outer alone. */
+    private final List<Condition> _outerConditions;
+    /** Conditions on the rows of _inner alone. */
+    private final List<Condition> _innerConditions;
+    /** Conditions on pairs of rows, starting with the join keys. */
+    private final List<Condition> _joinConditions;
+    /** Number of leading equality conditions in _joinConditions. */
+    private int _keys;
+    /** Estimated number of rows produced. */
+    private final double _rows;
+    /** True iff rows of _outer are screened by a semi-join filter. */
+    private boolean _semiJoin;
+    /** The semi-join filter of the current execution, or null. */
+    private SemiJoinFilter _filter;
+    /** Numbers of rows of _outer read and satisfying its conditions in
+     *  the current execution. */
+    private long _outerRows, _outerPassed;
+    /** Numbers of rows of _inner read and satisfying its conditions in
+     *  the current execution. */
+    private long _innerRows, _innerPassed;
+    /** The index used by an index scan or join, or null. */
+    private HashIndex _index;
+    /** The columns whose current values form the key looked up in
+     *  _index, or null. */
+    private List<Column> _indexKey;
+    /** The lookups of a trie scan or index union, or null. */
+    private List<Lookup> _lookups;
+    /** The column of _outer whose current value is searched for among
+     *  the cluster keys of _inner by a cluster join, or null. */
+    private Column _clusterKey;
+    /** Number of threads scanning my only table or performing my hash
+     *  join, if more than 1. */
+    private int _workers = 1;
+    /** Number of partitions of my last parallel hash join. */
+    private int _partitions;
+    /** Number of pairs of rows tested against join conditions in the
+     *  current execution. */
+    private long _pairs;
+    /** Number of rows produced by the current execution. */
+    private long _output;
+}
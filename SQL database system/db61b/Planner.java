@@ -0,0 +1,450 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Chooses a Plan for selecting the rows of one or two tables that
+ *  satisfy a list of conditions.  The planner estimates how many rows
+ *  each condition lets through, using the TableStats of tables that have
+ *  been analyzed and fixed guesses otherwise, and then
+ *    - evaluates the conditions on each table before pairing its rows,
+ *      most selective first;
+ *    - for a join, estimates the cost of a nested loop join and (given
+ *      an equality between the tables) of a hash join with each table as
+ *      the outer one, and picks the cheapest, which for a hash join makes
+ *      the table with fewer qualifying rows the build (inner) side; and
+ *    - screens the outer table of a join with a semi-join filter when
+ *      the inner table's own conditions are expected to eliminate most
+ *      of its rows; and
+ *    - looks up rows in a HashIndex whose key is fixed by equalities
+ *      with literals (and, for the inner table of a join, with columns
+ *      of the outer table): always for a single table, and for a join
+ *      when the estimated cost of a lookup per qualifying outer row is
+ *      lowest;
+ *    - otherwise, for a single table, reads the union of the rows that
+ *      indexes find for each alternative of an or or an in, if there
+ *      are indexes for all of them, or looks up its rows in a TrieIndex
+ *      whose column is equated with a literal or matched by a like
+ *      pattern that starts with a prefix; and
+ *    - searches a clustered table for the rows whose cluster key a
+ *      join equates with a column of the other table, when the
+ *      estimated cost of a binary search per qualifying outer row (or
+ *      of a merge, if the outer table is clustered by that column) is
+ *      lowest.
+ *  @author Jiaxin Huang
+ */
+class Planner {
+
+    /** Return a plan for selecting the rows of ITERATORS (one or two
+     *  tables) that satisfy CONDITIONS, whose columns must be resolved
+     *  against ITERATORS. */
+    static Plan plan(List<TableIterator> iterators,
+                     List<Condition> conditions) {
+        if (iterators.size() > 2) {
+            throw new DBException("You can't have more than two tables!");
+        }
+        TableIterator t1 = iterators.get(0);
+        List<Condition> local1 = localConditions(t1, conditions);
+        double rows1 = t1.table().live() * selectivity(local1);
+        if (iterators.size() == 1) {
+            HashIndex index = bestIndex(t1, local1, null);
+            if (index == null) {
+                return lookupScan(t1, local1, rows1);
+            }
+            Plan plan = new Plan(Plan.INDEX_SCAN, t1, null, local1,
+                                 new ArrayList<Condition>(),
+                                 new ArrayList<Condition>(), rows1);
+            plan.useIndex(index, indexKey(index, t1, local1, null));
+            return plan;
+        }
+
+        TableIterator t2 = iterators.get(1);
+        List<Condition> local2 = localConditions(t2, conditions);
+        double rows2 = t2.table().live() * selectivity(local2);
+        List<Condition> join = new ArrayList<>(conditions);
+        join.removeAll(local1);
+        join.removeAll(local2);
+        orderJoinConditions(join);
+        double rows = rows1 * rows2 * selectivity(join);
+        boolean equiJoin = !join.isEmpty() && join.get(0).isEquiJoin();
+
+        double size1 = t1.table().size(), size2 = t2.table().size();
+        Plan best = new Plan(Plan.NESTED_LOOP, t1, t2, local1, local2,
+                             join, rows);
+        double bestCost = size1 + rows1 * size2;
+        double cost = size2 + rows2 * size1;
+        if (cost < bestCost) {
+            best = new Plan(Plan.NESTED_LOOP, t2, t1, local2, local1,
+                            join, rows);
+            bestCost = cost;
+        }
+        if (equiJoin) {
+            cost = size1 + size2 + HASH_COST * (rows1 + rows2);
+            if (cost < bestCost) {
+                if (rows2 <= rows1) {
+                    best = new Plan(Plan.HASH_JOIN, t1, t2, local1, local2,
+                                    join, rows);
+                } else {
+                    best = new Plan(Plan.HASH_JOIN, t2, t1, local2, local1,
+                                    join, rows);
+                }
+                bestCost = cost;
+            }
+            TableIterator inner = best.inner();
+            double innerRows = inner == t1 ? rows1 : rows2;
+            if (innerRows < SEMI_JOIN_FRACTION * inner.table().live()) {
+                best.useSemiJoinFilter();
+            }
+        }
+        TableIterator[] tables = { t1, t2 };
+        List<List<Condition>> locals = List.of(local1, local2);
+        double[] qualifying = { rows1, rows2 };
+        for (int o = 0; o < 2; o += 1) {
+            TableIterator outer = tables[o], inner = tables[1 - o];
+            List<Condition> candidates = new ArrayList<>(locals.get(1 - o));
+            candidates.addAll(join);
+            HashIndex index = bestIndex(inner, candidates, outer);
+            if (index == null) {
+                continue;
+            }
+            double matches =
+                (double) inner.table().size() / Math.max(1, index.keys());
+            cost = outer.table().size()
+                + qualifying[o] * (HASH_COST + matches);
+            if (cost < bestCost) {
+                best = new Plan(Plan.INDEX_JOIN, outer, inner, locals.get(o),
+                                locals.get(1 - o), join, rows);
+                best.useIndex(index, indexKey(index, inner, candidates,
+                                              outer));
+                bestCost = cost;
+            }
+        }
+        for (int o = 0; o < 2; o += 1) {
+            TableIterator outer = tables[o], inner = tables[1 - o];
+            Table table = inner.table();
+            if (table.clusterColumn() < 0) {
+                continue;
+            }
+            for (Condition cond : join) {
+                Column key = cond.relation().equals("=")
+                    ? equated(cond, inner, table.clusterColumn(), outer)
+                    : null;
+                if (key == null || key.source() != outer) {
+                    continue;
+                }
+                Table keyTable = outer.table();
+                double search =
+                    keyTable.clusterColumn() == outer.columnIndex(key.name())
+                    ? 1 : Math.log(table.sortedRows() + 2) / Math.log(2);
+                cost = keyTable.size()
+                    + qualifying[o] * (search + table.size()
+                                       * selectivity(cond)
+                                       + table.size() - table.sortedRows());
+                if (cost < bestCost) {
+                    best = new Plan(Plan.CLUSTER_JOIN, outer, inner,
+                                    locals.get(o), locals.get(1 - o),
+                                    join, rows);
+                    best.useClusterKey(key);
+                    bestCost = cost;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return a plan selecting the rows of ITERATOR that satisfy
+     *  CONDITIONS, of which about ROWS are expected: an index union if
+     *  one of CONDITIONS is an or or an in each of whose alternatives
+     *  some index can look up (see lookup), and which has at least one
+     *  but no more alternatives than the table has rows, or else a trie
+     *  scan if trieLookup finds a lookup for CONDITIONS, and otherwise a
+     *  scan. */
+    private static Plan lookupScan(TableIterator iterator,
+                                   List<Condition> conditions,
+                                   double rows) {
+        List<Plan.Lookup> lookups = null;
+        String algorithm = Plan.INDEX_UNION;
+        for (Condition cond : conditions) {
+            List<List<Condition>> alternatives = cond.alternatives();
+            if (lookups != null || alternatives == null
+                || alternatives.isEmpty()
+                || alternatives.size() > iterator.table().size()) {
+                continue;
+            }
+            lookups = new ArrayList<>();
+            for (List<Condition> alternative : alternatives) {
+                Plan.Lookup lookup = lookup(iterator, alternative);
+                if (lookup == null) {
+                    lookups = null;
+                    break;
+                }
+                lookups.add(lookup);
+            }
+        }
+        if (lookups == null) {
+            Plan.Lookup lookup = trieLookup(iterator, conditions);
+            if (lookup == null) {
+                return new Plan(iterator, conditions, rows);
+            }
+            lookups = List.of(lookup);
+            algorithm = Plan.TRIE_SCAN;
+        }
+        Plan plan = new Plan(algorithm, iterator, null, conditions,
+                             new ArrayList<Condition>(),
+                             new ArrayList<Condition>(), rows);
+        plan.useLookups(lookups);
+        return plan;
+    }
+
+    /** Return a lookup, in a hash index or trie index on the table of
+     *  ITERATOR, of rows among which are all those satisfying
+     *  CONDITIONS, preferring the hash index whose key they fix having
+     *  the most columns, or null if there is none. */
+    private static Plan.Lookup lookup(TableIterator iterator,
+                                      List<Condition> conditions) {
+        HashIndex index = bestIndex(iterator, conditions, null);
+        if (index != null) {
+            return new Plan.Lookup(index, indexKey(index, iterator,
+                                                   conditions, null));
+        }
+        return trieLookup(iterator, conditions);
+    }
+
+    /** Return a lookup in a trie index on the table of ITERATOR of the
+     *  rows whose value in its column equals a literal or begins with
+     *  the non-empty prefix of a like pattern, as CONDITIONS require,
+     *  preferring equalities, then longer prefixes, or null if there is
+     *  none. */
+    private static Plan.Lookup trieLookup(TableIterator iterator,
+                                          List<Condition> conditions) {
+        TrieIndex best = null;
+        String bestPrefix = null;
+        boolean bestExact = false;
+        for (TrieIndex trie : iterator.table().tries()) {
+            for (Condition cond : conditions) {
+                if (!(cond.right() instanceof Literal)
+                    || iterator.columnIndex(cond.left().name())
+                       != trie.column()) {
+                    continue;
+                }
+                boolean exact = cond.relation().equals("=");
+                String prefix;
+                if (exact) {
+                    prefix = cond.right().value();
+                } else if (cond.relation().equals(Condition.LIKE)) {
+                    prefix = Condition.prefix(cond.right().value());
+                } else {
+                    continue;
+                }
+                if ((exact || !prefix.isEmpty())
+                    && (best == null || (exact && !bestExact)
+                        || (exact == bestExact
+                            && prefix.length() > bestPrefix.length()))) {
+                    best = trie;
+                    bestPrefix = prefix;
+                    bestExact = exact;
+                }
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        return new Plan.Lookup(best, bestPrefix, bestExact);
+    }
+
+    /** Return the index on the table of ITERATOR whose key is fixed by
+     *  CONDITIONS (see indexKey) having the most columns, or null if
+     *  there is none. */
+    private static HashIndex bestIndex(TableIterator iterator,
+                                       List<Condition> conditions,
+                                       TableIterator outer) {
+        HashIndex result = null;
+        for (HashIndex index : iterator.table().indexes()) {
+            if ((result == null
+                 || index.columns().length > result.columns().length)
+                && indexKey(index, iterator, conditions, outer) != null) {
+                result = index;
+            }
+        }
+        return result;
+    }
+
+    /** Return the key of INDEX, an index on the table of ITERATOR, as
+     *  fixed by equalities among CONDITIONS between each of its columns
+     *  and a Literal or, if OUTER is non-null, a column of OUTER: the
+     *  Literals and columns in the order of INDEX's columns.  Return null
+     *  if some column of the key is not so fixed. */
+    private static List<Column> indexKey(HashIndex index,
+                                         TableIterator iterator,
+                                         List<Condition> conditions,
+                                         TableIterator outer) {
+        ArrayList<Column> result = new ArrayList<>();
+        for (int column : index.columns()) {
+            Column value = null;
+            for (Condition cond : conditions) {
+                if (value == null && cond.relation().equals("=")) {
+                    value = equated(cond, iterator, column, outer);
+                }
+            }
+            if (value == null) {
+                return null;
+            }
+            result.add(value);
+        }
+        return result;
+    }
+
+    /** Return the titles, in the order of its columns, of the columns
+     *  of the table of ITERATOR that equalities among CONDITIONS fix as
+     *  for indexKey: the columns of the keys of indexes that could serve
+     *  ITERATOR. */
+    static List<String> fixedColumns(TableIterator iterator,
+                                     List<Condition> conditions,
+                                     TableIterator outer) {
+        ArrayList<String> result = new ArrayList<>();
+        Table table = iterator.table();
+        for (int column = 0; column < table.numColumns(); column += 1) {
+            for (Condition cond : conditions) {
+                if (cond.relation().equals("=")
+                    && equated(cond, iterator, column, outer) != null) {
+                    result.add(table.title(column));
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the side of COND, an equality, that it equates with column
+     *  number COLUMN of ITERATOR, if that side is a Literal or a column
+     *  of OUTER (when non-null), and otherwise null. */
+    private static Column equated(Condition cond, TableIterator iterator,
+                                  int column, TableIterator outer) {
+        Column[] sides = { cond.left(), cond.right() };
+        for (int s = 0; s < 2; s += 1) {
+            Column col = sides[s], other = sides[1 - s];
+            if (col.source() == iterator
+                && iterator.columnIndex(col.name()) == column
+                && (other.source() == null
+                    || (outer != null && other.source() == outer))) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    /** Return the conditions among CONDITIONS that refer only to columns
+     *  of ITERATOR (and literals), most selective first. */
+    private static List<Condition> localConditions(TableIterator iterator,
+                                                   List<Condition> conditions) {
+        ArrayList<Condition> result = new ArrayList<>();
+        for (Condition cond : conditions) {
+            if (cond.left().source() == iterator && cond.isLocalTo(iterator)) {
+                result.add(cond);
+            }
+        }
+        Collections.sort(result, BY_SELECTIVITY);
+        return result;
+    }
+
+    /** Put the equality conditions among the conditions JOIN, which
+     *  relate columns of two tables, first, and order each kind by
+     *  increasing selectivity. */
+    private static void orderJoinConditions(List<Condition> join) {
+        Collections.sort(join, new Comparator<Condition>() {
+            @Override
+            public int compare(Condition c1, Condition c2) {
+                if (c1.isEquiJoin() != c2.isEquiJoin()) {
+                    return c1.isEquiJoin() ? -1 : 1;
+                }
+                return BY_SELECTIVITY.compare(c1, c2);
+            }
+        });
+    }
+
+    /** Return the estimated fraction of rows satisfying all of
+     *  CONDITIONS, assuming that they are independent. */
+    static double selectivity(List<Condition> conditions) {
+        double result = 1.0;
+        for (Condition cond : conditions) {
+            result *= selectivity(cond);
+        }
+        return result;
+    }
+
+    /** Return the estimated fraction of rows (or pairs of rows, for a
+     *  condition relating two tables) that satisfy COND. */
+    static double selectivity(Condition cond) {
+        Column left = cond.left(), right = cond.right();
+        String relation = cond.relation();
+        if (relation.equals(Condition.OR)) {
+            double none = 1.0;
+            for (List<Condition> alternative : cond.alternatives()) {
+                none *= 1.0 - selectivity(alternative);
+            }
+            return 1.0 - none;
+        }
+        TableStats stats = left.source().table().stats();
+        int column = left.source().columnIndex(left.name());
+        if (relation.equals(Condition.IN)
+            || relation.equals(Condition.NOT_IN)) {
+            double equal = stats != null
+                ? stats.selectivity(column, "=", "") : EQUALITY_SELECTIVITY;
+            double in = Math.min(1.0, equal * cond.values().length);
+            return relation.equals(Condition.IN) ? in : 1.0 - in;
+        }
+        if (right instanceof Literal) {
+            if (stats != null) {
+                return stats.selectivity(column, relation, right.value());
+            }
+        } else if (relation.equals("=") || relation.equals("!=")) {
+            double distinct = distinct(left);
+            if (right.source() != left.source()) {
+                distinct = Math.max(distinct, distinct(right));
+            }
+            if (distinct > 0) {
+                return relation.equals("=") ? 1 / distinct : 1 - 1 / distinct;
+            }
+        }
+        switch (relation) {
+        case "=":
+            return EQUALITY_SELECTIVITY;
+        case "!=":
+            return 1.0 - EQUALITY_SELECTIVITY;
+        default:
+            return RANGE_SELECTIVITY;
+        }
+    }
+
+    /** Return the estimated number of distinct values of COL, or 0 if its
+     *  table has not been analyzed. */
+    private static double distinct(Column col) {
+        TableStats stats = col.source().table().stats();
+        if (stats == null) {
+            return 0;
+        }
+        return stats.distinct(col.source().columnIndex(col.name()));
+    }
+
+    /** Orders conditions by increasing estimated selectivity. */
+    private static final Comparator<Condition> BY_SELECTIVITY =
+        new Comparator<Condition>() {
+            @Override
+            public int compare(Condition c1, Condition c2) {
+                return Double.compare(selectivity(c1), selectivity(c2));
+            }
+        };
+
+    /** Selectivity assumed for an equality without statistics. */
+    private static final double EQUALITY_SELECTIVITY = 0.1;
+    /** Selectivity assumed for an inequality without statistics. */
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+    /** Cost of inserting or looking up a row in a hash table, relative to
+     *  that of scanning a row. */
+    private static final double HASH_COST = 2.0;
+    /** A semi-join filter is used when the inner table's conditions are
+     *  expected to leave less than this fraction of its rows. */
+    private static final double SEMI_JOIN_FRACTION = 0.5;
+}
@@ -0,0 +1,269 @@
+package db61b;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** Describes, and optionally measures, the operators that execute a
+ *  select clause, for the explain statement.  Those operators are a
+ *  Plan, which scans, filters, joins, and projects rows, followed by a
+ *  chain of RowSinks.  When analyzing, each RowSink is wrapped so as to
+ *  count the rows it receives and the wall time spent and bytes
+ *  allocated by this thread while it handles them.  Statements other
+ *  than explain use no Profiler, and their operators are not wrapped.
+ *  @author Jiaxin Huang
+ */
+class Profiler {
+
+    /** A Profiler that only describes the operators of a select clause
+     *  if not ANALYZE, and that also executes and measures them if
+     *  ANALYZE. */
+    Profiler(boolean analyze) {
+        _analyze = analyze;
+    }
+
+    /** Return true iff I execute and measure operators. */
+    boolean analyzing() {
+        return _analyze;
+    }
+
+    /** Record SINK as the operator described by DESCRIPTION, which
+     *  receives the rows of the operator recorded after it (the first
+     *  recorded being the last to receive rows), and return the RowSink
+     *  to use in its place. */
+    RowSink add(String description, RowSink sink) {
+        Node node = new Node(description);
+        if (_head == null) {
+            _root = node;
+        } else {
+            _head._node.add(node);
+        }
+        _head = new MeasuredSink(node, sink, _head);
+        return _analyze ? _head : sink;
+    }
+
+    /** Record that the first operator recorded produced ROWS rows. */
+    void output(long rows) {
+        _output = rows;
+    }
+
+    /** Record the operators of PLAN, which feed the operator recorded
+     *  last, and, if I am analyzing, execute PLAN, sending COLUMNS of its
+     *  rows to that operator, and measure it. */
+    void execute(Plan plan, List<Column> columns) {
+        if (_analyze) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            plan.execute(columns, _head);
+            _planNanos = System.nanoTime() - start;
+            _planBytes = allocatedBytes() - allocated;
+        }
+        _plan = plan.explain(columns, _analyze);
+        _head._node.add(_plan);
+    }
+
+    /** Print a description of the recorded operators on OUTPUT, one per
+     *  line, each indented under the operator to which it sends its
+     *  rows.  The time and allocation of the Plan's operators are shown
+     *  together, on the first of them. */
+    void print(PrintStream output) {
+        if (_root == null) {
+            return;
+        }
+        if (_analyze && _plan != null) {
+            _plan.cost(_planNanos - _head._nanos, _planBytes - _head._bytes);
+            for (MeasuredSink sink = _head; sink != null;
+                 sink = sink._output) {
+                MeasuredSink next = sink._output;
+                if (next == null) {
+                    sink._node.rows(sink._rows, _output);
+                    sink._node.cost(sink._nanos, sink._bytes);
+                } else {
+                    sink._node.rows(sink._rows, next._rows);
+                    sink._node.cost(sink._nanos - next._nanos,
+                                    sink._bytes - next._bytes);
+                }
+            }
+        }
+        _root.print(output, INDENT);
+    }
+
+    /** Return the number of bytes allocated so far by this thread, or
+     *  -1 if that is not available. */
+    static long allocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Return the JVM's allocation counters, or null if it has none. */
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean result =
+            (com.sun.management.ThreadMXBean) threads;
+        if (!result.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        result.setThreadAllocatedMemoryEnabled(true);
+        return result;
+    }
+
+    /** One operator in a description of the execution of a select
+     *  clause, with the operators that send it rows as its children. */
+    static class Node {
+
+        /** An operator described by DESCRIPTION, with CHILDREN. */
+        Node(String description, Node... children) {
+            _description = description;
+            for (Node child : children) {
+                add(child);
+            }
+        }
+
+        /** Add CHILD as my last child. */
+        void add(Node child) {
+            _children.add(child);
+        }
+
+        /** Record that I received IN rows and produced OUT, either of
+         *  which is -1 if unknown. */
+        void rows(long in, long out) {
+            _rowsIn = in;
+            _rowsOut = out;
+        }
+
+        /** Record that I took NANOS nanoseconds and allocated BYTES
+         *  bytes, excluding the operators to which I send rows. */
+        void cost(long nanos, long bytes) {
+            _nanos = nanos;
+            _bytes = THREADS == null ? -1 : bytes;
+        }
+
+        /** Return the number of rows I produced, or -1 if unknown. */
+        long rowsOut() {
+            return _rowsOut;
+        }
+
+        /** Print a line describing me on OUTPUT, indented by INDENT,
+         *  followed by my children, indented further. */
+        void print(PrintStream output, String indent) {
+            ArrayList<String> measures = new ArrayList<>();
+            if (_rowsIn >= 0) {
+                measures.add(format("rows in %d", _rowsIn));
+            }
+            if (_rowsOut >= 0) {
+                measures.add(format("out %d", _rowsOut));
+            }
+            if (_nanos >= 0) {
+                measures.add(format("%.3f ms", _nanos / NANOS_PER_MS));
+            }
+            if (_bytes >= 0) {
+                measures.add(format("%d bytes", _bytes));
+            }
+            if (measures.isEmpty()) {
+                output.println(indent + _description);
+            } else {
+                output.println(indent + _description + " "
+                               + measures.toString());
+            }
+            for (Node child : _children) {
+                child.print(output, indent + INDENT);
+            }
+        }
+
+        /** Description of my operator. */
+        private final String _description;
+        /** Operators sending me rows. */
+        private final ArrayList<Node> _children = new ArrayList<>();
+        /** Numbers of rows received and produced, or -1 if unknown. */
+        private long _rowsIn = -1, _rowsOut = -1;
+        /** Wall time taken and bytes allocated, or -1 if unknown. */
+        private long _nanos = -1, _bytes = -1;
+    }
+
+    /** A RowSink that passes rows on to another, counting them and
+     *  measuring the time and allocation of the other's work. */
+    private static class MeasuredSink implements RowSink {
+
+        /** A MeasuredSink passing rows to SINK, which is described by
+         *  NODE and sends its rows on to (the sink measured by)
+         *  OUTPUT, or to no measured sink if OUTPUT is null. */
+        MeasuredSink(Node node, RowSink sink, MeasuredSink output) {
+            _node = node;
+            _sink = sink;
+            _output = output;
+        }
+
+        @Override
+        public boolean accept(Row row) {
+            _rows += 1;
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            boolean result = _sink.accept(row);
+            _nanos += System.nanoTime() - start;
+            _bytes += allocatedBytes() - allocated;
+            return result;
+        }
+
+        @Override
+        public boolean accept(List<Column> columns) {
+            _rows += 1;
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            boolean result = _sink.accept(columns);
+            _nanos += System.nanoTime() - start;
+            _bytes += allocatedBytes() - allocated;
+            return result;
+        }
+
+        @Override
+        public void finish() {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            _sink.finish();
+            _nanos += System.nanoTime() - start;
+            _bytes += allocatedBytes() - allocated;
+        }
+
+        /** Description of my sink. */
+        private final Node _node;
+        /** The sink I measure. */
+        private final RowSink _sink;
+        /** The measured sink to which _sink sends rows, or null. */
+        private final MeasuredSink _output;
+        /** Number of rows received. */
+        private long _rows;
+        /** Time taken and bytes allocated by _sink and its successors. */
+        private long _nanos, _bytes;
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+    /** Indentation of each level of the description. */
+    private static final String INDENT = "  ";
+    /** The JVM's per-thread allocation counters, or null. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        threads();
+
+    /** True iff I execute and measure operators. */
+    private final boolean _analyze;
+    /** Description of the last operator, or null if none. */
+    private Node _root;
+    /** The most recently recorded operator, or null if none. */
+    private MeasuredSink _head;
+    /** Number of rows produced by the last operator, or -1. */
+    private long _output = -1;
+    /** Description of the Plan's operators, or null if not recorded. */
+    private Node _plan;
+    /** Wall time taken and bytes allocated by the Plan's operators,
+     *  including the RowSinks they fed. */
+    private long _planNanos, _planBytes;
+}
@@ -0,0 +1,164 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** A parsed select clause: the Columns selected, the tables they are
+ *  selected from, and the conditions, grouping, and ordering to apply.
+ *  All Columns are resolved against the TableIterators of the Query.
+ *  @author Jiaxin Huang
+ */
+class Query {
+
+    /** A Query selecting COLUMNS from the rows of ITERATORS. */
+    Query(List<Column> columns, List<TableIterator> iterators) {
+        _columns = columns;
+        _iterators = iterators;
+        for (Column col : columns) {
+            _aggregated |= col instanceof Aggregate;
+        }
+    }
+
+    /** Restrict my rows to those satisfying all of CONDITIONS. */
+    void where(List<Condition> conditions) {
+        _conditions = conditions;
+    }
+
+    /** Group my rows by the values of GROUPBY. */
+    void groupBy(List<Column> groupBy) {
+        _groupBy = groupBy;
+        _aggregated = true;
+    }
+
+    /** Order my result by the selected column titled TITLE, after any
+     *  previously specified orderings, in decreasing order iff
+     *  DESCENDING. */
+    void orderBy(String title, boolean descending) {
+        int k = titles().indexOf(title);
+        if (k == -1) {
+            throw error("%s must be selected to order by it", title);
+        }
+        _orderBy.add(k);
+        _descending.add(descending);
+    }
+
+    /** Limit my result to COUNT rows, after skipping the first OFFSET. */
+    void limit(long count, long offset) {
+        _limit = count;
+        _offset = offset;
+    }
+
+    /** Return my selected Columns (some of which may be Aggregates). */
+    List<Column> columns() {
+        return _columns;
+    }
+
+    /** Return the titles of my result columns. */
+    List<String> titles() {
+        ArrayList<String> titles = new ArrayList<>();
+        for (Column col : _columns) {
+            titles.add(col.name());
+        }
+        return titles;
+    }
+
+    /** Return iterators over the tables I select from. */
+    List<TableIterator> iterators() {
+        return _iterators;
+    }
+
+    /** Return the conditions my rows must satisfy. */
+    List<Condition> conditions() {
+        return _conditions;
+    }
+
+    /** Return true iff my result is computed over groups of rows. */
+    boolean aggregated() {
+        return _aggregated;
+    }
+
+    /** Return the columns by which my rows are grouped. */
+    List<Column> groupBy() {
+        return _groupBy;
+    }
+
+    /** Return true iff my result is ordered. */
+    boolean ordered() {
+        return !_orderBy.isEmpty();
+    }
+
+    /** Return the ordering of my result. */
+    RowOrder order() {
+        int[] columns = new int[_orderBy.size()];
+        boolean[] descending = new boolean[_descending.size()];
+        for (int i = 0; i < columns.length; i += 1) {
+            columns[i] = _orderBy.get(i);
+            descending[i] = _descending.get(i);
+        }
+        return new RowOrder(columns, descending);
+    }
+
+    /** Return the titles of my ordering columns, each followed by
+     *  'desc' if decreasing, separated by commas. */
+    String orderTitles() {
+        ArrayList<String> result = new ArrayList<>();
+        List<String> titles = titles();
+        for (int i = 0; i < _orderBy.size(); i += 1) {
+            String title = titles.get(_orderBy.get(i));
+            result.add(_descending.get(i) ? title + " desc" : title);
+        }
+        return String.join(", ", result);
+    }
+
+    /** Return true iff the number of rows in my result is limited. */
+    boolean limited() {
+        return _limit >= 0;
+    }
+
+    /** Return the maximum number of rows in my result, if limited(). */
+    long limit() {
+        return _limit;
+    }
+
+    /** Return the number of leading rows to skip, if limited(). */
+    long offset() {
+        return _offset;
+    }
+
+    @Override
+    public String toString() {
+        ArrayList<String> tables = new ArrayList<>();
+        for (TableIterator it : _iterators) {
+            tables.add(it.table().name());
+        }
+        ArrayList<String> conditions = new ArrayList<>();
+        for (Condition cond : _conditions) {
+            conditions.add(cond.toString());
+        }
+        return "select " + String.join(", ", titles()) + " from "
+            + String.join(", ", tables)
+            + (conditions.isEmpty() ? ""
+               : " where " + String.join(" and ", conditions));
+    }
+
+    /** The selected columns. */
+    private final List<Column> _columns;
+    /** Iterators over the tables selected from. */
+    private final List<TableIterator> _iterators;
+    /** Conditions that selected rows must satisfy. */
+    private List<Condition> _conditions = new ArrayList<>();
+    /** Grouping columns. */
+    private List<Column> _groupBy = new ArrayList<>();
+    /** True iff the result is computed over groups of rows. */
+    private boolean _aggregated;
+    /** Indices of the result columns ordering the result. */
+    private final ArrayList<Integer> _orderBy = new ArrayList<>();
+    /** Whether each ordering column is descending. */
+    private final ArrayList<Boolean> _descending = new ArrayList<>();
+    /** Maximum number of result rows, or -1 if unlimited. */
+    private long _limit = -1;
+    /** Number of leading result rows to skip. */
+    private long _offset;
+}
@@ -9,7 +9,8 @@ import java.util.List;
  */
 class Row {
     /** A Row whose column values are DATA.  The array DATA must not be altered
-     *  subsequently. */
+     *  subsequently, except in a Row used only as a key for looking up
+     *  others, and not kept. */
     Row(String[] data) {
         _data = data;
     }
@@ -26,6 +27,28 @@ class Row {
         return new Row(result);
     }
 
+    /** Return a Row formed from the values of COLUMNS (in order) in ROW,
+     *  a row of the table to which they are all resolved. */
+    static Row make(List<Column> columns, Row row) {
+        String[] result = new String[columns.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = columns.get(k).value(row);
+        }
+        return new Row(result);
+    }
+
+    /** Return a Row formed from the values of COLUMNS (in order) in the
+     *  pair of ROW1, a row of the table of ITERATOR1, and ROW2, a row of
+     *  the other table to which they are resolved. */
+    static Row make(List<Column> columns, TableIterator iterator1,
+                    Row row1, Row row2) {
+        String[] result = new String[columns.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = columns.get(k).value(iterator1, row1, row2);
+        }
+        return new Row(result);
+    }
+
     /** A Row whose column values are extracted by COLUMNS from ROWS (see
      *  {@link db61b.Column#Column}). */
     Row(List<Column> columns) {
@@ -48,6 +71,22 @@ class Row {
         return _data[k];
     }
 
+    /** Return true iff my values are VALUES. */
+    boolean matches(String[] values) {
+        return Arrays.equals(_data, values);
+    }
+
+    /** Return a rough estimate of the number of bytes of memory I occupy,
+     *  including my values. */
+    long estimatedSize() {
+        long size = OBJECT_OVERHEAD + ARRAY_OVERHEAD
+            + REFERENCE_SIZE * _data.length;
+        for (String value : _data) {
+            size += STRING_OVERHEAD + value.length();
+        }
+        return size;
+    }
+
     @Override
     public boolean equals(Object obj) {
         try {
@@ -72,6 +111,16 @@ class Row {
         return Arrays.hashCode(_data);
     }
 
+    /** Estimated bytes of memory used by an object header. */
+    private static final long OBJECT_OVERHEAD = 16;
+    /** Estimated bytes of memory used by an array header. */
+    private static final long ARRAY_OVERHEAD = 16;
+    /** Estimated bytes of memory used by an object reference. */
+    private static final long REFERENCE_SIZE = 4;
+    /** Estimated bytes of memory used by a String, apart from its
+     *  characters. */
+    private static final long STRING_OVERHEAD = 40;
+
     /** Contents of this row. */
     private String[] _data;
 }
@@ -0,0 +1,42 @@
+package db61b;
+
+import java.util.Comparator;
+
+/** An ordering of Rows by the values of some of their columns, each
+ *  increasing or decreasing.  Rows that agree on all of those columns
+ *  are ordered by their remaining values, so that only equal Rows
+ *  compare as equal.
+ *  @author Jiaxin Huang
+ */
+class RowOrder implements Comparator<Row> {
+
+    /** An ordering by the values of the columns numbered COLUMNS, most
+     *  significant first, each decreasing iff the corresponding element
+     *  of DESCENDING is true. */
+    RowOrder(int[] columns, boolean[] descending) {
+        _columns = columns;
+        _descending = descending;
+    }
+
+    @Override
+    public int compare(Row r1, Row r2) {
+        for (int i = 0; i < _columns.length; i += 1) {
+            int c = r1.get(_columns[i]).compareTo(r2.get(_columns[i]));
+            if (c != 0) {
+                return _descending[i] ? -c : c;
+            }
+        }
+        for (int k = 0; k < r1.size(); k += 1) {
+            int c = r1.get(k).compareTo(r2.get(k));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Indices of the ordering columns, most significant first. */
+    private final int[] _columns;
+    /** Whether each of _columns is in decreasing order. */
+    private final boolean[] _descending;
+}
@@ -0,0 +1,162 @@
+package db61b;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** A RowSink that prints the rows it receives, one per line, in one of
+ *  three formats: TEXT, with values separated by spaces and indented by
+ *  two spaces; CSV, with values separated by commas and quoted where
+ *  necessary; or TSV, with values separated by tabs, and tabs, line
+ *  ends, and backslashes in values escaped by backslashes.  Rows are
+ *  rendered into a buffer reused for all of them, which is written to
+ *  the output only when it holds BUFFER_SIZE characters, and when no
+ *  more rows will come, so that printing many rows costs a few large
+ *  writes rather than several small ones for each value.
+ *  @author Jiaxin Huang
+ */
+class RowPrinter implements RowSink {
+
+    /** Names of the formats, as given to the output_format setting. */
+    static final String TEXT = "text", CSV = "csv", TSV = "tsv";
+
+    /** A RowPrinter printing on OUTPUT in TEXT format. */
+    RowPrinter(PrintStream output) {
+        this(output, TEXT);
+    }
+
+    /** A RowPrinter printing on OUTPUT in FORMAT, one of TEXT, CSV, and
+     *  TSV. */
+    RowPrinter(PrintStream output, String format) {
+        _output = output;
+        switch (format) {
+        case TEXT: case CSV: case TSV:
+            _format = format;
+            break;
+        default:
+            throw error("unknown output format: %s", format);
+        }
+    }
+
+    @Override
+    public boolean accept(Row row) {
+        for (int n = 0; n < row.size(); n++) {
+            value(n, row.get(n));
+        }
+        endRow();
+        return true;
+    }
+
+    @Override
+    public boolean accept(List<Column> columns) {
+        for (int n = 0; n < columns.size(); n++) {
+            value(n, columns.get(n).value());
+        }
+        endRow();
+        return true;
+    }
+
+    @Override
+    public void finish() {
+        write();
+        _output.flush();
+    }
+
+    /** Render VALUE, the Nth value of a row, into my buffer. */
+    private void value(int n, String value) {
+        switch (_format) {
+        case CSV:
+            if (n > 0) {
+                _buffer.append(',');
+            }
+            if (needsQuotes(value)) {
+                _buffer.append('"');
+                for (int i = 0; i < value.length(); i += 1) {
+                    char ch = value.charAt(i);
+                    if (ch == '"') {
+                        _buffer.append('"');
+                    }
+                    _buffer.append(ch);
+                }
+                _buffer.append('"');
+            } else {
+                _buffer.append(value);
+            }
+            break;
+        case TSV:
+            if (n > 0) {
+                _buffer.append('\t');
+            }
+            for (int i = 0; i < value.length(); i += 1) {
+                char ch = value.charAt(i);
+                switch (ch) {
+                case '\t':
+                    _buffer.append("\\t");
+                    break;
+                case '\n':
+                    _buffer.append("\\n");
+                    break;
+                case '\r':
+                    _buffer.append("\\r");
+                    break;
+                case '\\':
+                    _buffer.append("\\\\");
+                    break;
+                default:
+                    _buffer.append(ch);
+                    break;
+                }
+            }
+            break;
+        default:
+            if (n == 0) {
+                _buffer.append("  ");
+            }
+            _buffer.append(value).append(' ');
+            break;
+        }
+    }
+
+    /** Return true iff VALUE must be quoted in CSV format. */
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i += 1) {
+            char ch = value.charAt(i);
+            if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** End the row being rendered, writing my buffer if it is full. */
+    private void endRow() {
+        _buffer.append(LINE_SEPARATOR);
+        if (_buffer.length() >= BUFFER_SIZE) {
+            write();
+        }
+    }
+
+    /** Write the contents of my buffer to my output and empty it,
+     *  keeping its space. */
+    private void write() {
+        if (_buffer.length() > 0) {
+            _output.append(_buffer);
+            _buffer.setLength(0);
+        }
+    }
+
+    /** Number of characters rendered before they are written. */
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Ends each row. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Destination of my output. */
+    private final PrintStream _output;
+    /** My format. */
+    private final String _format;
+    /** The rows rendered but not yet written, with room for a little
+     *  more than BUFFER_SIZE characters. */
+    private final StringBuilder _buffer =
+        new StringBuilder(2 * BUFFER_SIZE);
+}
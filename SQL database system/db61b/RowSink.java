@@ -0,0 +1,27 @@
+package db61b;
+
+import java.util.List;
+
+/** A destination for the rows produced while executing a select
+ *  clause, such as a result Table or an operator that transforms the
+ *  rows before passing them on.
+ *  @author Jiaxin Huang
+ */
+interface RowSink {
+
+    /** Accept ROW.  Return false iff no further rows are wanted. */
+    boolean accept(Row row);
+
+    /** Accept the row formed from the current values of COLUMNS, which
+     *  must be resolved to TableIterators with current rows.  Return
+     *  false iff no further rows are wanted.  Sinks that discard many of
+     *  their rows, or use the values at once, override this to avoid
+     *  building a Row for each. */
+    default boolean accept(List<Column> columns) {
+        return accept(Row.make(columns));
+    }
+
+    /** Indicate that no further rows will be sent to me. */
+    void finish();
+
+}
@@ -0,0 +1,99 @@
+package db61b;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static db61b.Utils.*;
+
+/** The storage of the rows of a Table, which are numbered from 0 in
+ *  order of addition and never contain two equal rows.  A RowStore
+ *  hands out the values of single fields, so that stores that do not
+ *  keep Row objects need not build one to test a condition, and
+ *  compares values in place, so that stores that do not keep Strings
+ *  need not build those either.
+ *  @author Jiaxin Huang
+ */
+interface RowStore {
+
+    /** Names of the kinds of store, as given to the storage setting. */
+    String HEAP = "heap", ARENA = "arena", OFF_HEAP = "offheap";
+
+    /** Return a new, empty store of kind KIND for rows of COLUMNS
+     *  values. */
+    static RowStore make(String kind, int columns) {
+        switch (kind) {
+        case HEAP:
+            return new HeapRowStore();
+        case ARENA:
+            return new ArenaRowStore(columns);
+        case OFF_HEAP:
+            return new OffHeapRowStore(columns);
+        default:
+            throw error("unknown storage: %s", kind);
+        }
+    }
+
+    /** Return my kind. */
+    String kind();
+
+    /** Return my number of rows. */
+    int size();
+
+    /** Add ROW as my last row, unless I already contain an equal row.
+     *  Return true iff it was added. */
+    boolean add(Row row);
+
+    /** Add a row of VALUES as my last row, unless I already contain an
+     *  equal row, copying VALUES only if it is added, so that the caller
+     *  may reuse the array.  Return true iff it was added. */
+    boolean add(String[] values);
+
+    /** Return the number of my row equal to ROW, or -1 if there is
+     *  none. */
+    int find(Row row);
+
+    /** Return row number K.  Requires 0 <= K < size(). */
+    Row get(int k);
+
+    /** Return the value of column COLUMN of row number K.  Requires
+     *  0 <= K < size(). */
+    String value(int k, int column);
+
+    /** Return the result of comparing the value of column COLUMN of row
+     *  number K with VALUE, as by String.compareTo. */
+    default int compare(int k, int column, String value) {
+        return value(k, column).compareTo(value);
+    }
+
+    /** Return the result of comparing the value of column COLUMN of row
+     *  number K with that of column COLUMN2 of row number K2 of OTHER, as
+     *  by String.compareTo. */
+    default int compare(int k, int column, RowStore other, int k2,
+                        int column2) {
+        return compare(k, column, other.value(k2, column2));
+    }
+
+    /** Return an iterator through my rows, starting with row number
+     *  START. */
+    default Iterator<Row> iterator(int start) {
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return _next < size();
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                _next += 1;
+                return get(_next - 1);
+            }
+
+            /** Number of the next row to return. */
+            private int _next = start;
+        };
+    }
+
+}
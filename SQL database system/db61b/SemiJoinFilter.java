@@ -0,0 +1,110 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** A semi-join reduction for a join of two tables.  When one side of an
+ *  equality join is restricted by conditions of its own, a Bloom filter
+ *  is built over the join keys of its rows that satisfy them.  Rows of
+ *  the other side (the probe side) whose keys are not in the filter
+ *  cannot be part of the result, and may be discarded before they are
+ *  paired with any rows of the first side.
+ *  @author Jiaxin Huang
+ */
+class SemiJoinFilter {
+
+    /** A filter over the values of BUILDKEYS in the rows of BUILD that
+     *  satisfy LOCAL, against which PROBE's rows are tested using
+     *  PROBEKEYS.  BUILD must be at its first row, and is left there. */
+    SemiJoinFilter(TableIterator build, TableIterator probe,
+                   List<Column> buildKeys, List<Column> probeKeys,
+                   List<Condition> local) {
+        _build = build;
+        _probe = probe;
+        _buildKeys = buildKeys;
+        _probeKeys = probeKeys;
+
+        long[] hashes = new long[INITIAL_KEYS];
+        int n = 0;
+        while (build.hasRow()) {
+            if (Condition.test(local)) {
+                if (n == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, 2 * n);
+                }
+                hashes[n] = keyHash(buildKeys);
+                n += 1;
+            }
+            build.next();
+        }
+        build.reset();
+
+        _filter = new BloomFilter(n, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < n; i += 1) {
+            _filter.add(hashes[i]);
+        }
+    }
+
+    /** Return the hash of the current values of KEYS. */
+    private static long keyHash(List<Column> keys) {
+        long h = 0;
+        for (Column key : keys) {
+            h = BloomFilter.hash(h, key.value());
+        }
+        return h;
+    }
+
+    /** Return false if the current row of my probe side cannot satisfy
+     *  the join conditions, and true if it may. */
+    boolean mightMatch() {
+        _probed += 1;
+        if (_filter.mightContain(keyHash(_probeKeys))) {
+            _passed += 1;
+            return true;
+        }
+        return false;
+    }
+
+    /** Return the number of rows that have passed me. */
+    long passed() {
+        return _passed;
+    }
+
+    /** Return a description of me and of how many rows I have passed,
+     *  for diagnostic output. */
+    String describe() {
+        ArrayList<String> keys = new ArrayList<>();
+        for (Column key : _buildKeys) {
+            keys.add(key.name());
+        }
+        return format("semi-join filter on %s%s: %d keys, %d bits, "
+                      + "%d hashes, %.2f%% expected false positives; "
+                      + "%d of %d %s rows passed",
+                      _build.table().name(), keys, _filter.count(),
+                      _filter.bits(), _filter.hashes(),
+                      PERCENT * _filter.falsePositiveRate(),
+                      _passed, _probed, _probe.table().name());
+    }
+
+    /** Target false-positive rate of my Bloom filter. */
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    /** Initial capacity of the buffer of key hashes. */
+    private static final int INITIAL_KEYS = 64;
+    /** Multiplier converting a fraction to a percentage. */
+    private static final double PERCENT = 100.0;
+
+    /** The side of the join over whose keys I am built. */
+    private final TableIterator _build;
+    /** The side of the join whose rows are tested against me. */
+    private final TableIterator _probe;
+    /** The join columns of _build. */
+    private final List<Column> _buildKeys;
+    /** The corresponding join columns of _probe. */
+    private final List<Column> _probeKeys;
+    /** The filter over the key values of _build. */
+    private final BloomFilter _filter;
+    /** Number of rows of _probe tested, and number that passed. */
+    private long _probed, _passed;
+}
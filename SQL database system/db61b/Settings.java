@@ -0,0 +1,151 @@
+package db61b;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static db61b.Utils.*;
+
+/** The adjustable parameters of one db61b session.  Each setting has a
+ *  name and a default value, and may be changed with a 'set' statement.
+ *  The default value of setting NAME may be overridden by giving the
+ *  Java system property db61b.NAME (as in 'java -Ddb61b.timing=on').
+ *  @author Jiaxin Huang
+ */
+class Settings {
+
+    /** Name of the setting giving the number of bytes of memory that a
+     *  single operator (such as a hash aggregation) may use before it
+     *  spills to disk. */
+    static final String WORK_MEMORY = "work_memory";
+    /** Name of the setting that, when on, causes operators to report
+     *  what they did on the standard error. */
+    static final String DIAGNOSTICS = "diagnostics";
+    /** Name of the setting that, when on, causes the time taken by each
+     *  statement to be reported on the standard error. */
+    static final String TIMING = "timing";
+    /** Name of the setting giving the number of threads that scan a
+     *  single table or perform a hash join in parallel.  1 (or 0) keeps
+     *  them serial. */
+    static final String PARALLELISM = "parallelism";
+    /** Name of the setting giving the total number of rows the tables of
+     *  a scan or hash join must have for it to be executed in
+     *  parallel. */
+    static final String PARALLEL_THRESHOLD = "parallel_threshold";
+    /** Name of the setting giving the kind of RowStore holding the rows
+     *  of tables subsequently loaded or created: heap, arena, or
+     *  offheap. */
+    static final String STORAGE = "storage";
+    /** Name of the setting that, when on, causes statements taking at
+     *  least SLOW_QUERY_MS milliseconds to be written to the slow query
+     *  log. */
+    static final String SLOW_QUERY_LOG = "slow_query_log";
+    /** Name of the setting giving the threshold of the slow query log,
+     *  in milliseconds. */
+    static final String SLOW_QUERY_MS = "slow_query_ms";
+    /** Name of the setting giving the name of the slow query log file. */
+    static final String SLOW_QUERY_FILE = "slow_query_file";
+    /** Name of the setting that, when on, lets the IndexAdvisor create
+     *  and drop hash indexes according to the selects executed. */
+    static final String INDEX_ADVISOR = "index_advisor";
+    /** Name of the setting giving the number of bytes of memory that
+     *  the indexes created by the IndexAdvisor may use in all. */
+    static final String INDEX_MEMORY = "index_memory";
+    /** Name of the setting giving the format in which the rows of print
+     *  statements and select results are printed: text, csv, or tsv
+     *  (see RowPrinter). */
+    static final String OUTPUT_FORMAT = "output_format";
+    /** Name of the setting that, when on, suppresses prompts, for
+     *  running scripts non-interactively. */
+    static final String BATCH = "batch";
+
+    /** The names and default values of all settings, each followed by
+     *  the values it may take, if these are limited.  A setting whose
+     *  default value is a numeral may only be set to numerals. */
+    private static final String[][] DEFAULTS = {
+        { WORK_MEMORY, "67108864" },
+        { DIAGNOSTICS, "off", "on", "off" },
+        { TIMING, "off", "on", "off" },
+        { PARALLELISM,
+          String.valueOf(Runtime.getRuntime().availableProcessors()) },
+        { PARALLEL_THRESHOLD, "100000" },
+        { STORAGE, RowStore.HEAP, RowStore.HEAP, RowStore.ARENA,
+          RowStore.OFF_HEAP },
+        { SLOW_QUERY_LOG, "off", "on", "off" },
+        { SLOW_QUERY_MS, "1000" },
+        { SLOW_QUERY_FILE, "slow_queries.log" },
+        { INDEX_ADVISOR, "on", "on", "off" },
+        { INDEX_MEMORY, "134217728" },
+        { OUTPUT_FORMAT, RowPrinter.TEXT, RowPrinter.TEXT, RowPrinter.CSV,
+          RowPrinter.TSV },
+        { BATCH, "off", "on", "off" },
+    };
+
+    /** Prefix of the names of system properties overriding defaults. */
+    private static final String PROPERTY_PREFIX = "db61b.";
+
+    /** A new set of Settings, each having its default value. */
+    Settings() {
+        for (String[] setting : DEFAULTS) {
+            _values.put(setting[0], setting[1]);
+            if (setting.length > 2) {
+                _choices.put(setting[0], Arrays.asList(setting)
+                             .subList(2, setting.length));
+            }
+            String value = System.getProperty(PROPERTY_PREFIX + setting[0]);
+            if (value != null) {
+                set(setting[0], value);
+            }
+        }
+    }
+
+    /** Set the setting named NAME to VALUE. */
+    void set(String name, String value) {
+        String old = _values.get(name);
+        if (old == null) {
+            throw error("unknown setting: %s", name);
+        }
+        if (_choices.containsKey(name)
+            && !_choices.get(name).contains(value)) {
+            throw error("%s must be one of %s", name, _choices.get(name));
+        }
+        if (isNumeral(old)) {
+            try {
+                Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw error("%s must be a number", name);
+            }
+        }
+        _values.put(name, value);
+    }
+
+    /** Return the value of the setting named NAME. */
+    String get(String name) {
+        String value = _values.get(name);
+        if (value == null) {
+            throw error("unknown setting: %s", name);
+        }
+        return value;
+    }
+
+    /** Return the value of the numeric setting named NAME. */
+    long getLong(String name) {
+        return Long.parseLong(get(name));
+    }
+
+    /** Return true iff the setting named NAME is "on". */
+    boolean isOn(String name) {
+        return get(name).equals("on");
+    }
+
+    /** Return true iff S consists only of digits. */
+    private static boolean isNumeral(String s) {
+        return !s.isEmpty() && s.chars().allMatch(Character::isDigit);
+    }
+
+    /** Current values of all settings, indexed by name. */
+    private final HashMap<String, String> _values = new HashMap<>();
+    /** The permitted values of settings that have limited values,
+     *  indexed by name. */
+    private final HashMap<String, List<String>> _choices = new HashMap<>();
+}
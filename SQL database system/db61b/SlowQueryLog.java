@@ -0,0 +1,207 @@
+package db61b;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A log of the statements that took longer than the slow_query_ms
+ *  setting, written to a file that is rotated when it grows too large.
+ *  Statements are handed to a background thread through a bounded queue,
+ *  so that logging never makes a statement wait for the file system;
+ *  when the queue is full, entries are dropped, and the number dropped
+ *  is noted in the log.  Each entry records when the statement finished,
+ *  how long it took, the numbers of rows its plan scanned and produced,
+ *  the plan, and the statement's text, with its literals and numerals
+ *  replaced by '?'.
+ *  @author Jiaxin Huang
+ */
+class SlowQueryLog {
+
+    /** Return the log written to the file named NAME, starting it if
+     *  need be.  All sessions logging to the same file share one log. */
+    static SlowQueryLog forFile(String name) {
+        return LOGS.computeIfAbsent(name, SlowQueryLog::new);
+    }
+
+    /** A new log writing to the file named NAME. */
+    private SlowQueryLog(String name) {
+        _file = new File(name);
+        _writer = new Thread(this::run, "db61b slow query log");
+        _writer.setDaemon(true);
+        _writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /** Log a statement whose normalized TEXT took NANOS nanoseconds,
+     *  executing PLAN (null if it executed no plan).  Never blocks. */
+    void log(String text, long nanos, Plan plan) {
+        Entry entry = new Entry(text, nanos, plan);
+        if (!_queue.offer(entry)) {
+            _dropped.incrementAndGet();
+        }
+    }
+
+    /** Write the entries on my queue to my file until closed. */
+    private void run() {
+        try {
+            while (true) {
+                Entry entry = _queue.take();
+                if (entry == CLOSE) {
+                    break;
+                }
+                write(entry);
+            }
+        } catch (InterruptedException e) {
+            /* Exit. */
+        }
+        if (_output != null) {
+            _output.close();
+        }
+    }
+
+    /** Write the remaining entries on my queue and stop my writer. */
+    private void close() {
+        try {
+            if (_queue.offer(CLOSE, CLOSE_TIMEOUT_MS,
+                             TimeUnit.MILLISECONDS)) {
+                _writer.join(CLOSE_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            /* Give up on the remaining entries. */
+        }
+    }
+
+    /** Append ENTRY to my file, preceded by a note of any entries dropped
+     *  since the last, rotating the file first if it would grow past
+     *  MAX_BYTES. */
+    private void write(Entry entry) {
+        StringBuilder text = new StringBuilder();
+        long dropped = _dropped.getAndSet(0);
+        if (dropped > 0) {
+            text.append(String.format("# Dropped: %d entries%n", dropped));
+        }
+        text.append(entry);
+        try {
+            if (_output == null) {
+                _output = new PrintWriter(new FileWriter(_file, true));
+                _size = _file.length();
+            }
+            if (_size > 0 && _size + text.length() > MAX_BYTES) {
+                rotate();
+            }
+            _output.print(text);
+            _output.flush();
+            _size += text.length();
+            if (_output.checkError()) {
+                throw new IOException("write failed");
+            }
+        } catch (IOException e) {
+            System.err.printf("Warning: could not write slow query log "
+                              + "%s: %s%n", _file, e.getMessage());
+            if (_output != null) {
+                _output.close();
+                _output = null;
+            }
+        }
+    }
+
+    /** Rename my file FILE to FILE.1, FILE.1 to FILE.2, and so on,
+     *  discarding FILE.ROTATIONS, and start a new, empty FILE. */
+    private void rotate() throws IOException {
+        _output.close();
+        _output = null;
+        for (int k = ROTATIONS - 1; k >= 0; k -= 1) {
+            File from = k == 0 ? _file : rotated(k);
+            if (from.exists()) {
+                Files.move(from.toPath(), rotated(k + 1).toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        _output = new PrintWriter(new FileWriter(_file));
+        _size = 0;
+    }
+
+    /** Return the Kth older version of my file. */
+    private File rotated(int k) {
+        return new File(_file.getPath() + "." + k);
+    }
+
+    /** One logged statement. */
+    private static class Entry {
+        /** An entry for a statement with normalized TEXT that took NANOS
+         *  nanoseconds and executed PLAN, or no plan if it is null. */
+        Entry(String text, long nanos, Plan plan) {
+            _time = Instant.now();
+            _text = text;
+            _nanos = nanos;
+            if (plan == null) {
+                _plan = null;
+                _scanned = _produced = 0;
+            } else {
+                _plan = plan.toString();
+                _scanned = plan.rowsScanned();
+                _produced = plan.rowsProduced();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("# Time: %s%n# Duration: %.3f ms  "
+                                 + "Rows scanned: %d  Rows produced: %d%n"
+                                 + "# Plan: %s%n%s%n", _time,
+                                 _nanos / NANOS_PER_MS, _scanned, _produced,
+                                 _plan == null ? "none" : _plan, _text);
+        }
+
+        /** When the statement finished. */
+        private final Instant _time;
+        /** The normalized text of the statement. */
+        private final String _text;
+        /** Time taken, in nanoseconds. */
+        private final long _nanos;
+        /** Description of the plan executed, or null. */
+        private final String _plan;
+        /** Numbers of rows scanned and produced by the plan. */
+        private final long _scanned, _produced;
+    }
+
+    /** Largest size of a log file, in bytes, before it is rotated. */
+    static final long MAX_BYTES = 1 << 20;
+    /** Number of older log files kept. */
+    static final int ROTATIONS = 4;
+    /** Maximum number of entries waiting to be written. */
+    private static final int QUEUE_CAPACITY = 1024;
+    /** Milliseconds to wait at exit for the remaining entries to be
+     *  written. */
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+    /** Queued to tell the writer to stop. */
+    private static final Entry CLOSE = new Entry("", 0, null);
+    /** The log for each file, by name. */
+    private static final ConcurrentHashMap<String, SlowQueryLog> LOGS =
+        new ConcurrentHashMap<>();
+
+    /** The file written. */
+    private final File _file;
+    /** Entries waiting to be written. */
+    private final BlockingQueue<Entry> _queue =
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    /** Number of entries dropped since the last written. */
+    private final AtomicLong _dropped = new AtomicLong();
+    /** The thread writing entries. */
+    private final Thread _writer;
+    /** Output to _file, or null if not open.  Used only by _writer. */
+    private PrintWriter _output;
+    /** Approximate current size of _file, in bytes. */
+    private long _size;
+}
@@ -0,0 +1,117 @@
+package db61b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static db61b.Utils.*;
+
+/** A temporary file holding a sequence of Rows, used by operators that
+ *  have exceeded their memory budget.  Rows are first written with
+ *  write, and then, after a call to rewind, read back in the same order
+ *  with read.
+ *  @author Jiaxin Huang
+ */
+class SpillFile {
+
+    /** A new, empty SpillFile. */
+    SpillFile() {
+        try {
+            _file = File.createTempFile("db61b", ".spill");
+            _file.deleteOnExit();
+            _output = new DataOutputStream(new BufferedOutputStream(
+                          new FileOutputStream(_file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw error("could not create spill file: %s", e.getMessage());
+        }
+    }
+
+    /** Append ROW to my contents. */
+    void write(Row row) {
+        try {
+            _output.writeInt(row.size());
+            for (int k = 0; k < row.size(); k += 1) {
+                _output.writeUTF(row.get(k));
+            }
+            _count += 1;
+        } catch (IOException e) {
+            throw error("problem writing spill file: %s", e.getMessage());
+        }
+    }
+
+    /** Return the number of Rows written to me. */
+    long size() {
+        return _count;
+    }
+
+    /** Finish writing and prepare to read my Rows from the beginning. */
+    void rewind() {
+        try {
+            if (_output != null) {
+                _output.close();
+                _output = null;
+            }
+            if (_input != null) {
+                _input.close();
+            }
+            _input = new DataInputStream(new BufferedInputStream(
+                         new FileInputStream(_file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw error("problem reading spill file: %s", e.getMessage());
+        }
+    }
+
+    /** Return my next Row, or null if there are no more. */
+    Row read() {
+        try {
+            int n;
+            try {
+                n = _input.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            String[] data = new String[n];
+            for (int k = 0; k < n; k += 1) {
+                data[k] = _input.readUTF();
+            }
+            return new Row(data);
+        } catch (IOException e) {
+            throw error("problem reading spill file: %s", e.getMessage());
+        }
+    }
+
+    /** Close and remove my file. */
+    void delete() {
+        try {
+            if (_output != null) {
+                _output.close();
+            }
+            if (_input != null) {
+                _input.close();
+            }
+        } catch (IOException e) {
+            /* Ignore IOException */
+        }
+        _output = null;
+        _input = null;
+        _file.delete();
+    }
+
+    /** Size in bytes of the buffers used to read and write my file. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** My file. */
+    private File _file;
+    /** Output to my file while I am being written, else null. */
+    private DataOutputStream _output;
+    /** Input from my file after rewinding, else null. */
+    private DataInputStream _input;
+    /** Number of Rows written to me. */
+    private long _count;
+}
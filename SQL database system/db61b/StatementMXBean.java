@@ -0,0 +1,52 @@
+package db61b;
+
+/** The management interface through which the counts and latencies of
+ *  one kind of statement are published over JMX, as the MBean named
+ *  db61b:type=Statement,name=KIND (such as name=select).
+ *  @author Jiaxin Huang
+ */
+public interface StatementMXBean {
+
+    /** Return the number of statements of my kind executed. */
+    long getCount();
+
+    /** Return the number of those that failed. */
+    long getErrors();
+
+    /** Return their mean latency, in milliseconds. */
+    double getMeanMillis();
+
+    /** Return their median latency, in milliseconds. */
+    double getMedianMillis();
+
+    /** Return the 90th percentile of their latencies, in milliseconds. */
+    double getP90Millis();
+
+    /** Return the 99th percentile of their latencies, in milliseconds. */
+    double getP99Millis();
+
+    /** Return their largest latency, in milliseconds. */
+    double getMaxMillis();
+
+    /** Return the number of rows they read by table scans, including
+     *  rescans of the inner table of nested loop joins. */
+    long getRowsScanned();
+
+    /** Return the number of rows they produced by scans and joins. */
+    long getRowsEmitted();
+
+    /** Return the number of pairs of rows they tested against join
+     *  conditions. */
+    long getJoinPairs();
+
+    /** Return the number of rows they checked for duplicates on adding
+     *  them to a table. */
+    long getDuplicateProbes();
+
+    /** Return the number of bytes they read from .db and .idx files. */
+    long getBytesRead();
+
+    /** Return the number of bytes they wrote to .db and .idx files. */
+    long getBytesWritten();
+
+}
@@ -1,24 +1,52 @@
 
 package db61b;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 import static db61b.Utils.*;
 
-/** A single table in a database.
+/** A single table in a database.  A table may be clustered by one of
+ *  its columns (see clusterColumn), keeping its rows sorted by that
+ *  column so that conditions on it can find their rows by binary
+ *  search.  Deleted rows are marked in a bitmap of tombstones, keeping
+ *  their positions, and are skipped by scans and index lookups until a
+ *  compaction copies the remaining rows (see delete).
  *  @author Jiaxin Huang
  */
-class Table implements Iterable<Row> {
+class Table implements Iterable<Row>, RowSink {
     /** A new Table named NAME whose columns are give by COLUMNTITLES,
      *  which must be distinct (else exception thrown). */
     Table(String name, String[] columnTitles) {
+        this(name, columnTitles, RowStore.HEAP);
+    }
+
+    /** A new Table named NAME whose columns are give by COLUMNTITLES,
+     *  which must be distinct, and whose rows are kept in a RowStore of
+     *  kind STORAGE. */
+    Table(String name, String[] columnTitles, String storage) {
         _name = name;
         for (int i = 0; i < columnTitles.length; i++) {
             for (int j = i + 1; j < columnTitles.length; j++) {
@@ -28,11 +56,20 @@ class Table implements Iterable<Row> {
             }
             _titles = columnTitles;
         }
+        _zoneMap = new ZoneMap(columnTitles.length);
+        _rows = RowStore.make(storage, columnTitles.length);
     }
 
     /** A new Table named NAME whose column names are give by COLUMNTITLES. */
     Table(String name, List<String> columnTitles) {
-        this(name, columnTitles.toArray(new String[columnTitles.size()]));
+        this(name, columnTitles, RowStore.HEAP);
+    }
+
+    /** A new Table named NAME whose column names are give by COLUMNTITLES,
+     *  and whose rows are kept in a RowStore of kind STORAGE. */
+    Table(String name, List<String> columnTitles, String storage) {
+        this(name, columnTitles.toArray(new String[columnTitles.size()]),
+             storage);
     }
 
     /** Return the number of columns in this table. */
@@ -50,10 +87,34 @@ class Table implements Iterable<Row> {
         return new TableIterator(this);
     }
 
-    /** Returns an iterator that returns my rows in an unspecfied order. */
+    /** Returns an iterator that returns my rows in an unspecfied order,
+     *  skipping deleted rows. */
     @Override
     public Iterator<Row> iterator() {
-        return _rows.iterator();
+        if (_dead == 0) {
+            return _rows.iterator(0);
+        }
+        RowStore rows = _rows;
+        BitSet deleted = _deleted;
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return _next < rows.size();
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Row row = rows.get(_next);
+                _next = deleted.nextClearBit(_next + 1);
+                return row;
+            }
+
+            /** Number of the next row to return. */
+            private int _next = deleted.nextClearBit(0);
+        };
     }
 
     /** Return the title of the Kth column.  Requires 0 <= K < columns(). */
@@ -72,36 +133,400 @@ class Table implements Iterable<Row> {
         return -1;
     }
 
-    /** Return the number of Rows in this table. */
+    /** Return the number of Rows in this table, including deleted rows
+     *  that keep their positions until a compaction (see live): one
+     *  more than the largest position of a row. */
     int size() {
         return _rows.size();
     }
 
-    /** Add ROW to THIS if no equal row already exists.  Return true if anything
-     *  was added, false otherwise. */
-    boolean add(Row row) {
-        if (!_rows.contains(row)) {
-            _rows.add(row);
+    /** Return the number of my rows that have not been deleted. */
+    int live() {
+        return _rows.size() - _dead;
+    }
+
+    /** Return true iff my row at POSITION has been deleted. */
+    boolean deleted(int position) {
+        return _dead > 0 && _deleted.get(position);
+    }
+
+    /** Return the position of my first row at or after POSITION that has
+     *  not been deleted, or a position at least size() if there is
+     *  none. */
+    int nextLive(int position) {
+        return _dead == 0 ? position : _deleted.nextClearBit(position);
+    }
+
+    /** Delete my rows at POSITIONS, leaving a tombstone at the position
+     *  of each, and return the number deleted (those not already
+     *  deleted).  Once more than MAX_DEAD_FRACTION of my rows are
+     *  deleted, a background thread starts copying the rest into a new
+     *  store, which replaces mine between statements (see
+     *  installCompaction).  A deleted row stays in my indexes, so that
+     *  adding it again revives it in place. */
+    synchronized int delete(int[] positions) {
+        int count = 0;
+        for (int position : positions) {
+            if (tombstone(position)) {
+                count += 1;
+            }
+        }
+        compactIfNeeded();
+        return count;
+    }
+
+    /** Set the values of the columns of my rows at POSITIONS whose
+     *  indices are COLUMNS to the respective VALUES, and return the
+     *  number of rows changed.  Since my rows are packed, and my
+     *  indexes only grow, each row changed is deleted and a row with its
+     *  new values added, reviving an equal deleted row in place, or
+     *  merging with an equal live one. */
+    synchronized int update(int[] positions, int[] columns,
+                            String[] values) {
+        ArrayList<String[]> changed = new ArrayList<>();
+        for (int position : positions) {
+            if (deleted(position)) {
+                continue;
+            }
+            Row row = _rows.get(position);
+            String[] data = new String[_titles.length];
+            for (int k = 0; k < data.length; k += 1) {
+                data[k] = row.get(k);
+            }
+            for (int k = 0; k < columns.length; k += 1) {
+                data[columns[k]] = values[k];
+            }
+            if (!row.matches(data)) {
+                tombstone(position);
+                changed.add(data);
+            }
+        }
+        for (String[] data : changed) {
+            add(data);
+        }
+        compactIfNeeded();
+        return changed.size();
+    }
+
+    /** Mark my row at POSITION deleted.  Return false if it already
+     *  was. */
+    private boolean tombstone(int position) {
+        if (_deleted.get(position)) {
+            return false;
+        }
+        _deleted.set(position);
+        _dead += 1;
+        _changes += 1;
+        return true;
+    }
+
+    /** Undelete my row at POSITION, if it is deleted, returning true iff
+     *  it was.  POSITION is -1 if there is no such row. */
+    private boolean revive(int position) {
+        if (position < 0 || !_deleted.get(position)) {
+            return false;
+        }
+        _deleted.clear(position);
+        _dead -= 1;
+        _changes += 1;
+        return true;
+    }
+
+    /** Cluster my rows by my column titled TITLE (see clusterColumn).
+     *  I must not have any rows yet. */
+    void clusterBy(String title) {
+        int column = columnIndex(title);
+        if (column == -1) {
+            throw error("%s is not a column in %s", title, _name);
+        }
+        if (size() > 0) {
+            throw error("%s already has rows and cannot be clustered",
+                        _name);
+        }
+        _cluster = column;
+    }
+
+    /** Return the index of the column by which my rows are clustered, or
+     *  -1 if they are not.  The rows of a clustered table are a run of
+     *  sortedRows() rows sorted by that column (its key), followed by
+     *  the rows added since, in order of addition.  A row added when no
+     *  rows follow the run, and whose key is no less than that of the
+     *  run's last row, extends the run.  Otherwise, once the rows
+     *  following the run reach 1/MERGE_RATIO of it (and at least
+     *  MIN_MERGE), they are sorted and merged into it, renumbering my
+     *  rows, as in a log-structured merge tree, so that the cost of
+     *  keeping the rows sorted is spread over the rows added. */
+    int clusterColumn() {
+        return _cluster;
+    }
+
+    /** Return the number of leading rows sorted by my cluster key, or 0
+     *  if I am not clustered. */
+    int sortedRows() {
+        return _sorted;
+    }
+
+    /** Return the number of times my rows have been renumbered by
+     *  merging them into my sorted run or by compaction. */
+    int reorganizations() {
+        return _reorganizations;
+    }
+
+    /** Return the position of the first of my sorted rows whose cluster
+     *  key is at least VALUE, or if STRICT, greater than VALUE, or
+     *  sortedRows() if there is none.  The rows before position FROM
+     *  must be known not to qualify; the search gallops forward from
+     *  there, so that a series of searches for increasing values costs
+     *  little more than a merge. */
+    int lowerBound(String value, boolean strict, int from) {
+        int lo = from, hi = from;
+        for (int step = 1; hi < _sorted && before(hi, value, strict);
+             step *= 2) {
+            lo = hi + 1;
+            hi += step;
+        }
+        hi = Math.min(hi, _sorted);
+        while (lo < hi) {
+            int middle = (lo + hi) >>> 1;
+            if (before(middle, value, strict)) {
+                lo = middle + 1;
+            } else {
+                hi = middle;
+            }
+        }
+        return lo;
+    }
+
+    /** Return true iff the cluster key of my row at POSITION is less
+     *  than VALUE, or if STRICT, no greater. */
+    private boolean before(int position, String value, boolean strict) {
+        int c = _rows.compare(position, _cluster, value);
+        return c < 0 || (strict && c == 0);
+    }
+
+    /** Remove my deleted rows and, if I am clustered, merge all my rows
+     *  into my sorted run, waiting for any compaction under way. */
+    void compact() {
+        Compaction pending;
+        synchronized (this) {
+            pending = _compaction;
+        }
+        if (pending != null) {
+            try {
+                pending._future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw error("interrupted while compacting %s", _name);
+            }
+        }
+        synchronized (this) {
+            installCompaction();
+            if (_cluster >= 0 && (_sorted < size() || _dead > 0)) {
+                merge();
+            } else if (_dead > 0) {
+                Compaction compaction = new Compaction();
+                compaction.copy(size());
+                compaction.install();
+            }
+        }
+    }
+
+    /** Start a compaction in the background if more than
+     *  MAX_DEAD_FRACTION of my rows are deleted and none is under
+     *  way. */
+    private void compactIfNeeded() {
+        if (_compaction == null && _dead > MAX_DEAD_FRACTION * size()) {
+            _compaction = new Compaction();
+            _compaction._future = COMPACTOR.submit(_compaction);
+        }
+    }
+
+    /** If a background compaction has finished, replace my rows by its
+     *  copy of my live rows, provided that none has been deleted or
+     *  revived, nor my rows renumbered, since it started (and otherwise
+     *  start another if still needed).  Rows added since are copied now.
+     *  Must be called only when no TableIterator is in use on me, as
+     *  between statements, since my rows are renumbered. */
+    synchronized void installCompaction() {
+        if (_compaction == null || !_compaction._future.isDone()) {
+            return;
+        }
+        Compaction compaction = _compaction;
+        _compaction = null;
+        if (compaction.current()) {
+            compaction.copy(size());
+            compaction.install();
+        } else {
+            compactIfNeeded();
+        }
+    }
+
+    /** Add ROW to THIS if no equal row already exists, or revive an equal
+     *  deleted row.  Return true if anything was added, false
+     *  otherwise. */
+    synchronized boolean add(Row row) {
+        Metrics.duplicateProbe();
+        if (_rows.add(row)) {
+            added(row);
+            return true;
+        }
+        return _dead > 0 && revive(_rows.find(row));
+    }
+
+    /** Add a row of VALUES to THIS if no equal row already exists, or
+     *  revive an equal deleted row, copying VALUES only if it is added.
+     *  Return true if anything was added, false otherwise. */
+    synchronized boolean add(String[] values) {
+        Metrics.duplicateProbe();
+        if (_rows.add(values)) {
+            added(_rows.get(_rows.size() - 1));
             return true;
         }
-        return false;
+        return _dead > 0 && revive(_rows.find(new Row(values)));
+    }
+
+    /** Update my zone map and indexes for ROW, just added as my last
+     *  row, and keep my rows clustered. */
+    private void added(Row row) {
+        int position = _rows.size() - 1;
+        _zoneMap.add(position, row);
+        for (HashIndex index : _indexes) {
+            index.add(position, row);
+        }
+        for (TrieIndex trie : _tries) {
+            trie.add(position, row);
+        }
+        if (_cluster >= 0) {
+            cluster();
+        }
+    }
+
+    /** Extend my sorted run with my last row if it may, and otherwise
+     *  merge the rows following the run into it if they have become too
+     *  many (see clusterColumn). */
+    private void cluster() {
+        int last = _rows.size() - 1;
+        if (_sorted == last
+            && (last == 0
+                || _rows.compare(last - 1, _cluster, _rows, last,
+                                 _cluster) <= 0)) {
+            _sorted += 1;
+        } else if (last + 1 - _sorted
+                   >= Math.max(MIN_MERGE, _sorted / MERGE_RATIO)) {
+            merge();
+        }
+    }
+
+    /** Sort the rows following my sorted run by my cluster key, stably,
+     *  and merge them into it, copying my live rows into a new store in
+     *  that order and rebuilding my zone map and indexes. */
+    private void merge() {
+        RowStore rows = _rows;
+        int column = _cluster;
+        Integer[] added = new Integer[rows.size() - _sorted];
+        for (int k = 0; k < added.length; k += 1) {
+            added[k] = _sorted + k;
+        }
+        Arrays.sort(added,
+                    (a, b) -> rows.compare(a, column, rows, b, column));
+        RowStore merged = RowStore.make(rows.kind(), _titles.length);
+        ZoneMap zoneMap = new ZoneMap(_titles.length);
+        int i, j;
+        i = j = 0;
+        while (i < _sorted || j < added.length) {
+            int next;
+            if (j == added.length
+                || (i < _sorted
+                    && rows.compare(i, column, rows, added[j],
+                                    column) <= 0)) {
+                next = i;
+                i += 1;
+            } else {
+                next = added[j];
+                j += 1;
+            }
+            if (deleted(next)) {
+                continue;
+            }
+            Row row = rows.get(next);
+            merged.add(row);
+            zoneMap.add(merged.size() - 1, row);
+        }
+        reorganized(merged, zoneMap, merged.size());
+        for (HashIndex index : _indexes) {
+            index.rebuild();
+        }
+        for (TrieIndex trie : _tries) {
+            trie.rebuild();
+        }
+    }
+
+    /** Replace my rows by ROWS, with the first SORTED sorted by my
+     *  cluster key, and my zone map by ZONEMAP, forgetting my deleted
+     *  rows, which ROWS lacks.  The caller must then rebuild or replace
+     *  my indexes. */
+    private void reorganized(RowStore rows, ZoneMap zoneMap, int sorted) {
+        _rows = rows;
+        _zoneMap = zoneMap;
+        _sorted = sorted;
+        _deleted.clear();
+        _dead = 0;
+        _reorganizations += 1;
+    }
+
+    @Override
+    public boolean accept(Row row) {
+        add(row);
+        return true;
+    }
+
+    /** {@inheritDoc}  I project COLUMNS into a buffer reused for every
+     *  row, so that rows already present cost no allocation. */
+    @Override
+    public boolean accept(List<Column> columns) {
+        if (_scratch == null || _scratch.length != columns.size()) {
+            _scratch = new String[columns.size()];
+        }
+        for (int k = 0; k < _scratch.length; k += 1) {
+            _scratch[k] = columns.get(k).value();
+        }
+        add(_scratch);
+        return true;
+    }
+
+    @Override
+    public void finish() {
     }
 
     /** Read the contents of the file NAME.db, and return as a Table.
      *  Format errors in the .db file cause a DBException. */
     static Table readTable(String name) {
+        return readTable(name, RowStore.HEAP);
+    }
+
+    /** Read the contents of the file NAME.db, and return as a Table whose
+     *  rows are kept in a RowStore of kind STORAGE, with the indexes in
+     *  NAME.idx, if it exists.  Format errors in the .db file cause a
+     *  DBException. */
+    static Table readTable(String name, String storage) {
         BufferedReader input;
         Table table;
         input = null;
         table = null;
         try {
-            input = new BufferedReader(new FileReader(name + ".db"));
+            CRC32 checksum = new CRC32();
+            input = new BufferedReader(new InputStreamReader(
+                new CheckedInputStream(new FileInputStream(name + ".db"),
+                                       checksum)));
             String header = input.readLine();
             if (header == null) {
                 throw error("missing header in DB file");
             }
-            String[] columnNames = header.split(",");
-            table = new Table(name, columnNames);
+            String[] clustered = header.split(CLUSTER_BY, 2);
+            String[] columnNames = clustered[0].split(",");
+            table = new Table(name, columnNames, storage);
+            if (clustered.length > 1) {
+                table.clusterBy(clustered[1]);
+            }
             String current = input.readLine();
             while (current != null) {
                 columnNames = current.split(",");
@@ -109,6 +534,8 @@ class Table implements Iterable<Row> {
                 current = input.readLine();
 
             }
+            Metrics.bytesRead(new File(name + ".db").length());
+            IndexFile.read(table, name, checksum.getValue());
 
         } catch (FileNotFoundException e) {
             throw error("could not find %s.db", name);
@@ -126,64 +553,331 @@ class Table implements Iterable<Row> {
         return table;
     }
 
-    /** Write the contents of TABLE into the file NAME.db. Any I/O errors
-     *  cause a DBException. */
+    /** Write the contents of TABLE into the file NAME.db, and its
+     *  indexes (hash and trie) into NAME.idx. Any I/O errors cause a
+     *  DBException.  If I am clustered, my rows are first merged into my
+     *  sorted run, and the header records my cluster key, so that
+     *  reading the file gives a table clustered in the same way whose
+     *  rows form one sorted run. */
     void writeTable(String name) {
+        compact();
         PrintStream output;
         output = null;
+        CRC32 checksum = new CRC32();
         try {
             String sep;
             sep = "";
-            output = new PrintStream(name + ".db");
+            output = new PrintStream(new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(name + ".db")),
+                checksum));
             int i;
-            for (i = 0; i < _titles.length; i++) {
+            for (i = 0; i < _titles.length - 1; i++) {
                 output.print(_titles[i] + ",");
             }
-            output.println(_titles[i]);
-            Iterator<Row> rowIterator = _rows.iterator();
+            output.print(_titles[i]);
+            if (_cluster >= 0) {
+                output.print(CLUSTER_BY + _titles[_cluster]);
+            }
+            output.println();
+            Iterator<Row> rowIterator = iterator();
             while (rowIterator.hasNext()) {
                 Row value = rowIterator.next();
                 int n;
                 for (n = 0; n < _titles.length - 1; n++) {
                     output.print(value.get(n) + ",");
                 }
-                output.println(_titles[n]);
+                output.println(value.get(n));
             }
         } catch (IOException e) {
             throw error("trouble writing to %s.db", name);
         } finally {
             if (output != null) {
                 output.close();
+                Metrics.bytesWritten(new File(name + ".db").length());
+            }
+        }
+        IndexFile.write(this, name, checksum.getValue());
+    }
+
+    /** Print my contents on the standard output in FORMAT (see
+     *  RowPrinter). */
+    void print(String format) {
+        RowPrinter printer = new RowPrinter(System.out, format);
+        for (Row row : this) {
+            printer.accept(row);
+        }
+        printer.finish();
+    }
+
+    /** Collect statistics about my current contents for the Planner. */
+    void analyze() {
+        _stats = new TableStats(this);
+    }
+
+    /** Return the statistics last collected by analyze, or null if I have
+     *  not been analyzed. */
+    TableStats stats() {
+        return _stats;
+    }
+
+    /** Return the summaries of the values in each block of my rows. */
+    ZoneMap zoneMap() {
+        return _zoneMap;
+    }
+
+    /** Create a hash index named NAME on my columns titled COLUMNS.
+     *  NAME must differ from those of my other indexes.  The index is
+     *  filled a block of rows at a time, holding my lock only for each
+     *  block, so that another thread may create it while rows are being
+     *  added (starting again if they are renumbered by a merge); it joins
+     *  my indexes once it holds all my rows. */
+    void createHashIndex(String name, List<String> columns) {
+        createHashIndex(name, columns, false);
+    }
+
+    /** Create a hash index named NAME on my columns titled COLUMNS, as
+     *  for createHashIndex(NAME, COLUMNS), which is AUTOMATIC if the
+     *  IndexAdvisor is creating it. */
+    void createHashIndex(String name, List<String> columns,
+                         boolean automatic) {
+        checkIndexName(name);
+        HashIndex index = new HashIndex(name, this, columns, automatic);
+        int reorganizations = _reorganizations;
+        while (true) {
+            synchronized (this) {
+                if (reorganizations != _reorganizations) {
+                    index = new HashIndex(name, this, columns, automatic);
+                    reorganizations = _reorganizations;
+                }
+                int end = Math.min(size(),
+                                   index.indexed() + ZoneMap.BLOCK_SIZE);
+                index.addRows(end);
+                if (end == size()) {
+                    addIndex(index);
+                    return;
+                }
             }
         }
     }
 
-    /** Print my contents on the standard output, separated by spaces
-     *  and indented by two spaces. */
-    void print() {
-        Iterator<Row> rowIterator = _rows.iterator();
-        while (rowIterator.hasNext()) {
-            Row value = rowIterator.next();
-            System.out.print("  ");
-            for (int n = 0; n < _titles.length; n++) {
-                System.out.print(value.get(n) + " ");
+    /** Add INDEX, an index on my columns holding my current rows, to my
+     *  indexes.  Its name must differ from those of the others. */
+    synchronized void addIndex(HashIndex index) {
+        checkIndexName(index.name());
+        _indexes.add(index);
+    }
+
+    /** Remove INDEX from my indexes. */
+    void dropIndex(HashIndex index) {
+        _indexes.remove(index);
+    }
+
+    /** Create a trie index named NAME on my column titled COLUMN.  NAME
+     *  must differ from those of my other indexes. */
+    synchronized void createTrieIndex(String name, String column) {
+        checkIndexName(name);
+        TrieIndex trie = new TrieIndex(name, this, column);
+        trie.rebuild();
+        _tries.add(trie);
+    }
+
+    /** Check that none of my indexes is named NAME. */
+    private void checkIndexName(String name) {
+        for (HashIndex index : _indexes) {
+            if (index.name().equals(name)) {
+                throw error("index %s already exists", name);
+            }
+        }
+        for (TrieIndex trie : _tries) {
+            if (trie.name().equals(name)) {
+                throw error("index %s already exists", name);
             }
-            System.out.println();
         }
     }
 
-    /** @return To get my arraylist of rows. */
-    ArrayList<Row> getrows() {
+    /** Return my indexes. */
+    List<HashIndex> indexes() {
+        return _indexes;
+    }
+
+    /** Return my trie indexes. */
+    List<TrieIndex> tries() {
+        return _tries;
+    }
+
+    /** Return the store holding my rows. */
+    RowStore rows() {
         return _rows;
     }
 
+    /** A copy, in order, of the rows of this table that are not deleted,
+     *  with their zone map and replacements for my indexes, made a block
+     *  at a time on a background thread that holds my lock only for each
+     *  block, as createHashIndex does, so that statements may run
+     *  meanwhile.  It is abandoned if a row is deleted or revived, or my
+     *  rows renumbered, before it is installed. */
+    private class Compaction implements Runnable {
+
+        /** A compaction of my current rows, which must be made while
+         *  holding my lock. */
+        Compaction() {
+            _startChanges = _changes;
+            _startReorganizations = _reorganizations;
+            _copy = RowStore.make(_rows.kind(), _titles.length);
+            _copyZones = new ZoneMap(_titles.length);
+            for (HashIndex index : _indexes) {
+                _copyIndexes.put(index, new HashIndex(index));
+            }
+            for (TrieIndex trie : _tries) {
+                _copyTries.put(trie, new TrieIndex(trie));
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (Table.this) {
+                    if (!current()) {
+                        return;
+                    }
+                    copy(Math.min(size(), _copied + ZoneMap.BLOCK_SIZE));
+                    if (_copied == size()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /** Return true iff none of my table's rows has been deleted or
+         *  revived, nor its rows renumbered, since I started. */
+        boolean current() {
+            return _changes == _startChanges
+                && _reorganizations == _startReorganizations;
+        }
+
+        /** Copy the live rows at the positions from the first not yet
+         *  copied through END - 1.  The caller must hold my table's
+         *  lock. */
+        void copy(int end) {
+            for (; _copied < end; _copied += 1) {
+                if (deleted(_copied)) {
+                    continue;
+                }
+                Row row = _rows.get(_copied);
+                _copy.add(row);
+                int position = _copy.size() - 1;
+                _copyZones.add(position, row);
+                for (HashIndex index : _copyIndexes.values()) {
+                    index.add(position, row);
+                }
+                for (TrieIndex trie : _copyTries.values()) {
+                    trie.add(position, row);
+                }
+                if (_copied < _sorted) {
+                    _copySorted += 1;
+                }
+            }
+        }
+
+        /** Replace my table's rows by my copy, which must hold all its
+         *  live rows, and its indexes by my replacements, rebuilding any
+         *  index created since I started.  The caller must hold my
+         *  table's lock. */
+        void install() {
+            reorganized(_copy, _copyZones, _copySorted);
+            for (HashIndex index : _indexes) {
+                HashIndex replacement = _copyIndexes.get(index);
+                if (replacement == null) {
+                    index.rebuild();
+                } else {
+                    index.replace(replacement);
+                }
+            }
+            for (TrieIndex trie : _tries) {
+                TrieIndex replacement = _copyTries.get(trie);
+                if (replacement == null) {
+                    trie.rebuild();
+                } else {
+                    trie.replace(replacement);
+                }
+            }
+        }
+
+        /** The value of _changes when I started. */
+        private final int _startChanges;
+        /** The value of _reorganizations when I started. */
+        private final int _startReorganizations;
+        /** The live rows copied. */
+        private final RowStore _copy;
+        /** The zone map of _copy. */
+        private final ZoneMap _copyZones;
+        /** Number of rows of _copy from the sorted run of my table. */
+        private int _copySorted;
+        /** Maps each index of my table when I started to an index on
+         *  the same key holding the rows of _copy. */
+        private final IdentityHashMap<HashIndex, HashIndex> _copyIndexes =
+            new IdentityHashMap<>();
+        /** Maps each trie index of my table when I started to one on the
+         *  same column holding the rows of _copy. */
+        private final IdentityHashMap<TrieIndex, TrieIndex> _copyTries =
+            new IdentityHashMap<>();
+        /** Number of positions of my table's rows copied or skipped. */
+        private int _copied;
+        /** The result of running me on COMPACTOR. */
+        private Future<?> _future;
+    }
 
+    /** Separates the column titles in the header of a .db file from the
+     *  title of the cluster key, if any. */
+    private static final String CLUSTER_BY = " cluster by ";
+    /** Least number of rows following the sorted run of a clustered
+     *  table that are merged into it. */
+    private static final int MIN_MERGE = ZoneMap.BLOCK_SIZE;
+    /** The rows following the sorted run of a clustered table are merged
+     *  into it when they reach 1/MERGE_RATIO of it. */
+    private static final int MERGE_RATIO = 8;
+    /** Largest fraction of a table's rows that may be deleted before it
+     *  is compacted. */
+    static final double MAX_DEAD_FRACTION = 0.25;
+    /** The thread compacting tables. */
+    private static final ExecutorService COMPACTOR =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "db61b-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
 
     /** My name. */
     private final String _name;
     /** My column titles. */
     private String[] _titles = new String[]{};
-    /** My list of rows. */
-    private ArrayList<Row> _rows = new ArrayList<Row>();
+    /** My rows, replaced by a merge. */
+    private RowStore _rows;
+    /** Summaries of the values in each block of _rows. */
+    private ZoneMap _zoneMap;
+    /** Index of the column by which my rows are clustered, or -1. */
+    private int _cluster = -1;
+    /** Number of leading rows of _rows sorted by column _cluster. */
+    private int _sorted;
+    /** Number of merges and compactions of my rows. */
+    private int _reorganizations;
+    /** Tombstones: the positions of my deleted rows. */
+    private final BitSet _deleted = new BitSet();
+    /** Number of my deleted rows. */
+    private int _dead;
+    /** Number of rows deleted or revived. */
+    private int _changes;
+    /** The compaction under way or finished but not installed, or
+     *  null. */
+    private Compaction _compaction;
+    /** Statistics about my contents, or null if not collected. */
+    private TableStats _stats;
+    /** My indexes, which may be changed by threads creating indexes while
+     *  others plan queries. */
+    private final List<HashIndex> _indexes = new CopyOnWriteArrayList<>();
+    /** My trie indexes. */
+    private final List<TrieIndex> _tries = new CopyOnWriteArrayList<>();
+    /** Buffer into which accept(List) projects rows, or null. */
+    private String[] _scratch;
 }
 
@@ -1,12 +1,21 @@
 package db61b;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /** An iterator through the rows of a Table.  Rather than providing the
  *  usual Java Iterator interface, a TableIterator acts more like a C++
  *  STL iterator: at any given time, there is a notion of the current
  *  Row and a separate method to proceed to the next.
+ *
+ *  A TableIterator may be restricted by conditions comparing its
+ *  columns to literals, in which case it skips whole blocks of rows
+ *  that the Table's ZoneMap shows cannot satisfy them, and, if the
+ *  Table is clustered, the rows of its sorted run that binary search
+ *  on the cluster key shows cannot satisfy them.  Deleted rows are
+ *  always skipped, runs of them at a time.
  *  @author Jiaxin Huang
  */
 class TableIterator {
@@ -14,20 +23,24 @@ class TableIterator {
     /** An STL-style iterator through the rows of TABLE. */
     TableIterator(Table table) {
         _table = table;
-        _rows = _table.getrows();
-        iter = _rows.iterator();
         reset();
     }
 
     /** Reinitialize me to the first row. */
     void reset() {
-        _rows = _table.getrows();
-        iter = _rows.iterator();
-        if (iter.hasNext()) {
-            _row = iter.next();
-        } else {
-            _row = null;
-        }
+        reset(null);
+    }
+
+    /** Reinitialize me to the first row, considering, if KEY is non-null,
+     *  only the rows of my table, which must be clustered, whose cluster
+     *  key is KEY, and those following its sorted run.  Successive
+     *  searches for increasing keys resume where the last left off. */
+    void reset(String key) {
+        _rows = _table.rows();
+        _scans += 1;
+        range(key);
+        _position = _start;
+        settle();
     }
 
     /** Return the Table over which I am iterating. */
@@ -35,27 +48,102 @@ class TableIterator {
         return _table;
     }
 
-    /** @return accessor for iter. */
+    /** @return an iterator through the rows after my current one. */
     Iterator<Row> iter() {
-        return iter;
+        return _rows.iterator(Math.min(_position + 1, _rows.size()));
     }
 
     /** Return true iff there is a current Row (that is, we have not
      *  exhausted the iterator). */
     boolean hasRow() {
-        return _row != null;
+        return _position < _rows.size();
+    }
+
+
+    /** Proceed to the next row.  Assumes that hasRow() is true. */
+    void next() {
+        _position += 1;
+        if (_position == _end || _position % ZoneMap.BLOCK_SIZE == 0
+            || _table.deleted(_position)) {
+            settle();
+        }
     }
 
+    /** Return the position of my current row among the rows of my
+     *  table. */
+    int position() {
+        return _position;
+    }
+
+    /** Make the row at POSITION among the rows of my table current, as
+     *  found in an index.  Return false iff it has been deleted, in which
+     *  case it should be ignored. */
+    boolean seek(int position) {
+        _position = position;
+        return !_table.deleted(position);
+    }
 
-    /** Proceed to the next row.  Assumes that hasRow() is true.  Return
-     *  the new value of hasRow(). */
-    Row next() {
-        if (iter.hasNext()) {
-            _row = iter.next();
-        } else {
-            _row = null;
+    /** Restrict me to the blocks of rows that might satisfy CONDITIONS,
+     *  each of which compares one of my columns to a literal or tests it
+     *  with an in.  Takes
+     *  effect at the next reset. */
+    void prune(List<Condition> conditions) {
+        _filters = conditions;
+        _filterColumns = new int[conditions.size()];
+        for (int i = 0; i < _filterColumns.length; i += 1) {
+            _filterColumns[i] = columnIndex(conditions.get(i).left().name());
         }
-        return _row;
+        _blocksSkipped = 0;
+        _rowsSkipped = 0;
+        _scans = 0;
+        _probe = null;
+    }
+
+    /** Return the number of blocks of rows skipped since the last call
+     *  to prune. */
+    int blocksSkipped() {
+        return _blocksSkipped;
+    }
+
+    /** Return the number of rows of my table's sorted run skipped by
+     *  binary search since the last call to prune. */
+    long rowsSkipped() {
+        return _rowsSkipped;
+    }
+
+    /** Return the numbers, in increasing order, of the blocks of my
+     *  table's rows that might satisfy my filters, counting the others
+     *  as skipped and this as a scan, as a reset would.  For scanning my
+     *  table without me, as a parallel scan does. */
+    int[] blocksToScan() {
+        _rows = _table.rows();
+        _scans += 1;
+        range(null);
+        int blocks =
+            (_rows.size() + ZoneMap.BLOCK_SIZE - 1) / ZoneMap.BLOCK_SIZE;
+        int[] result = new int[blocks];
+        int n;
+        n = 0;
+        for (int block = 0; block < blocks; block += 1) {
+            int first = block * ZoneMap.BLOCK_SIZE,
+                last = first + ZoneMap.BLOCK_SIZE;
+            if (last <= _start || (first >= _end && last <= _sorted)) {
+                continue;
+            }
+            if (mightMatch(block)) {
+                result[n] = block;
+                n += 1;
+            } else {
+                _blocksSkipped += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the number of times I have been reset since the last call
+     *  to prune. */
+    int scans() {
+        return _scans;
     }
 
     /** Return the index of column NAME in my Table, or -1 if there is no
@@ -64,21 +152,166 @@ class TableIterator {
         return _table.columnIndex(name);
     }
 
-    /** Return the value of column #K in the current row. */
+    /** Return the value of column #K in the current row, which my
+     *  table's RowStore decodes only when asked. */
     String value(int k) {
         if (!hasRow()) {
             throw new IllegalStateException("Past the last row.");
         }
-        return _row.get(k);
+        return _rows.value(_position, k);
+    }
+
+    /** Return the result of comparing the value of column #K in the
+     *  current row with VALUE, as by String.compareTo. */
+    int compare(int k, String value) {
+        if (!hasRow()) {
+            throw new IllegalStateException("Past the last row.");
+        }
+        return _rows.compare(_position, k, value);
+    }
+
+    /** Return the result of comparing the value of column #K in the
+     *  current row with that of column #K2 in the current row of OTHER,
+     *  as by String.compareTo. */
+    int compare(int k, TableIterator other, int k2) {
+        if (!hasRow() || !other.hasRow()) {
+            throw new IllegalStateException("Past the last row.");
+        }
+        return _rows.compare(_position, k, other._rows, other._position, k2);
+    }
+
+    /** Set the range of my table's sorted run that I visit, _start
+     *  through _end - 1, to the rows whose cluster keys might satisfy my
+     *  filters and, if KEY is non-null, equal KEY, counting the others as
+     *  skipped. */
+    private void range(String key) {
+        _sorted = _table.sortedRows();
+        _start = 0;
+        _end = _sorted;
+        int column = _table.clusterColumn();
+        if (column < 0) {
+            return;
+        }
+        for (int i = 0; i < _filterColumns.length; i += 1) {
+            if (_filterColumns[i] != column) {
+                continue;
+            }
+            Condition cond = _filters.get(i);
+            String value =
+                cond.right() == null ? null : cond.right().value();
+            switch (cond.relation()) {
+            case "=":
+                _start = Math.max(_start, _table.lowerBound(value, false, 0));
+                _end = Math.min(_end, _table.lowerBound(value, true, 0));
+                break;
+            case ">":
+                _start = Math.max(_start, _table.lowerBound(value, true, 0));
+                break;
+            case ">=":
+                _start = Math.max(_start,
+                                  _table.lowerBound(value, false, 0));
+                break;
+            case "<":
+                _end = Math.min(_end, _table.lowerBound(value, false, 0));
+                break;
+            case "<=":
+                _end = Math.min(_end, _table.lowerBound(value, true, 0));
+                break;
+            case Condition.IN:
+                String[] values = cond.values();
+                if (values.length == 0) {
+                    _end = _start;
+                    break;
+                }
+                _start = Math.max(_start,
+                                  _table.lowerBound(values[0], false, 0));
+                _end = Math.min(_end,
+                                _table.lowerBound(values[values.length - 1],
+                                                  true, 0));
+                break;
+            case Condition.LIKE:
+                String prefix = Condition.prefix(value),
+                    end = Condition.prefixEnd(prefix);
+                _start = Math.max(_start,
+                                  _table.lowerBound(prefix, false, 0));
+                if (end != null) {
+                    _end = Math.min(_end, _table.lowerBound(end, false, 0));
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        if (key != null) {
+            int from = _probe != null && _probe.compareTo(key) <= 0
+                ? Math.min(_probeStart, _sorted) : 0;
+            int first = _table.lowerBound(key, false, from);
+            _probe = key;
+            _probeStart = first;
+            _start = Math.max(_start, first);
+            _end = Math.min(_end, _table.lowerBound(key, true, first));
+        }
+        _end = Math.max(_start, _end);
+        _rowsSkipped += _sorted - (_end - _start);
+    }
+
+    /** Advance past the rest of the sorted run of my table, if I am past
+     *  the range of it that I visit, past any blocks, starting with
+     *  the one at my current position, whose rows cannot satisfy my
+     *  filters, and past deleted rows. */
+    private void settle() {
+        while (_position < _rows.size()) {
+            if (_position >= _end && _position < _sorted) {
+                _position = _sorted;
+            } else if (mightMatch(_position / ZoneMap.BLOCK_SIZE)) {
+                int live = _table.nextLive(_position);
+                if (live == _position) {
+                    return;
+                }
+                _position = live;
+            } else {
+                _position =
+                    (_position / ZoneMap.BLOCK_SIZE + 1) * ZoneMap.BLOCK_SIZE;
+                _blocksSkipped += 1;
+            }
+        }
+    }
+
+    /** Return true iff some rows in block number BLOCK of my table might
+     *  satisfy my filters. */
+    private boolean mightMatch(int block) {
+        return _filters.isEmpty()
+            || _table.zoneMap().mightMatch(block, _filters, _filterColumns);
     }
 
     /** My table. */
     private final Table _table;
-    /** The current Row of my Table, or null if there are no more. */
-    private Row _row;
-    /** My list of rows. */
-    private ArrayList<Row> _rows = new ArrayList<>();
-    /** Iterator to go throuh my rows. */
-    private Iterator<Row> iter;
+    /** The rows of my table. */
+    private RowStore _rows;
+    /** Index of the current Row in _rows. */
+    private int _position;
+    /** Conditions on my columns used to skip blocks of rows. */
+    private List<Condition> _filters = new ArrayList<>();
+    /** The indices of the columns tested by _filters. */
+    private int[] _filterColumns = new int[0];
+    /** Number of blocks skipped since the last call to prune. */
+    private int _blocksSkipped;
+    /** Number of resets since the last call to prune. */
+    private int _scans;
+    /** Number of rows in the sorted run of my table when I was last
+     *  reset. */
+    private int _sorted;
+    /** The range of positions in the sorted run of my table that I
+     *  visit, before the rows following it. */
+    private int _start, _end;
+    /** Number of rows of the sorted run skipped since the last call to
+     *  prune. */
+    private long _rowsSkipped;
+    /** The last key given to reset since the last call to prune, or
+     *  null. */
+    private String _probe;
+    /** Position of the first row of the sorted run whose cluster key is
+     *  at least _probe. */
+    private int _probeStart;
 
 }
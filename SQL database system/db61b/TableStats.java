@@ -0,0 +1,111 @@
+package db61b;
+
+import java.util.Random;
+
+/** Statistics about the contents of a Table, collected by an 'analyze'
+ *  statement and used by the Planner: its number of rows and, for each
+ *  column, an estimate of its number of distinct values (from a
+ *  HyperLogLog sketch) and an equi-depth Histogram of a sample of its
+ *  values.
+ *  @author Jiaxin Huang
+ */
+class TableStats {
+
+    /** Statistics for the current contents of TABLE. */
+    TableStats(Table table) {
+        int columns = table.numColumns();
+        _rows = table.live();
+        _distinct = new double[columns];
+        _histograms = new Histogram[columns];
+
+        HyperLogLog[] sketches = new HyperLogLog[columns];
+        for (int c = 0; c < columns; c += 1) {
+            sketches[c] = new HyperLogLog();
+        }
+        Random random = new Random(SEED);
+        int sampled = (int) Math.min(_rows, SAMPLE_SIZE);
+        String[][] samples = new String[columns][sampled];
+        long n = 0;
+        for (Row row : table) {
+            int slot = -1;
+            if (n < SAMPLE_SIZE) {
+                slot = (int) n;
+            } else {
+                long r = (long) (random.nextDouble() * (n + 1));
+                if (r < SAMPLE_SIZE) {
+                    slot = (int) r;
+                }
+            }
+            for (int c = 0; c < columns; c += 1) {
+                sketches[c].add(row.get(c));
+                if (slot >= 0) {
+                    samples[c][slot] = row.get(c);
+                }
+            }
+            n += 1;
+        }
+        for (int c = 0; c < columns; c += 1) {
+            _distinct[c] = Math.max(1, Math.min(_rows, sketches[c].estimate()));
+            _histograms[c] = new Histogram(samples[c], BUCKETS);
+        }
+    }
+
+    /** Return the number of rows in my table when I was collected. */
+    long rows() {
+        return _rows;
+    }
+
+    /** Return the estimated number of distinct values in column
+     *  COLUMN. */
+    double distinct(int column) {
+        return _distinct[column];
+    }
+
+    /** Return the histogram of the values in column COLUMN. */
+    Histogram histogram(int column) {
+        return _histograms[column];
+    }
+
+    /** Return the estimated fraction of rows whose values V in column
+     *  COLUMN satisfy V RELATION LITERAL. */
+    double selectivity(int column, String relation, String literal) {
+        Histogram hist = _histograms[column];
+        double equal = 1.0 / _distinct[column];
+        switch (relation) {
+        case "=":
+            return equal;
+        case "!=":
+            return 1.0 - equal;
+        case "<":
+            return hist.fractionBelow(literal, false);
+        case "<=":
+            return hist.fractionBelow(literal, true);
+        case ">":
+            return 1.0 - hist.fractionBelow(literal, true);
+        case ">=":
+            return 1.0 - hist.fractionBelow(literal, false);
+        case Condition.LIKE:
+            String prefix = Condition.prefix(literal),
+                end = Condition.prefixEnd(prefix);
+            return (end == null ? 1.0 : hist.fractionBelow(end, false))
+                - hist.fractionBelow(prefix, false);
+        default:
+            return 1.0;
+        }
+    }
+
+    /** Maximum number of values of each column sampled for histograms. */
+    private static final long SAMPLE_SIZE = 100000;
+    /** Number of buckets in each histogram. */
+    private static final int BUCKETS = 64;
+    /** Seed for the random sampling of values, so that analysis is
+     *  repeatable. */
+    private static final long SEED = 61;
+
+    /** Number of rows. */
+    private final long _rows;
+    /** Estimated number of distinct values in each column. */
+    private final double[] _distinct;
+    /** Histogram of each column. */
+    private final Histogram[] _histograms;
+}
@@ -13,27 +13,30 @@ import static db61b.Utils.*;
 class Tokenizer {
 
     /** Text of regular expressions that represent literals (possibly
-     *  unterminated), identifiers, and comments (possibly
+     *  unterminated), identifiers, numerals, and comments (possibly
      *  unterminated). */
     private static final String
         LITERAL_TEXT = "'(?:[^,'\n\r]*)'?",
         IDENTIFIER_TEXT = "[\\p{Alpha}_]\\w*",
+        NUMBER_TEXT = "\\d+",
         COMMENT_TEXT = "(?:/\\*.*?\\*/|/\\*.*)";
     /** Matches potential tokens, including valid or unterminated
-     *  literals, valid or unterminated comments, identifiers,
+     *  literals, valid or unterminated comments, identifiers, numerals,
      *  relation symbols (=, <, <=, >=, and !=), end-of-line
      *  sequences, or other single characters.  The pattern matches a
      *  prefix of any string. */
     private static final Pattern
-        TOKEN_PATN = mkPatn("(?s)[<>!]?=|%s|%s|%s|\r?\n|\\S",
-                            LITERAL_TEXT, IDENTIFIER_TEXT, COMMENT_TEXT);
+        TOKEN_PATN = mkPatn("(?s)[<>!]?=|%s|%s|%s|%s|\r?\n|\\S",
+                            LITERAL_TEXT, IDENTIFIER_TEXT, NUMBER_TEXT,
+                            COMMENT_TEXT);
 
     /** Patterns matching specific kinds of token.  These are intended
      *  to be used with methods such as CommandInterpreter.name. */
     static final Pattern
         IDENTIFIER = mkPatn(IDENTIFIER_TEXT),
         LITERAL = mkPatn("'.*"),
-        RELATION = mkPatn("[<>!]?=|[<>]");
+        NUMBER = mkPatn(NUMBER_TEXT),
+        RELATION = mkPatn("[<>!]?=|[<>]|like");
 
     /** A Tokenizer that reads tokens from S, and prompts on PROMPTER,
      *  if it is non-null. */
@@ -47,6 +50,11 @@ class Tokenizer {
         _mat = Pattern.compile(".").matcher("");
     }
 
+    /** Prompt on PROMPTER from now on, or not at all if it is null. */
+    void setPrompter(PrintStream prompter) {
+        _prompter = prompter;
+    }
+
     /** Read the next potential token and add it to _buffer.  Filters
      *  out comments and ends-of-line. Adds "*EOF*" at the end of input.
      *  Throws DBException on encountering a lexical error (such as an
@@ -76,9 +84,9 @@ class Tokenizer {
         }
     }
 
-    /** Print an appropriate prompt, if there is a prompter: either ">"
-     *  when expecting the start of a new command, or "..."
-     *  otherwise. */
+    /** Print an appropriate prompt, if one is due and there is a
+     *  prompter: either ">" when expecting the start of a new command,
+     *  or "..." otherwise.  A prompt due with no prompter is dropped. */
     private void prompt() {
         if (_shouldPrompt && _prompter != null) {
             if (_continued) {
@@ -87,8 +95,8 @@ class Tokenizer {
                 _prompter.print("> ");
             }
             _prompter.flush();
-            _shouldPrompt = false;
         }
+        _shouldPrompt = false;
     }
 
     /** Read and return the next token, if it matches P.  Otherwise throw
@@ -169,6 +177,32 @@ class Tokenizer {
         return _buffer.get(_k);
     }
 
+    /** Return my current position in the token stream, for use with
+     *  text. */
+    int position() {
+        return _k;
+    }
+
+    /** Return the tokens read since position START, separated by
+     *  blanks, with each literal and numeral replaced by '?', so that
+     *  statements differing only in their constants have the same
+     *  text. */
+    String text(int start) {
+        StringBuilder result = new StringBuilder();
+        for (int k = start; k < _k; k += 1) {
+            String token = _buffer.get(k);
+            if (_mat.usePattern(LITERAL).reset(token).matches()
+                || _mat.usePattern(NUMBER).reset(token).matches()) {
+                token = "?";
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(token);
+        }
+        return result.toString();
+    }
+
     /** Matcher used for pattern matching. */
     private Matcher _mat;
     /** The character input source. */
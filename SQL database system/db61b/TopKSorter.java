@@ -0,0 +1,78 @@
+package db61b;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/** A RowSink that sends on, in order and without duplicates, only the
+ *  first few of the rows sent to it (after skipping an offset).  It
+ *  keeps just the best rows seen so far in a bounded heap whose root is
+ *  the worst of them, so that it needs memory proportional to the
+ *  number of rows wanted rather than to the number received.
+ *  @author Jiaxin Huang
+ */
+class TopKSorter implements RowSink {
+
+    /** A TopKSorter that sends to OUTPUT rows OFFSET through
+     *  OFFSET + COUNT - 1 (numbering from 0) of its input in ORDER.
+     *  OFFSET + COUNT must be at most MAX_ROWS. */
+    TopKSorter(RowOrder order, long offset, long count, RowSink output) {
+        assert offset <= MAX_ROWS && count <= MAX_ROWS - offset;
+        _order = order;
+        _offset = (int) offset;
+        _size = (int) (offset + count);
+        _output = output;
+        int capacity = Math.max(1, Math.min(_size, INITIAL_CAPACITY));
+        _heap = new PriorityQueue<>(capacity,
+                                    Collections.reverseOrder(order));
+    }
+
+    @Override
+    public boolean accept(Row row) {
+        if (_heap.size() < _size) {
+            if (_members.add(row)) {
+                _heap.add(row);
+            }
+        } else if (_size > 0 && _order.compare(row, _heap.peek()) < 0
+                   && _members.add(row)) {
+            _members.remove(_heap.poll());
+            _heap.add(row);
+        }
+        return _size > 0;
+    }
+
+    @Override
+    public void finish() {
+        Row[] rows = _heap.toArray(new Row[_heap.size()]);
+        _heap.clear();
+        _members.clear();
+        Arrays.sort(rows, _order);
+        for (int i = _offset; i < rows.length; i += 1) {
+            if (!_output.accept(rows[i])) {
+                break;
+            }
+        }
+        _output.finish();
+    }
+
+    /** Largest number of rows (including the offset) that a TopKSorter
+     *  keeps. */
+    static final long MAX_ROWS = 1 << 20;
+    /** Largest initial capacity of the heap, which grows as rows arrive,
+     *  so that a large limit on a small input costs little memory. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The order of my rows. */
+    private final RowOrder _order;
+    /** Number of leading rows to skip. */
+    private final int _offset;
+    /** Number of rows to keep. */
+    private final int _size;
+    /** Destination of my rows. */
+    private final RowSink _output;
+    /** The best rows seen so far, with the worst of them at the root. */
+    private final PriorityQueue<Row> _heap;
+    /** The rows in _heap. */
+    private final HashSet<Row> _members = new HashSet<>();
+}
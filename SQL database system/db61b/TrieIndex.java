@@ -0,0 +1,243 @@
+package db61b;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import static db61b.Utils.*;
+
+/** An index mapping the values of one column of a table to the
+ *  positions of the rows having them, kept up to date as rows are
+ *  added.  The values are kept in a radix tree: a trie in which each
+ *  chain of nodes with single children is merged into one node, whose
+ *  edge is labelled by a string rather than a character.  The rows whose
+ *  values begin with a prefix are then those below the node that the
+ *  prefix leads to, so that the Planner can answer a like condition
+ *  whose pattern starts with a prefix (or an equality) without a scan.
+ *  @author Jiaxin Huang
+ */
+class TrieIndex {
+
+    /** A node of the tree.  The values leading to it are the
+     *  concatenation of the labels from the root down to it. */
+    private static class Node {
+
+        /** A node reached by LABEL from its parent. */
+        Node(String label) {
+            _label = label;
+        }
+
+        /** Return the index in _children of my child whose label starts
+         *  with CH, or -1 if there is none. */
+        int child(char ch) {
+            int k = Arrays.binarySearch(_firsts, 0, _count, ch);
+            return k < 0 ? -1 : k;
+        }
+
+        /** Add CHILD to my children, of which none may have a label
+         *  starting with the same character. */
+        void addChild(Node child) {
+            char ch = child._label.charAt(0);
+            int k = -Arrays.binarySearch(_firsts, 0, _count, ch) - 1;
+            if (_count == _firsts.length) {
+                _firsts = Arrays.copyOf(_firsts, 2 * _count + 1);
+                _children = Arrays.copyOf(_children, 2 * _count + 1);
+            }
+            System.arraycopy(_firsts, k, _firsts, k + 1, _count - k);
+            System.arraycopy(_children, k, _children, k + 1, _count - k);
+            _firsts[k] = ch;
+            _children[k] = child;
+            _count += 1;
+        }
+
+        /** Record that the row at POSITION has the value ending here. */
+        void addPosition(int position) {
+            if (_size == _positions.length) {
+                _positions = Arrays.copyOf(_positions, 2 * _size + 1);
+            }
+            _positions[_size] = position;
+            _size += 1;
+        }
+
+        /** The label of the edge from my parent. */
+        private String _label;
+        /** The first characters of my children's labels, in increasing
+         *  order, followed by unused space. */
+        private char[] _firsts = new char[0];
+        /** My children, in the order of _firsts. */
+        private Node[] _children = new Node[0];
+        /** Number of my children. */
+        private int _count;
+        /** Positions of the rows whose value ends here, followed by
+         *  unused space. */
+        private int[] _positions = new int[0];
+        /** Number of positions. */
+        private int _size;
+    }
+
+    /** An index named NAME on the column of TABLE titled COLUMN, holding
+     *  none of TABLE's rows (see rebuild). */
+    TrieIndex(String name, Table table, String column) {
+        _name = name;
+        _table = table;
+        _column = table.columnIndex(column);
+        if (_column == -1) {
+            throw error("%s is not a column in %s", column, table.name());
+        }
+    }
+
+    /** An index with the name, table, and column of LIKE, holding no
+     *  rows, to be filled with the rows of a compacted copy of the table
+     *  (see replace). */
+    TrieIndex(TrieIndex like) {
+        _name = like._name;
+        _table = like._table;
+        _column = like._column;
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the index in my table of my column. */
+    int column() {
+        return _column;
+    }
+
+    /** Return the number of distinct values I hold. */
+    int values() {
+        return _values;
+    }
+
+    /** Forget my values and add all the rows of my table again.  The
+     *  caller must prevent rows from being added to the table
+     *  meanwhile. */
+    void rebuild() {
+        _root = new Node("");
+        _values = 0;
+        RowStore rows = _table.rows();
+        for (int position = 0; position < rows.size(); position += 1) {
+            add(position, rows.value(position, _column));
+        }
+    }
+
+    /** Forget my values and take over those of REPLACEMENT, an index on
+     *  the same column holding all the rows of my table after it has
+     *  been compacted. */
+    void replace(TrieIndex replacement) {
+        _root = replacement._root;
+        _values = replacement._values;
+    }
+
+    /** Record that ROW, a row of my table, is at POSITION. */
+    void add(int position, Row row) {
+        add(position, row.get(_column));
+    }
+
+    /** Record that the row at POSITION has VALUE in my column. */
+    private void add(int position, String value) {
+        Node node = _root;
+        int i = 0;
+        while (i < value.length()) {
+            int c = node.child(value.charAt(i));
+            if (c == -1) {
+                Node leaf = new Node(value.substring(i));
+                node.addChild(leaf);
+                node = leaf;
+                break;
+            }
+            Node child = node._children[c];
+            int n = common(child._label, value, i);
+            if (n < child._label.length()) {
+                Node middle = new Node(child._label.substring(0, n));
+                child._label = child._label.substring(n);
+                middle.addChild(child);
+                node._children[c] = middle;
+                child = middle;
+            }
+            node = child;
+            i += n;
+        }
+        if (node._size == 0) {
+            _values += 1;
+        }
+        node.addPosition(position);
+    }
+
+    /** Return the positions, in increasing order, of the rows whose
+     *  values begin with PREFIX, or if EXACT, equal PREFIX. */
+    int[] lookup(String prefix, boolean exact) {
+        Node node = _root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int c = node.child(prefix.charAt(i));
+            if (c == -1) {
+                return NONE;
+            }
+            node = node._children[c];
+            int n = common(node._label, prefix, i);
+            i += n;
+            if (n < node._label.length()) {
+                if (exact || i < prefix.length()) {
+                    return NONE;
+                }
+            }
+        }
+        if (exact) {
+            return Arrays.copyOf(node._positions, node._size);
+        }
+        int[] result = new int[node._size];
+        int size;
+        size = 0;
+        ArrayDeque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node next = pending.pop();
+            if (size + next._size > result.length) {
+                result = Arrays.copyOf(result,
+                                       Math.max(2 * result.length,
+                                                size + next._size));
+            }
+            System.arraycopy(next._positions, 0, result, size, next._size);
+            size += next._size;
+            for (int k = 0; k < next._count; k += 1) {
+                pending.push(next._children[k]);
+            }
+        }
+        result = Arrays.copyOf(result, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Return the length of the longest common prefix of LABEL and the
+     *  characters of VALUE from START on. */
+    private static int common(String label, String value, int start) {
+        int n = Math.min(label.length(), value.length() - start);
+        for (int k = 0; k < n; k += 1) {
+            if (label.charAt(k) != value.charAt(start + k)) {
+                return k;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return format("%s on %s (%s)", _name, _table.name(),
+                      _table.title(_column));
+    }
+
+    /** The result of looking up a prefix that no value has. */
+    private static final int[] NONE = new int[0];
+
+    /** My name. */
+    private final String _name;
+    /** The table indexed. */
+    private final Table _table;
+    /** Index of my column in _table. */
+    private final int _column;
+    /** The root of my tree, whose label is empty. */
+    private Node _root = new Node("");
+    /** Number of distinct values. */
+    private int _values;
+}
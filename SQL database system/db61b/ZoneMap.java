@@ -0,0 +1,127 @@
+package db61b;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Summaries of the values in the rows of a Table, which is divided into
+ *  consecutive blocks of BLOCK_SIZE rows.  For each block and column, a
+ *  ZoneMap records the smallest and largest values present and the
+ *  number of empty values.  A scan with conditions comparing columns to
+ *  literals can skip any block whose summaries show that none of its
+ *  rows can satisfy them.
+ *  @author Jiaxin Huang
+ */
+class ZoneMap {
+
+    /** Number of rows in each block. */
+    static final int BLOCK_SIZE = 1024;
+
+    /** An empty ZoneMap for a table with COLUMNS columns. */
+    ZoneMap(int columns) {
+        _columns = columns;
+    }
+
+    /** Record that ROW is row number POSITION of the table.  Rows must be
+     *  recorded in order of position. */
+    void add(int position, Row row) {
+        int block = position / BLOCK_SIZE;
+        if (block == _mins.size()) {
+            _mins.add(new String[_columns]);
+            _maxs.add(new String[_columns]);
+            _empties.add(new int[_columns]);
+        }
+        String[] mins = _mins.get(block), maxs = _maxs.get(block);
+        int[] empties = _empties.get(block);
+        for (int c = 0; c < _columns; c += 1) {
+            String value = row.get(c);
+            if (mins[c] == null || value.compareTo(mins[c]) < 0) {
+                mins[c] = value;
+            }
+            if (maxs[c] == null || value.compareTo(maxs[c]) > 0) {
+                maxs[c] = value;
+            }
+            if (value.isEmpty()) {
+                empties[c] += 1;
+            }
+        }
+    }
+
+    /** Return the number of blocks summarized. */
+    int blocks() {
+        return _mins.size();
+    }
+
+    /** Return the smallest value of column COLUMN in block BLOCK. */
+    String min(int block, int column) {
+        return _mins.get(block)[column];
+    }
+
+    /** Return the largest value of column COLUMN in block BLOCK. */
+    String max(int block, int column) {
+        return _maxs.get(block)[column];
+    }
+
+    /** Return the number of empty values of column COLUMN in block
+     *  BLOCK. */
+    int empties(int block, int column) {
+        return _empties.get(block)[column];
+    }
+
+    /** Return false if no row in block BLOCK can have a value V in column
+     *  COLUMN such that V RELATION LITERAL, and true if one might. */
+    boolean mightMatch(int block, int column, String relation,
+                       String literal) {
+        String min = min(block, column), max = max(block, column);
+        switch (relation) {
+        case "=":
+            return min.compareTo(literal) <= 0 && max.compareTo(literal) >= 0;
+        case "!=":
+            return !(min.equals(literal) && max.equals(literal));
+        case "<":
+            return min.compareTo(literal) < 0;
+        case "<=":
+            return min.compareTo(literal) <= 0;
+        case ">":
+            return max.compareTo(literal) > 0;
+        case ">=":
+            return max.compareTo(literal) >= 0;
+        case Condition.LIKE:
+            String prefix = Condition.prefix(literal),
+                end = Condition.prefixEnd(prefix);
+            return max.compareTo(prefix) >= 0
+                && (end == null || min.compareTo(end) < 0);
+        default:
+            return true;
+        }
+    }
+
+    /** Return false if no row in block BLOCK can satisfy all of
+     *  CONDITIONS, and true if one might.  Each condition must compare
+     *  a column of my table, whose index is the corresponding element of
+     *  COLUMNS, to a literal, or test it with an in. */
+    boolean mightMatch(int block, List<Condition> conditions,
+                       int[] columns) {
+        for (int i = 0; i < columns.length; i += 1) {
+            Condition cond = conditions.get(i);
+            if (cond.relation().equals(Condition.IN)) {
+                if (!cond.anyBetween(min(block, columns[i]),
+                                     max(block, columns[i]))) {
+                    return false;
+                }
+            } else if (!mightMatch(block, columns[i], cond.relation(),
+                                   cond.right().value())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Number of columns in my table. */
+    private final int _columns;
+    /** Smallest value of each column in each block. */
+    private final ArrayList<String[]> _mins = new ArrayList<>();
+    /** Largest value of each column in each block. */
+    private final ArrayList<String[]> _maxs = new ArrayList<>();
+    /** Number of empty values of each column in each block. */
+    private final ArrayList<int[]> _empties = new ArrayList<>();
+}
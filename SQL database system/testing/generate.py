@@ -0,0 +1,156 @@
+#!/usr/bin/env python3
+# -*-Python-*-
+
+"""Generate synthetic db61b tables for performance testing.
+
+Writes students.db, enrolled.db, and schedule.db, with the same schemas as
+the samples in this directory, plus wide.db, a table with many columns,
+into a directory.  Their sizes are proportional to a scale factor; at
+scale factor 1, there are
+
+    students:  1000 rows
+    schedule:  200 rows
+    enrolled:  10 rows per student
+    wide:      1000 rows
+
+Other options control the data's shape:
+
+    --skew=S         Values of non-key columns, and the courses in which
+                     students enroll, follow a Zipf distribution with
+                     exponent S; 0 (the default) makes them uniform.
+    --cardinality=N  Number of distinct values of each non-key column
+                     (such as Major, Dept, or Lastname), at least 2
+                     [default 20].
+    --duplicates=P   Fraction of the rows of each table that repeat an
+                     earlier row exactly [default 0].
+    --columns=N      Number of columns in wide.db, at least 16 [default 32].
+    --seed=N         Seed for the random numbers [default 61].
+
+The values that the workload scripts in workload/ mention (Major 'M00'
+and 'M01', Dept 'D00' and 'D01', wide values 'V00' and 'V01', and Grade
+'A') are always present, and under skew are the most common.
+
+Usage: python3 generate.py [options] SCALE_FACTOR DIRECTORY
+"""
+
+import getopt
+import os
+import random
+import sys
+from itertools import accumulate
+from os.path import join
+
+STUDENTS = 1000
+COURSES = 200
+ENROLLMENTS_PER_STUDENT = 10
+WIDE_ROWS = 1000
+
+GRADES = ["A", "A-", "B+", "B", "B-", "C+", "C", "C-", "D", "F"]
+SEMESTERS = ["F", "S"]
+FIRST_YEAR = 2000
+YEARS = 16
+TIMES = ["8-9MWF", "9-10MWF", "10-11MWF", "11-12MWF", "1-2MWF", "2-3MWF",
+         "9:30-11TTh", "11-12:30TTh", "2-3:30TTh", "3:30-5TTh"]
+
+class Chooser:
+    """Chooses among VALUES, the first most often, following a Zipf
+    distribution with exponent SKEW (uniformly if SKEW is 0)."""
+
+    def __init__(self, rand, values, skew):
+        self.rand = rand
+        self.values = list(values)
+        weights = [1 / (k + 1) ** skew for k in range(len(self.values))]
+        self.cumulative = list(accumulate(weights))
+
+    def __call__(self):
+        return self.rand.choices(self.values,
+                                 cum_weights=self.cumulative)[0]
+
+def names(prefix, count):
+    """The COUNT names PREFIX00, PREFIX01, ...."""
+    return ["{}{:02d}".format(prefix, k) for k in range(count)]
+
+def write_table(directory, name, titles, rows, rand, duplicates):
+    """Write ROWS of a table with column TITLES to DIRECTORY/NAME.db, after
+    replacing a fraction DUPLICATES of them with copies of earlier rows."""
+    with open(join(directory, name + ".db"), "w") as out:
+        print(",".join(titles), file=out)
+        for k, row in enumerate(rows):
+            if k > 0 and rand.random() < duplicates:
+                row = rows[rand.randrange(k)]
+            print(",".join(row), file=out)
+
+def generate(scale, directory, skew=0.0, cardinality=20, duplicates=0.0,
+             columns=32, seed=61):
+    """Write the synthetic tables at scale factor SCALE into DIRECTORY."""
+    rand = random.Random(seed)
+    def chooser(values):
+        return Chooser(rand, values, skew)
+
+    students = max(1, round(STUDENTS * scale))
+    courses = max(1, round(COURSES * scale))
+    os.makedirs(directory, exist_ok=True)
+
+    major = chooser(names("M", cardinality))
+    lastname = chooser(names("Last", cardinality))
+    firstname = chooser(names("First", cardinality))
+    year = chooser(str(FIRST_YEAR + k) for k in range(YEARS))
+    rows = [["{:08d}".format(sid), lastname(), firstname(),
+             rand.choice(SEMESTERS), year(), major()]
+            for sid in range(students)]
+    write_table(directory, "students",
+                ["SID", "Lastname", "Firstname", "SemEnter", "YearEnter",
+                 "Major"], rows, rand, duplicates)
+
+    ccns = ["{:06d}".format(ccn) for ccn in range(courses)]
+    dept = chooser(names("D", cardinality))
+    rows = [[ccn, "{:03d}".format(rand.randrange(1000)), dept(),
+             rand.choice(TIMES), "{} Room{:02d}".format(rand.randrange(500),
+                                                       rand.randrange(50)),
+             rand.choice(SEMESTERS), year()]
+            for ccn in ccns]
+    write_table(directory, "schedule",
+                ["CCN", "Num", "Dept", "Time", "Room", "Sem", "Year"],
+                rows, rand, duplicates)
+
+    course = chooser(ccns)
+    grade = chooser(GRADES)
+    rows = [["{:08d}".format(sid), course(), grade()]
+            for sid in range(students)
+            for k in range(ENROLLMENTS_PER_STUDENT)]
+    write_table(directory, "enrolled", ["SID", "CCN", "Grade"],
+                rows, rand, duplicates)
+
+    value = chooser(names("V", cardinality))
+    rows = [["{:08d}".format(k)] + [value() for c in range(1, columns)]
+            for k in range(max(1, round(WIDE_ROWS * scale)))]
+    write_table(directory, "wide",
+                ["Id"] + ["C{:02d}".format(c) for c in range(1, columns)],
+                rows, rand, duplicates)
+
+def usage():
+    print("Usage: python3 generate.py [--skew=S] [--cardinality=N] "
+          "[--duplicates=P] [--columns=N] [--seed=N] SCALE_FACTOR DIRECTORY",
+          file=sys.stderr)
+    sys.exit(1)
+
+if __name__ == "__main__":
+    options = {}
+    try:
+        opts, args = getopt.getopt(sys.argv[1:], '',
+                                   ['skew=', 'cardinality=', 'duplicates=',
+                                    'columns=', 'seed='])
+        for opt, val in opts:
+            if opt in ('--skew', '--duplicates'):
+                options[opt[2:]] = float(val)
+            else:
+                options[opt[2:]] = int(val)
+        scale, directory = float(args[0]), args[1]
+        if len(args) != 2 or scale <= 0 \
+           or options.get('cardinality', 2) < 2 \
+           or options.get('columns', 16) < 16 \
+           or not 0 <= options.get('duplicates', 0) < 1:
+            usage()
+    except (getopt.GetoptError, ValueError, IndexError):
+        usage()
+    generate(scale, directory, **options)
@@ -0,0 +1,137 @@
+#!/usr/bin/env python3
+# -*-Python-*-
+
+"""Run db61b scripts against a directory of tables and report the time
+taken by each statement.
+
+Each script is run as by tester.py (and is checked against its .out file,
+if there is one), but with db61b's timing setting turned on and with the
+directory of tables as the current directory, so that 'load' reads the
+tables there (such as those written by generate.py).  For each script, the
+runner prints the time taken by each statement, as measured by db61b
+itself, and the total.
+
+Usage: python3 runner.py [--data=DIRECTORY] [--csv=FILE] [--time-limit=SECS]
+                         [--show=N] SCRIPT.in...
+
+    --data=DIRECTORY   The directory holding the tables [default: .].
+    --csv=FILE         Also write the times to FILE, one statement per line,
+                       as script,statement number,milliseconds,statement.
+    --time-limit=SECS  CPU time limit for each script [default: 600].
+    --show=N           As for tester.py.
+"""
+
+import csv
+import getopt
+import os
+import re
+import shlex
+import sys
+from os.path import abspath, exists, join
+
+from tester import Proj1_Tester
+
+# A line of db61b's timing output.
+TIME = re.compile(r'^Time: ([0-9.]+) ms \((.*)\)$', re.M)
+
+def statements(script):
+    """The statements of SCRIPT, the text of a db61b script, without their
+    comments and with their white space collapsed."""
+    script = re.sub(r'/\*.*?\*/', ' ', script, flags=re.S)
+    result = []
+    current = ""
+    for token in re.findall(r"'[^'\n]*'|[^';]+|;|'", script):
+        current += token
+        if token == ";":
+            result.append(re.sub(r'\s+', ' ', current).strip())
+            current = ""
+    return result
+
+class Latency_Tester(Proj1_Tester):
+    """A tester that records the time taken by each statement of each
+    script, running db61b in the directory DATA."""
+
+    def __init__(self, data, **params):
+        classpath = os.pathsep.join(abspath(entry) for entry in
+                                    os.environ.get("CLASSPATH",
+                                                   ".").split(os.pathsep)
+                                    if entry)
+        super().__init__(tested_program=
+                         "cd {} && java -ea -Ddb61b.timing=on -cp {} "
+                         "db61b.Main".format(shlex.quote(abspath(data)),
+                                             shlex.quote(classpath)),
+                         **params)
+        self.data = data
+        self.times = []
+
+    def command_args(self, testid):
+        return " <" + shlex.quote(abspath(self.standard_input_file(testid))) \
+            + " "
+
+    def input_files(self, id):
+        result = []
+        for name, filename, content in super().input_files(id):
+            if name.endswith(".db"):
+                filename = join(self.data, name)
+                if not exists(filename):
+                    continue
+            result.append((name, filename, content))
+        return result
+
+    def output_compare(self, testid):
+        super().output_compare(testid)
+        texts = statements(open(self.standard_input_file(testid)).read())
+        self.script_times = []
+        for text, (ms, _) in zip(texts,
+                                       TIME.findall(self.stderr or "")):
+            self.script_times.append((float(ms), text))
+            self.times.append((self.base_id(testid),
+                               len(self.script_times), float(ms), text))
+
+    def _report_pass(self, id):
+        super()._report_pass(id)
+        total = 0.0
+        for ms, text in self.script_times:
+            total += ms
+            if len(text) > STATEMENT_WIDTH:
+                text = text[:STATEMENT_WIDTH - 3] + "..."
+            print("{:12.3f} ms  {}".format(ms, text))
+        print("{:12.3f} ms  total".format(total))
+
+    def write_csv(self, filename):
+        """Write the times recorded so far to FILENAME as CSV."""
+        with open(filename, "w", newline="") as out:
+            writer = csv.writer(out)
+            writer.writerow(["script", "statement", "ms", "text"])
+            writer.writerows(self.times)
+
+# Longest statement text shown in reports.
+STATEMENT_WIDTH = 60
+
+if __name__ == "__main__":
+    show = None
+    data = "."
+    csv_file = None
+    time_limit = 600
+    try:
+        opts, args = getopt.getopt(sys.argv[1:], '',
+                                   ['show=', 'data=', 'csv=', 'time-limit='])
+        for opt, val in opts:
+            if opt == '--show':
+                show = int(val)
+            elif opt == '--data':
+                data = val
+            elif opt == '--csv':
+                csv_file = val
+            elif opt == '--time-limit':
+                time_limit = int(val)
+    except (getopt.GetoptError, ValueError):
+        print("Usage: python3 runner.py [--data=DIRECTORY] [--csv=FILE] "
+              "[--time-limit=SECS] [--show=N] SCRIPT.in...", file=sys.stderr)
+        sys.exit(1)
+
+    tester = Latency_Tester(data, report_limit=show, time_limit=time_limit)
+    passed = tester.test_all(args)
+    if csv_file:
+        tester.write_csv(csv_file)
+    sys.exit(0 if passed else 1)
@@ -63,21 +63,21 @@ class Proj1_Tester(testing.Tester):
                            join(self.base_dir(id), db + ".db"), None))
         return result
 
-show=None
-try:
-    opts, args = getopt.getopt(sys.argv[1:], '', ['show='])
-    for opt, val in opts:
-        if opt == '--show':
-            show = int(val)
-        else:
-            assert False
-except:
-    print("Usage: python3 tester.py [--show=N] TEST.in...",
-          file=sys.stderr)
-    sys.exit(1)
+if __name__ == "__main__":
+    show=None
+    try:
+        opts, args = getopt.getopt(sys.argv[1:], '', ['show='])
+        for opt, val in opts:
+            if opt == '--show':
+                show = int(val)
+            else:
+                assert False
+    except:
+        print("Usage: python3 tester.py [--show=N] TEST.in...",
+              file=sys.stderr)
+        sys.exit(1)
 
-tester = Proj1_Tester(tested_program="java -ea db61b.Main",
-                      report_limit=show)
-
-sys.exit(0 if tester.test_all(args) else 1)
+    tester = Proj1_Tester(tested_program="java -ea db61b.Main",
+                          report_limit=show)
 
+    sys.exit(0 if tester.test_all(args) else 1)